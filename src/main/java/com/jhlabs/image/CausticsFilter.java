@@ -18,10 +18,10 @@ package com.jhlabs.image;
 
 import com.jhlabs.math.Noise;
 import pixelitor.ThreadPool;
+import pixelitor.utils.CancellationToken;
 
 import java.awt.Rectangle;
 import java.util.Random;
-import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
@@ -240,14 +240,13 @@ public class CausticsFilter extends WholeImageFilter {
 
         pt = createProgressTracker(outHeight);
 
-        Future<?>[] futures = new Future[outHeight];
-        for (int y = 0; y < outHeight; y++) {
-            int finalY = y;
-            int finalV = v;
-            Runnable lineTask = () -> calculateLine(outWidth, outHeight, pixels, finalV, rs, d, finalY);
-            futures[y] = ThreadPool.submit(lineTask);
-        }
-        ThreadPool.waitFor(futures, pt);
+        int finalV = v;
+        ThreadPool.parallelRows(outHeight, outWidth * samples, pt, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                calculateLine(outWidth, outHeight, pixels, finalV, rs, d, y);
+            }
+        });
 
         finishProgressTracker();
 
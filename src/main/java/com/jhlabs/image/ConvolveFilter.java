@@ -16,6 +16,11 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import com.jhlabs.math.FFT;
+import pixelitor.ThreadPool;
+import pixelitor.utils.CancellationToken;
+import pixelitor.utils.ProgressTracker;
+
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
@@ -23,6 +28,7 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.Kernel;
+import java.util.Arrays;
 
 /**
  * A filter which applies a convolution kernel to an image.
@@ -45,6 +51,12 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      */
     public static final int WRAP_EDGES = 2;
 
+    /**
+     * The number of kernel elements from which 2D kernels are applied
+     * in the frequency domain, where the cost doesn't depend on the kernel size
+     */
+    public static final int MIN_FFT_KERNEL_SIZE = 121;
+
     /**
      * The convolution kernel.
      */
@@ -282,7 +294,6 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param edgeAction what to do at the edges
      */
     public void convolveHV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-        int index = 0;
         float[] matrix = kernel.getKernelData(null);
         int rows = kernel.getHeight();
         int cols = kernel.getWidth();
@@ -291,56 +302,212 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
 
         pt = createProgressTracker(height);
 
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                float r = 0, g = 0, b = 0, a = 0;
-
-                for (int row = -rows2; row <= rows2; row++) {
-                    int iy = y + row;
-                    int ioffset;
-                    if (0 <= iy && iy < height) {
-                        ioffset = iy * width;
-                    } else if (edgeAction == CLAMP_EDGES) {
-                        ioffset = y * width;
-                    } else if (edgeAction == WRAP_EDGES) {
-                        ioffset = ((iy + height) % height) * width;
-                    } else {
-                        continue;
-                    }
-                    int moffset = cols * (row + rows2) + cols2;
-                    for (int col = -cols2; col <= cols2; col++) {
-                        float f = matrix[moffset + col];
-
-                        if (f != 0) {
-                            int ix = x + col;
-                            if (!(0 <= ix && ix < width)) {
-                                if (edgeAction == CLAMP_EDGES) {
-                                    ix = x;
-                                } else if (edgeAction == WRAP_EDGES) {
-                                    ix = (x + width) % width;
-                                } else {
-                                    continue;
-                                }
+        if (rows * cols >= MIN_FFT_KERNEL_SIZE && width > 2 * cols2 && height > 2 * rows2) {
+            // the pixels whose neighborhood is inside the image don't depend
+            // on the edge action, and they are calculated in the frequency domain
+            convolveInteriorWithFFT(matrix, rows, cols, inPixels, outPixels, width, height);
+            ThreadPool.parallelRows(height, width, pt, (fromY, toY) -> {
+                for (int y = fromY; y < toY; y++) {
+                    CancellationToken.checkCurrent();
+                    boolean edgeRow = y < rows2 || y >= height - rows2;
+                    for (int x = 0; x < width; x++) {
+                        if (!edgeRow && x == cols2) {
+                            x = width - cols2; // skip the interior
+                            if (x >= width) {
+                                break;
                             }
-                            int rgb = inPixels[ioffset + ix];
-                            a += f * ((rgb >> 24) & 0xff);
-                            r += f * ((rgb >> 16) & 0xff);
-                            g += f * ((rgb >> 8) & 0xff);
-                            b += f * (rgb & 0xff);
                         }
+                        outPixels[y * width + x] = convolvePixel(matrix, rows, cols, inPixels, width, height, alpha, edgeAction, x, y);
                     }
                 }
-                int ia = alpha ? PixelUtils.clamp((int) (a + 0.5)) : 0xff;
-                int ir = PixelUtils.clamp((int) (r + 0.5));
-                int ig = PixelUtils.clamp((int) (g + 0.5));
-                int ib = PixelUtils.clamp((int) (b + 0.5));
-                outPixels[index++] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+            });
+            if (!alpha) {
+                setOpaque(outPixels);
             }
-            pt.unitDone();
+        } else {
+            ThreadPool.parallelRows(height, width * rows * cols, pt, (fromY, toY) -> {
+                for (int y = fromY; y < toY; y++) {
+                    CancellationToken.checkCurrent();
+                    int index = y * width;
+                    for (int x = 0; x < width; x++) {
+                        outPixels[index++] = convolvePixel(matrix, rows, cols, inPixels, width, height, alpha, edgeAction, x, y);
+                    }
+                }
+            });
         }
         finishProgressTracker();
     }
 
+    private static int convolvePixel(float[] matrix, int rows, int cols, int[] inPixels, int width, int height, boolean alpha, int edgeAction, int x, int y) {
+        int rows2 = rows / 2;
+        int cols2 = cols / 2;
+        float r = 0, g = 0, b = 0, a = 0;
+
+        for (int row = -rows2; row <= rows2; row++) {
+            int iy = y + row;
+            int ioffset;
+            if (0 <= iy && iy < height) {
+                ioffset = iy * width;
+            } else if (edgeAction == CLAMP_EDGES) {
+                ioffset = y * width;
+            } else if (edgeAction == WRAP_EDGES) {
+                ioffset = ((iy + height) % height) * width;
+            } else {
+                continue;
+            }
+            int moffset = cols * (row + rows2) + cols2;
+            for (int col = -cols2; col <= cols2; col++) {
+                float f = matrix[moffset + col];
+
+                if (f != 0) {
+                    int ix = x + col;
+                    if (!(0 <= ix && ix < width)) {
+                        if (edgeAction == CLAMP_EDGES) {
+                            ix = x;
+                        } else if (edgeAction == WRAP_EDGES) {
+                            ix = (x + width) % width;
+                        } else {
+                            continue;
+                        }
+                    }
+                    int rgb = inPixels[ioffset + ix];
+                    a += f * ((rgb >> 24) & 0xff);
+                    r += f * ((rgb >> 16) & 0xff);
+                    g += f * ((rgb >> 8) & 0xff);
+                    b += f * (rgb & 0xff);
+                }
+            }
+        }
+        int ia = alpha ? PixelUtils.clamp((int) (a + 0.5)) : 0xff;
+        int ir = PixelUtils.clamp((int) (r + 0.5));
+        int ig = PixelUtils.clamp((int) (g + 0.5));
+        int ib = PixelUtils.clamp((int) (b + 0.5));
+        return (ia << 24) | (ir << 16) | (ig << 8) | ib;
+    }
+
+    /**
+     * Calculates the same values as {@link #convolvePixel} for the pixels
+     * whose neighborhood is inside the image, by multiplying in the frequency
+     * domain. The image is processed in overlapping square blocks
+     * (overlap-save), whose size depends only on the size of the kernel.
+     */
+    private static void convolveInteriorWithFFT(float[] matrix, int rows, int cols, int[] inPixels, int[] outPixels, int width, int height) {
+        int rows2 = rows / 2;
+        int cols2 = cols / 2;
+
+        int logBlockSize = FFT.log2(Integer.highestOneBit(4 * Math.max(2 * rows2 + 1, 2 * cols2 + 1) - 1) << 1);
+        logBlockSize = Math.max(logBlockSize, 6);
+        int blockSize = 1 << logBlockSize;
+        FFT fft = FFT.forLogN(logBlockSize);
+
+        // the kernel is mirrored so that the circular
+        // convolution calculates the same sums
+        float[][] kernelFreq = new float[2][blockSize * blockSize];
+        for (int row = -rows2; row <= rows2; row++) {
+            int ky = (blockSize - row) & (blockSize - 1);
+            for (int col = -cols2; col <= cols2; col++) {
+                int kx = (blockSize - col) & (blockSize - 1);
+                kernelFreq[0][ky * blockSize + kx] = matrix[cols * (row + rows2) + cols2 + col];
+            }
+        }
+        fft.transform2D(kernelFreq[0], kernelFreq[1], blockSize, blockSize, true);
+
+        // the size of the correct part of the output in a block
+        int validWidth = blockSize - 2 * cols2;
+        int validHeight = blockSize - 2 * rows2;
+        int interiorWidth = width - 2 * cols2;
+        int interiorHeight = height - 2 * rows2;
+        int numBlocksX = (interiorWidth + validWidth - 1) / validWidth;
+        int numBlocksY = (interiorHeight + validHeight - 1) / validHeight;
+
+        // the blocks are distributed in chunks, so that
+        // each chunk can reuse its transform buffers
+        ThreadPool.parallelRows(numBlocksX * numBlocksY, blockSize * blockSize, ProgressTracker.NULL_TRACKER, (fromBlock, toBlock) -> {
+            // alpha and red are transformed as one complex
+            // signal, and green and blue as another
+            float[][] ar = new float[2][blockSize * blockSize];
+            float[][] gb = new float[2][blockSize * blockSize];
+            for (int block = fromBlock; block < toBlock; block++) {
+                CancellationToken.checkCurrent();
+                convolveBlockWithFFT(fft, kernelFreq, blockSize, block, ar, gb, inPixels, outPixels, width, height,
+                        rows2, cols2, numBlocksX, validWidth, validHeight);
+            }
+        });
+    }
+
+    private static void convolveBlockWithFFT(FFT fft, float[][] kernelFreq, int blockSize, int block, float[][] ar, float[][] gb,
+                                             int[] inPixels, int[] outPixels, int width, int height,
+                                             int rows2, int cols2, int numBlocksX, int validWidth, int validHeight) {
+        int outX = cols2 + (block % numBlocksX) * validWidth;
+        int outY = rows2 + (block / numBlocksX) * validHeight;
+        int inX = outX - cols2;
+        int inY = outY - rows2;
+
+        int copyWidth = Math.min(blockSize, width - inX);
+        int copyHeight = Math.min(blockSize, height - inY);
+        if (copyWidth < blockSize || copyHeight < blockSize) {
+            // clear the values left over from the previous block
+            for (float[] buffer : ar) {
+                Arrays.fill(buffer, 0);
+            }
+            for (float[] buffer : gb) {
+                Arrays.fill(buffer, 0);
+            }
+        }
+        for (int y = 0; y < copyHeight; y++) {
+            int ioffset = (inY + y) * width + inX;
+            int boffset = y * blockSize;
+            for (int x = 0; x < copyWidth; x++) {
+                int rgb = inPixels[ioffset + x];
+                ar[0][boffset + x] = (rgb >> 24) & 0xff;
+                ar[1][boffset + x] = (rgb >> 16) & 0xff;
+                gb[0][boffset + x] = (rgb >> 8) & 0xff;
+                gb[1][boffset + x] = rgb & 0xff;
+            }
+        }
+
+        fft.transform2D(ar[0], ar[1], blockSize, blockSize, true);
+        fft.transform2D(gb[0], gb[1], blockSize, blockSize, true);
+        multiply(ar, kernelFreq);
+        multiply(gb, kernelFreq);
+        fft.transform2D(ar[0], ar[1], blockSize, blockSize, false);
+        fft.transform2D(gb[0], gb[1], blockSize, blockSize, false);
+
+        int outWidth = Math.min(validWidth, width - cols2 - outX);
+        int outHeight = Math.min(validHeight, height - rows2 - outY);
+        for (int y = 0; y < outHeight; y++) {
+            int ooffset = (outY + y) * width + outX;
+            int boffset = (rows2 + y) * blockSize + cols2;
+            for (int x = 0; x < outWidth; x++) {
+                int ia = PixelUtils.clamp((int) (ar[0][boffset + x] + 0.5));
+                int ir = PixelUtils.clamp((int) (ar[1][boffset + x] + 0.5));
+                int ig = PixelUtils.clamp((int) (gb[0][boffset + x] + 0.5));
+                int ib = PixelUtils.clamp((int) (gb[1][boffset + x] + 0.5));
+                outPixels[ooffset + x] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+            }
+        }
+    }
+
+    // multiplies the complex values of the signal by the kernel
+    private static void multiply(float[][] signal, float[][] kernel) {
+        float[] sRe = signal[0];
+        float[] sIm = signal[1];
+        float[] kRe = kernel[0];
+        float[] kIm = kernel[1];
+        for (int i = 0; i < sRe.length; i++) {
+            float re = sRe[i];
+            float im = sIm[i];
+            sRe[i] = re * kRe[i] - im * kIm[i];
+            sIm[i] = re * kIm[i] + im * kRe[i];
+        }
+    }
+
+    private static void setOpaque(int[] pixels) {
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= 0xFF_00_00_00;
+        }
+    }
+
     /**
      * Convolve with a kernel consisting of one row.
      *
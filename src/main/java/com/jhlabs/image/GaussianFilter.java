@@ -17,11 +17,11 @@ limitations under the License.
 package com.jhlabs.image;
 
 import pixelitor.ThreadPool;
+import pixelitor.utils.CancellationToken;
 import pixelitor.utils.ProgressTracker;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.Kernel;
-import java.util.concurrent.Future;
 
 /**
  * A filter which applies Gaussian blur to an image. This is a subclass of ConvolveFilter
@@ -30,6 +30,12 @@ import java.util.concurrent.Future;
  * @author Jerry Huxtable
  */
 public class GaussianFilter extends ConvolveFilter {
+    /**
+     * The radius from which the blur is calculated with a recursive
+     * filter instead of convolving with the kernel.
+     */
+    public static final float MIN_RECURSIVE_RADIUS = 20;
+
     /**
      * The blur radius.
      */
@@ -94,8 +100,7 @@ public class GaussianFilter extends ConvolveFilter {
         getRGB(src, 0, 0, width, height, inPixels);
 
         if (radius > 0) {
-            convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES, pt);
-            convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES, pt);
+            blur(inPixels, outPixels, width, height, pt);
         }
 
 //        dst.setRGB(0, 0, width, height, inPixels, 0, width);
@@ -106,6 +111,24 @@ public class GaussianFilter extends ConvolveFilter {
         return dst;
     }
 
+    /**
+     * Blurs the pixels in inPixels horizontally and vertically, and puts
+     * the result back into inPixels. Above {@link #MIN_RECURSIVE_RADIUS}
+     * a recursive approximation is used, because the cost of the kernel
+     * convolution grows linearly with the radius.
+     */
+    protected void blur(int[] inPixels, int[] outPixels, int width, int height, ProgressTracker pt) {
+        boolean premultiply = alpha && premultiplyAlpha;
+        if (radius >= MIN_RECURSIVE_RADIUS) {
+            float sigma = radius / 3;
+            recursiveBlurAndTranspose(sigma, inPixels, outPixels, width, height, alpha, premultiply, false, pt);
+            recursiveBlurAndTranspose(sigma, outPixels, inPixels, height, width, alpha, false, premultiply, pt);
+        } else {
+            convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, premultiply, false, CLAMP_EDGES, pt);
+            convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, premultiply, CLAMP_EDGES, pt);
+        }
+    }
+
     /**
      * Blur and transpose a block of ARGB pixels.
      *
@@ -123,14 +146,12 @@ public class GaussianFilter extends ConvolveFilter {
         int cols = kernel.getWidth();
         int cols2 = cols / 2;
 
-        Future<?>[] resultLines = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> convolveAndTransposeLine(inPixels, outPixels, width, height, alpha, premultiply, unpremultiply, edgeAction, matrix, cols2, finalY);
-            resultLines[y] = ThreadPool.submit(lineTask);
-        }
-
-        ThreadPool.waitFor(resultLines, pt);
+        ThreadPool.parallelRows(height, width * cols, pt, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                convolveAndTransposeLine(inPixels, outPixels, width, height, alpha, premultiply, unpremultiply, edgeAction, matrix, cols2, y);
+            }
+        });
     }
 
     private static void convolveAndTransposeLine(int[] inPixels, int[] outPixels, int width, int height, boolean alpha, boolean premultiply, boolean unpremultiply, int edgeAction, float[] matrix, int cols2, int y) {
@@ -190,6 +211,177 @@ public class GaussianFilter extends ConvolveFilter {
         }
     }
 
+    /**
+     * Like {@link #convolveAndTranspose}, but approximates the Gaussian
+     * with the fourth order recursive filter of Deriche ("Recursively
+     * implementing the Gaussian and its derivatives", INRIA, 1993),
+     * so that the cost per pixel doesn't depend on sigma. The edges are clamped.
+     */
+    public static void recursiveBlurAndTranspose(float sigma, int[] inPixels, int[] outPixels, int width, int height, boolean alpha,
+                                                 boolean premultiply, boolean unpremultiply, ProgressTracker pt) {
+        double[] coeffs = dericheCoefficients(sigma);
+
+        ThreadPool.parallelRows(height, width, pt, (fromY, toY) -> {
+            float[][] line = new float[5][width];
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                recursiveBlurAndTransposeLine(inPixels, outPixels, width, height, alpha, premultiply, unpremultiply, coeffs, line, y);
+            }
+        });
+    }
+
+    /**
+     * Returns the causal numerator (n0..n3), the anti-causal numerator
+     * (m1..m4) and the common denominator (d1..d4) coefficients, normalized
+     * so that the two halves together keep the brightness.
+     */
+    private static double[] dericheCoefficients(double sigma) {
+        // the approximation of the Gaussian with two damped cosines
+        double a0 = 1.68, a1 = 3.735, b0 = 1.783, w0 = 0.6318;
+        double c0 = -0.6803, c1 = -0.2598, b1 = 1.723, w1 = 1.997;
+
+        double[] h = new double[5];
+        for (int n = 0; n < h.length; n++) {
+            h[n] = (a0 * Math.cos(w0 * n / sigma) + a1 * Math.sin(w0 * n / sigma)) * Math.exp(-b0 * n / sigma)
+                    + (c0 * Math.cos(w1 * n / sigma) + c1 * Math.sin(w1 * n / sigma)) * Math.exp(-b1 * n / sigma);
+        }
+
+        double p1 = -2 * Math.exp(-b0 / sigma) * Math.cos(w0 / sigma);
+        double p2 = Math.exp(-2 * b0 / sigma);
+        double q1 = -2 * Math.exp(-b1 / sigma) * Math.cos(w1 / sigma);
+        double q2 = Math.exp(-2 * b1 / sigma);
+        double[] d = {1, p1 + q1, p2 + q2 + p1 * q1, p1 * q2 + p2 * q1, p2 * q2};
+
+        double[] coeffs = new double[12];
+        for (int j = 0; j < 4; j++) {
+            for (int i = 0; i <= j; i++) {
+                coeffs[j] += d[i] * h[j - i];
+                coeffs[4 + j] += d[i] * h[j + 1 - i];
+            }
+            coeffs[8 + j] = d[j + 1];
+        }
+
+        double sumD = 1 + d[1] + d[2] + d[3] + d[4];
+        double sumN = 0;
+        for (int j = 0; j < 8; j++) {
+            sumN += coeffs[j];
+        }
+        double scale = sumD / sumN;
+        for (int j = 0; j < 8; j++) {
+            coeffs[j] *= scale;
+        }
+        return coeffs;
+    }
+
+    private static void recursiveBlurAndTransposeLine(int[] inPixels, int[] outPixels, int width, int height, boolean alpha, boolean premultiply, boolean unpremultiply,
+                                                      double[] coeffs, float[][] line, int y) {
+        int ioffset = y * width;
+        float[] as = line[0];
+        float[] rs = line[1];
+        float[] gs = line[2];
+        float[] bs = line[3];
+        float[] causal = line[4];
+        for (int x = 0; x < width; x++) {
+            int rgb = inPixels[ioffset + x];
+            int pa = (rgb >> 24) & 0xff;
+            int pr = (rgb >> 16) & 0xff;
+            int pg = (rgb >> 8) & 0xff;
+            int pb = rgb & 0xff;
+            if (premultiply) {
+                float a255 = pa * (1.0f / 255.0f);
+                pr = (int) (pr * a255);
+                pg = (int) (pg * a255);
+                pb = (int) (pb * a255);
+            }
+            as[x] = pa;
+            rs[x] = pr;
+            gs[x] = pg;
+            bs[x] = pb;
+        }
+
+        for (int i = 0; i < 4; i++) {
+            recursiveGaussian(line[i], causal, width, coeffs);
+        }
+
+        int index = y;
+        for (int x = 0; x < width; x++) {
+            float a = as[x];
+            float r = rs[x];
+            float g = gs[x];
+            float b = bs[x];
+            if (unpremultiply && a != 0 && a != 255) {
+                float f = 255.0f / a;
+                r *= f;
+                g *= f;
+                b *= f;
+            }
+            int ia = alpha ? PixelUtils.clamp((int) (a + 0.5)) : 0xff;
+
+            int ir = PixelUtils.clamp((int) (r + 0.5));
+            int ig = PixelUtils.clamp((int) (g + 0.5));
+            int ib = PixelUtils.clamp((int) (b + 0.5));
+            outPixels[index] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+            index += height;
+        }
+    }
+
+    /**
+     * Filters the first width values of the given channel in place as
+     * the sum of a causal and an anti-causal pass. Both passes start in
+     * the steady state of their clamped edge, which is exact, because
+     * they filter the input independently of each other.
+     */
+    private static void recursiveGaussian(float[] c, float[] causal, int width, double[] k) {
+        double n0 = k[0], n1 = k[1], n2 = k[2], n3 = k[3];
+        double m1 = k[4], m2 = k[5], m3 = k[6], m4 = k[7];
+        double d1 = k[8], d2 = k[9], d3 = k[10], d4 = k[11];
+        double sumD = 1 + d1 + d2 + d3 + d4;
+
+        double x1 = c[0];
+        double x2 = x1;
+        double x3 = x1;
+        double y1 = x1 * (n0 + n1 + n2 + n3) / sumD;
+        double y2 = y1;
+        double y3 = y1;
+        double y4 = y1;
+        for (int i = 0; i < width; i++) {
+            double x0 = c[i];
+            double v = n0 * x0 + n1 * x1 + n2 * x2 + n3 * x3
+                    - d1 * y1 - d2 * y2 - d3 * y3 - d4 * y4;
+            causal[i] = (float) v;
+            x3 = x2;
+            x2 = x1;
+            x1 = x0;
+            y4 = y3;
+            y3 = y2;
+            y2 = y1;
+            y1 = v;
+        }
+
+        x1 = c[width - 1];
+        x2 = x1;
+        x3 = x1;
+        double x4 = x1;
+        y1 = x1 * (m1 + m2 + m3 + m4) / sumD;
+        y2 = y1;
+        y3 = y1;
+        y4 = y1;
+        for (int i = width - 1; i >= 0; i--) {
+            double x0 = c[i];
+            double v = m1 * x1 + m2 * x2 + m3 * x3 + m4 * x4
+                    - d1 * y1 - d2 * y2 - d3 * y3 - d4 * y4;
+            c[i] = (float) (causal[i] + v);
+            x4 = x3;
+            x3 = x2;
+            x2 = x1;
+            x1 = x0;
+            y4 = y3;
+            y3 = y2;
+            y2 = y1;
+            y1 = v;
+        }
+    }
+
     /**
      * Make a Gaussian blur kernel.
      *
@@ -152,7 +152,7 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
         tileWidth = w;
         tileHeight = h;//FIXME-tileWidth, w, and cols are always all the same
 
-        FFT fft = new FFT(Math.max(log2rows, log2cols));
+        FFT fft = FFT.forLogN(Math.max(log2rows, log2cols));
 
         int[] rgb = new int[w * h];
         float[][] mask = new float[2][w * h];
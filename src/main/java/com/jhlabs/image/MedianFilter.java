@@ -16,16 +16,72 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.ThreadPool;
+import pixelitor.utils.CancellationToken;
+
 import java.awt.Rectangle;
+import java.util.Arrays;
 
 /**
- * A filter which performs a 3x3 median operation. Useful for removing dust and noise.
+ * A filter which performs a median operation. Useful for removing dust and noise.
+ * It calculates the median of each channel separately with sliding histograms
+ * (Perreault and Hébert, "Median Filtering in Constant Time", 2007), so that the
+ * cost doesn't depend on the radius. Alternatively it can select the pixel of
+ * the 3x3 neighborhood which is closest to the others (vector median).
  */
 public class MedianFilter extends WholeImageFilter {
+    private static final int NUM_COARSE_BINS = 16;
+    private static final int FINE_BINS_PER_COARSE = 16;
+
+    private int radius = 1;
+    private boolean vectorMedian = false;
+
     public MedianFilter(String filterName) {
         super(filterName);
     }
 
+    /**
+     * Set the radius of the neighborhood.
+     *
+     * @param radius the radius in pixels
+     * @min-value 1
+     * @see #getRadius
+     */
+    public void setRadius(int radius) {
+        this.radius = radius;
+    }
+
+    /**
+     * Get the radius of the neighborhood.
+     *
+     * @return the radius
+     * @see #setRadius
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Set whether the 3x3 vector median is used instead of the
+     * median of the channels. The vector median ignores the radius.
+     *
+     * @param vectorMedian true for the vector median
+     * @see #isVectorMedian
+     */
+    public void setVectorMedian(boolean vectorMedian) {
+        this.vectorMedian = vectorMedian;
+    }
+
+    /**
+     * Get whether the 3x3 vector median is used.
+     *
+     * @return true for the vector median
+     * @see #setVectorMedian
+     */
+    public boolean isVectorMedian() {
+        return vectorMedian;
+    }
+
 //    private static int median(int[] array) {
 //        int max, maxIndex;
 //
@@ -69,6 +125,10 @@ public class MedianFilter extends WholeImageFilter {
 
     @Override
     protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
+        if (!vectorMedian) {
+            return histogramMedian(width, height, inPixels);
+        }
+
         int index = 0;
         int[] argb = new int[9];
         int[] r = new int[9];
@@ -111,6 +171,167 @@ public class MedianFilter extends WholeImageFilter {
         return outPixels;
     }
 
+    private int[] histogramMedian(int width, int height, int[] inPixels) {
+        int[] outPixels = new int[width * height];
+
+        // the histograms are initialized for each band, therefore
+        // there are not more bands than the threads using them
+        int windowSize = 2 * radius + 1;
+        int numBands = Math.max(1, Math.min(ThreadPool.getNumCores(), height / windowSize));
+        int bandHeight = (height + numBands - 1) / numBands;
+
+        pt = createProgressTracker(numBands);
+        ThreadPool.parallelRows(numBands, bandHeight * width, pt, (fromBand, toBand) -> {
+            var histograms = new SlidingHistograms(width, height, radius);
+            for (int band = fromBand; band < toBand; band++) {
+                int fromY = band * bandHeight;
+                int toY = Math.min(fromY + bandHeight, height);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    histograms.filterChannel(inPixels, outPixels, fromY, toY, shift);
+                }
+            }
+        });
+        finishProgressTracker();
+
+        return outPixels;
+    }
+
+    /**
+     * The column and kernel histograms of one channel in a band of rows.
+     * Each histogram has 16 coarse bins for the high 4 bits of the values, and
+     * 256 fine bins. The fine bins of the kernel are updated only when the
+     * median falls into the corresponding coarse bin.
+     */
+    private static class SlidingHistograms {
+        private final int width;
+        private final int height;
+        private final int radius;
+        private final int windowSize;
+
+        private final char[] colFine;
+        private final char[] colCoarse;
+
+        private final int[] kernelCoarse = new int[NUM_COARSE_BINS];
+        private final int[] kernelFine = new int[NUM_COARSE_BINS * FINE_BINS_PER_COARSE];
+
+        // the x coordinate for which the fine bins of each
+        // coarse bin were last updated, or -1 if never
+        private final int[] fineUpdatedX = new int[NUM_COARSE_BINS];
+
+        SlidingHistograms(int width, int height, int radius) {
+            this.width = width;
+            this.height = height;
+            this.radius = radius;
+            windowSize = 2 * radius + 1;
+            colFine = new char[width * 256];
+            colCoarse = new char[width * NUM_COARSE_BINS];
+        }
+
+        void filterChannel(int[] inPixels, int[] outPixels, int fromY, int toY, int shift) {
+            Arrays.fill(colFine, (char) 0);
+            Arrays.fill(colCoarse, (char) 0);
+            for (int dy = -radius; dy <= radius; dy++) {
+                updateColumns(inPixels, clampY(fromY + dy), shift, 1);
+            }
+
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                if (y > fromY) {
+                    updateColumns(inPixels, clampY(y - radius - 1), shift, -1);
+                    updateColumns(inPixels, clampY(y + radius), shift, 1);
+                }
+                filterRow(outPixels, y, shift);
+            }
+        }
+
+        private void updateColumns(int[] inPixels, int y, int shift, int delta) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int v = (inPixels[offset + x] >>> shift) & 0xFF;
+                colFine[x * 256 + v] += delta;
+                colCoarse[x * NUM_COARSE_BINS + (v >> 4)] += delta;
+            }
+        }
+
+        private void filterRow(int[] outPixels, int y, int shift) {
+            Arrays.fill(kernelCoarse, 0);
+            Arrays.fill(fineUpdatedX, -1);
+            for (int dx = -radius; dx <= radius; dx++) {
+                addCoarse(clampX(dx), 1);
+            }
+
+            // the index of the median in the sorted window
+            int half = windowSize * windowSize / 2;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                if (x > 0) {
+                    addCoarse(clampX(x + radius), 1);
+                    addCoarse(clampX(x - radius - 1), -1);
+                }
+
+                int count = 0;
+                int coarse = 0;
+                while (count + kernelCoarse[coarse] <= half) {
+                    count += kernelCoarse[coarse];
+                    coarse++;
+                }
+
+                updateFine(coarse, x);
+                int fine = coarse * FINE_BINS_PER_COARSE;
+                while (count + kernelFine[fine] <= half) {
+                    count += kernelFine[fine];
+                    fine++;
+                }
+
+                outPixels[offset + x] |= fine << shift;
+            }
+        }
+
+        private void addCoarse(int x, int delta) {
+            int colOffset = x * NUM_COARSE_BINS;
+            for (int i = 0; i < NUM_COARSE_BINS; i++) {
+                kernelCoarse[i] += delta * colCoarse[colOffset + i];
+            }
+        }
+
+        // brings the fine bins of the given coarse bin up to date for the window at x
+        private void updateFine(int coarse, int x) {
+            int lastX = fineUpdatedX[coarse];
+            fineUpdatedX[coarse] = x;
+            if (lastX == x) {
+                return;
+            }
+            int start = coarse * FINE_BINS_PER_COARSE;
+            if (lastX < 0 || 2 * (x - lastX) > windowSize) {
+                // recalculating is cheaper than sliding
+                Arrays.fill(kernelFine, start, start + FINE_BINS_PER_COARSE, 0);
+                for (int dx = -radius; dx <= radius; dx++) {
+                    addFine(clampX(x + dx), start, 1);
+                }
+            } else {
+                for (int sx = lastX + 1; sx <= x; sx++) {
+                    addFine(clampX(sx + radius), start, 1);
+                    addFine(clampX(sx - radius - 1), start, -1);
+                }
+            }
+        }
+
+        private void addFine(int x, int start, int delta) {
+            int colOffset = x * 256 + start;
+            for (int i = 0; i < FINE_BINS_PER_COARSE; i++) {
+                kernelFine[start + i] += delta * colFine[colOffset + i];
+            }
+        }
+
+        private int clampX(int x) {
+            return x < 0 ? 0 : (x >= width ? width - 1 : x);
+        }
+
+        private int clampY(int y) {
+            return y < 0 ? 0 : (y >= height ? height - 1 : y);
+        }
+    }
+
     @Override
     public String toString() {
         return "Blur/Median";
@@ -19,10 +19,10 @@ package com.jhlabs.image;
 import net.jafama.DoubleWrapper;
 import net.jafama.FastMath;
 import pixelitor.ThreadPool;
+import pixelitor.utils.CancellationToken;
 
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.util.concurrent.Future;
 
 /**
  * A filter which produces motion blur the slow, but higher-quality way.
@@ -282,13 +282,12 @@ public class MotionBlurFilter extends AbstractBufferedImageOp implements MotionB
             ImageMath.premultiply(inPixels, 0, inPixels.length);
         }
 
-        Future<?>[] futures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> calcLine(width, height, inPixels, outPixels, cx, cy, translateX, translateY, repetitions, finalY);
-            futures[y] = ThreadPool.submit(lineTask);
-        }
-        ThreadPool.waitFor(futures, pt);
+        ThreadPool.parallelRows(height, width * repetitions, pt, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                calcLine(width, height, inPixels, outPixels, cx, cy, translateX, translateY, repetitions, y);
+            }
+        });
         if (premultiplyAlpha) {
             ImageMath.unpremultiply(outPixels, 0, inPixels.length);
         }
@@ -17,12 +17,10 @@ limitations under the License.
 package com.jhlabs.image;
 
 import pixelitor.ThreadPool;
+import pixelitor.utils.CancellationToken;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Future;
 
 public class SmearFilter extends WholeImageFilter {
     public static final int CROSSES = 0;
@@ -172,20 +170,15 @@ public class SmearFilter extends WholeImageFilter {
 
         int numShapes = (int) (2 * density * width * height / 2);
 
-        int stride = numShapes / 100 + 1;
-        int estimatedWorkUnits = numShapes / stride;
-        pt = createProgressTracker(estimatedWorkUnits);
+        pt = createProgressTracker(numShapes);
 
-        List<Future<?>> futures = new ArrayList<>(estimatedWorkUnits + 1);
-        for (int i = 0; i < numShapes; i = i + stride) {
-            Runnable r = () -> {
-                for (int j = 0; j < stride; j++) {
-                    renderOneLine(width, height, inPixels, outPixels, sin, cos);
-                }
-            };
-            futures.add(ThreadPool.submit(r));
-        }
-        ThreadPool.waitFor(futures, pt);
+        // each line is a work item that costs about distance pixels
+        ThreadPool.parallelRows(numShapes, distance, pt, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                CancellationToken.checkCurrent();
+                renderOneLine(width, height, inPixels, outPixels, sin, cos);
+            }
+        });
     }
 
     private void renderOneLine(int width, int height, int[] inPixels, int[] outPixels, float sin, float cos) {
@@ -272,13 +265,14 @@ public class SmearFilter extends WholeImageFilter {
         int numShapes = (int) (2 * density * width * height / radius);
 
         pt = createProgressTracker(numShapes);
-        Future<?>[] futures = new Future[numShapes];
 
-        for (int i = 0; i < numShapes; i++) {
-            Runnable r = () -> renderOneShape(width, height, inPixels, outPixels, radius, radius2);
-            futures[i] = ThreadPool.submit(r);
-        }
-        ThreadPool.waitFor(futures, pt);
+        // each shape is a work item that costs about radius2 pixels
+        ThreadPool.parallelRows(numShapes, radius2, pt, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                CancellationToken.checkCurrent();
+                renderOneShape(width, height, inPixels, outPixels, radius, radius2);
+            }
+        });
     }
 
     private void renderOneShape(int width, int height, int[] inPixels, int[] outPixels, int radius, int radius2) {
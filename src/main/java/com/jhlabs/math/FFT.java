@@ -16,27 +16,48 @@ limitations under the License.
 
 package com.jhlabs.math;
 
+import pixelitor.ThreadPool;
+import pixelitor.utils.CancellationToken;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Radix-2 fast Fourier transform. The instances are immutable, so they can be
+ * shared: {@link #forLogN(int)} returns a cached instance for each size.
+ * The 2D transforms process the rows and the columns in parallel.
+ */
 public class FFT {
-    // Weighting factors
-    protected final float[] w1;
-    protected final float[] w2;
-    protected final float[] w3;
+    private static final Map<Integer, FFT> cache = new ConcurrentHashMap<>();
+
+    private final int maxLogN;
+
+    // the twiddle factors for the largest supported size
+    // (exp(-2 * PI * i * k / maxN) for k < maxN / 2), the
+    // smaller sizes use every second, fourth, ... entry
+    private final float[] cosTable;
+    private final float[] sinTable;
 
     public FFT(int logN) {
-        // Prepare the weighting factors
-        w1 = new float[logN];
-        w2 = new float[logN];
-        w3 = new float[logN];
-        int N = 1;
-        for (int k = 0; k < logN; k++) {
-            N <<= 1;
-            double angle = -2.0 * Math.PI / N;
-            w1[k] = (float) Math.sin(0.5 * angle);
-            w2[k] = -2.0f * w1[k] * w1[k];
-            w3[k] = (float) Math.sin(angle);
+        maxLogN = logN;
+        int maxN = 1 << logN;
+        cosTable = new float[Math.max(1, maxN / 2)];
+        sinTable = new float[cosTable.length];
+        for (int k = 0; k < maxN / 2; k++) {
+            double angle = -2.0 * Math.PI * k / maxN;
+            cosTable[k] = (float) Math.cos(angle);
+            sinTable[k] = (float) Math.sin(angle);
         }
     }
 
+    /**
+     * Returns a shared instance which can transform sizes up to 2^logN
+     */
+    public static FFT forLogN(int logN) {
+        return cache.computeIfAbsent(logN, FFT::new);
+    }
+
     private static void scramble(int n, float[] real, float[] imag) {
         int j = 0;
 
@@ -63,29 +84,23 @@ public class FFT {
         int N = 1;
 
         for (int k = 0; k < logN; k++) {
-            float w_re, w_im, wp_re, wp_im, temp_re, temp_im, wt;
             int half_N = N;
             N <<= 1;
-//            wt = direction * w1[k];
-            wp_re = w2[k];
-            wp_im = direction * w3[k];
-            w_re = 1.0f;
-            w_im = 0.0f;
+            int tableStep = 1 << (maxLogN - k - 1);
             for (int offset = 0; offset < half_N; offset++) {
+                float w_re = cosTable[offset * tableStep];
+                float w_im = direction * sinTable[offset * tableStep];
                 for (int i = offset; i < n; i += N) {
                     int j = i + half_N;
                     float re = real[j];
                     float im = imag[j];
-                    temp_re = (w_re * re) - (w_im * im);
-                    temp_im = (w_im * re) + (w_re * im);
+                    float temp_re = (w_re * re) - (w_im * im);
+                    float temp_im = (w_im * re) + (w_re * im);
                     real[j] = real[i] - temp_re;
                     real[i] += temp_re;
                     imag[j] = imag[i] - temp_im;
                     imag[i] += temp_im;
                 }
-                wt = w_re;
-                w_re = wt * wp_re - w_im * wp_im + w_re;
-                w_im = w_im * wp_re + wt * wp_im + w_im;
             }
         }
         if (direction == -1) {
@@ -98,6 +113,9 @@ public class FFT {
     }
 
     public void transform1D(float[] real, float[] imag, int logN, int n, boolean forward) {
+        if (logN > maxLogN) {
+            throw new IllegalArgumentException("logN = " + logN + ", maxLogN = " + maxLogN);
+        }
         scramble(n, real, imag);
         butterflies(n, logN, forward ? 1 : -1, real, imag);
     }
@@ -105,39 +123,46 @@ public class FFT {
     public void transform2D(float[] real, float[] imag, int cols, int rows, boolean forward) {
         int log2cols = log2(cols);
         int log2rows = log2(rows);
-        int n = Math.max(rows, cols);
-        float[] rtemp = new float[n];
-        float[] itemp = new float[n];
 
         // FFT the rows
-        for (int y = 0; y < rows; y++) {
-            int offset = y * cols;
-            System.arraycopy(real, offset, rtemp, 0, cols);
-            System.arraycopy(imag, offset, itemp, 0, cols);
-            transform1D(rtemp, itemp, log2cols, cols, forward);
-            System.arraycopy(rtemp, 0, real, offset, cols);
-            System.arraycopy(itemp, 0, imag, offset, cols);
-        }
+        ThreadPool.parallelRows(rows, cols * log2cols, ProgressTracker.NULL_TRACKER, (fromY, toY) -> {
+            float[] rtemp = new float[cols];
+            float[] itemp = new float[cols];
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                int offset = y * cols;
+                System.arraycopy(real, offset, rtemp, 0, cols);
+                System.arraycopy(imag, offset, itemp, 0, cols);
+                transform1D(rtemp, itemp, log2cols, cols, forward);
+                System.arraycopy(rtemp, 0, real, offset, cols);
+                System.arraycopy(itemp, 0, imag, offset, cols);
+            }
+        });
 
         // FFT the columns
-        for (int x = 0; x < cols; x++) {
-            int index = x;
-            for (int y = 0; y < rows; y++) {
-                rtemp[y] = real[index];
-                itemp[y] = imag[index];
-                index += cols;
-            }
-            transform1D(rtemp, itemp, log2rows, rows, forward);
-            index = x;
-            for (int y = 0; y < rows; y++) {
-                real[index] = rtemp[y];
-                imag[index] = itemp[y];
-                index += cols;
+        ThreadPool.parallelRows(cols, rows * log2rows, ProgressTracker.NULL_TRACKER, (fromX, toX) -> {
+            float[] rtemp = new float[rows];
+            float[] itemp = new float[rows];
+            for (int x = fromX; x < toX; x++) {
+                CancellationToken.checkCurrent();
+                int index = x;
+                for (int y = 0; y < rows; y++) {
+                    rtemp[y] = real[index];
+                    itemp[y] = imag[index];
+                    index += cols;
+                }
+                transform1D(rtemp, itemp, log2rows, rows, forward);
+                index = x;
+                for (int y = 0; y < rows; y++) {
+                    real[index] = rtemp[y];
+                    imag[index] = itemp[y];
+                    index += cols;
+                }
             }
-        }
+        });
     }
 
-    private static int log2(int n) {
+    public static int log2(int n) {
         int m = 1;
         int log2n = 0;
 
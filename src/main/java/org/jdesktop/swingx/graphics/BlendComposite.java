@@ -43,6 +43,9 @@ import java.awt.image.DirectColorModel;
 import java.awt.image.Raster;
 import java.awt.image.RasterFormatException;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * <p>A blend composite defines the rule according to which a drawing primitive
@@ -328,66 +331,47 @@ public final class BlendComposite implements Composite {
     }
 
     private static abstract class BlendingContext implements CompositeContext {
-        protected final Blender blender;
+        protected final RowBlender blender;
         protected final BlendComposite composite;
 
         private BlendingContext(BlendComposite composite) {
             this.composite = composite;
-            this.blender = Blender.getBlenderFor(composite);
+            this.blender = RowBlender.getRowBlenderFor(composite.getMode());
         }
 
-        @Override
-		public void dispose() {
-        }
-    }
-
-    private static class BlendingRgbContext extends BlendingContext {
-        private BlendingRgbContext(BlendComposite composite) {
-            super(composite);
-        }
-
-        @Override
-		public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+        protected void compose(Raster src, Raster dstIn, WritableRaster dstOut,
+                               int redShift, int blueShift) {
             int width = Math.min(src.getWidth(), dstIn.getWidth());
             int height = Math.min(src.getHeight(), dstIn.getHeight());
 
             float alpha = composite.getAlpha();
 
-            int[] result = new int[4];
-            int[] srcPixel = new int[4];
-            int[] dstPixel = new int[4];
             int[] srcPixels = new int[width];
             int[] dstPixels = new int[width];
 
             for (int y = 0; y < height; y++) {
                 src.getDataElements(0, y, width, 1, srcPixels);
                 dstIn.getDataElements(0, y, width, 1, dstPixels);
-                for (int x = 0; x < width; x++) {
-                    // pixels are stored as INT_ARGB
-                    // our arrays are [R, G, B, A]
-                    int pixel = srcPixels[x];
-                    srcPixel[0] = (pixel >> 16) & 0xFF;
-                    srcPixel[1] = (pixel >> 8) & 0xFF;
-                    srcPixel[2] = pixel & 0xFF;
-                    srcPixel[3] = (pixel >> 24) & 0xFF;
-
-                    pixel = dstPixels[x];
-                    dstPixel[0] = (pixel >> 16) & 0xFF;
-                    dstPixel[1] = (pixel >> 8) & 0xFF;
-                    dstPixel[2] = pixel & 0xFF;
-                    dstPixel[3] = (pixel >> 24) & 0xFF;
-
-                    blender.blend(srcPixel, dstPixel, result);
-
-                    // mixes the result with the opacity
-                    dstPixels[x] = (((int) (dstPixel[3] + (result[3] - dstPixel[3]) * alpha) & 0xFF) << 24) |
-                            (((int) (dstPixel[0] + (result[0] - dstPixel[0]) * alpha) & 0xFF) << 16) |
-                            (((int) (dstPixel[1] + (result[1] - dstPixel[1]) * alpha) & 0xFF) << 8) |
-                            ((int) (dstPixel[2] + (result[2] - dstPixel[2]) * alpha) & 0xFF);
-                }
+                blender.blendRow(srcPixels, dstPixels, width, alpha, redShift, blueShift);
                 dstOut.setDataElements(0, y, width, 1, dstPixels);
             }
         }
+
+        @Override
+		public void dispose() {
+        }
+    }
+
+    private static class BlendingRgbContext extends BlendingContext {
+        private BlendingRgbContext(BlendComposite composite) {
+            super(composite);
+        }
+
+        @Override
+		public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+            // pixels are stored as INT_ARGB
+            compose(src, dstIn, dstOut, 16, 0);
+        }
     }
 
     private static class BlendingBgrContext extends BlendingContext {
@@ -397,53 +381,350 @@ public final class BlendComposite implements Composite {
 
         @Override
 		public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
-            int width = Math.min(src.getWidth(), dstIn.getWidth());
-            int height = Math.min(src.getHeight(), dstIn.getHeight());
+            // pixels are stored as INT_ABGR
+            compose(src, dstIn, dstOut, 0, 16);
+        }
+    }
 
-            float alpha = composite.getAlpha();
+    /**
+     * Blends a row of packed pixels with the new row blenders.
+     * Package-private for the tests and the benchmarks.
+     */
+    static void blendRow(BlendingMode mode, int[] srcPixels, int[] dstPixels,
+                         int width, float alpha, boolean bgr) {
+        RowBlender.getRowBlenderFor(mode).blendRow(srcPixels, dstPixels,
+                width, alpha, bgr ? 0 : 16, bgr ? 16 : 0);
+    }
+
+    /**
+     * Blends a row of packed pixels with the original per-pixel blenders,
+     * which serve as the reference implementation of the blending modes.
+     * Package-private for the tests and the benchmarks.
+     */
+    static void blendRowReference(BlendingMode mode, int[] srcPixels, int[] dstPixels,
+                                  int width, float alpha, boolean bgr) {
+        Blender blender = Blender.getBlenderFor(mode);
+        int redShift = bgr ? 0 : 16;
+        int blueShift = bgr ? 16 : 0;
+
+        int[] result = new int[4];
+        int[] srcPixel = new int[4];
+        int[] dstPixel = new int[4];
+
+        for (int x = 0; x < width; x++) {
+            // our arrays are [R, G, B, A]
+            int pixel = srcPixels[x];
+            srcPixel[0] = (pixel >> redShift) & 0xFF;
+            srcPixel[1] = (pixel >> 8) & 0xFF;
+            srcPixel[2] = (pixel >> blueShift) & 0xFF;
+            srcPixel[3] = (pixel >> 24) & 0xFF;
+
+            pixel = dstPixels[x];
+            dstPixel[0] = (pixel >> redShift) & 0xFF;
+            dstPixel[1] = (pixel >> 8) & 0xFF;
+            dstPixel[2] = (pixel >> blueShift) & 0xFF;
+            dstPixel[3] = (pixel >> 24) & 0xFF;
+
+            blender.blend(srcPixel, dstPixel, result);
+
+            // mixes the result with the opacity
+            dstPixels[x] = (((int) (dstPixel[3] + (result[3] - dstPixel[3]) * alpha) & 0xFF) << 24) |
+                    (((int) (dstPixel[0] + (result[0] - dstPixel[0]) * alpha) & 0xFF) << redShift) |
+                    (((int) (dstPixel[1] + (result[1] - dstPixel[1]) * alpha) & 0xFF) << 8) |
+                    (((int) (dstPixel[2] + (result[2] - dstPixel[2]) * alpha) & 0xFF) << blueShift);
+        }
+    }
+
+    /**
+     * Blends whole rows of packed int pixels, without unpacking
+     * them into arrays and without allocating per pixel.
+     */
+    private static abstract class RowBlender {
+        /**
+         * Blends the source pixels into the destination pixels.
+         * The shifts give the position of the red and blue channels,
+         * the alpha channel is always at 24 and the green at 8.
+         */
+        public abstract void blendRow(int[] srcPixels, int[] dstPixels, int width,
+                                      float alpha, int redShift, int blueShift);
+
+        public static RowBlender getRowBlenderFor(BlendingMode mode) {
+            switch (mode) {
+                case HUE:
+                    return new HslRowBlender(true, false, false);
+                case SATURATION:
+                    return new HslRowBlender(false, true, false);
+                case COLOR:
+                    return new HslRowBlender(true, true, false);
+                case LUMINOSITY:
+                    return new HslRowBlender(false, false, true);
+                default:
+                    return SeparableRowBlender.forMode(mode);
+            }
+        }
+
+        // mixes the blending result of a channel with the opacity
+        static int mix(int dst, int result, float alpha) {
+            return (int) (dst + (result - dst) * alpha) & 0xFF;
+        }
+
+        static int unionAlpha(int srcA, int dstA) {
+            return Math.min(255, srcA + dstA - (srcA * dstA) / 255);
+        }
+    }
+
+    /**
+     * A row blender for the modes where each result channel depends
+     * only on the same channel of the source and destination pixels.
+     * The results are looked up in 256x256 tables, which are calculated
+     * once per mode with the reference blenders.
+     */
+    private static final class SeparableRowBlender extends RowBlender {
+        private static final Map<BlendingMode, SeparableRowBlender> cache
+                = new EnumMap<>(BlendingMode.class);
+
+        // the tables are indexed by (srcValue << 8) | dstValue
+        private final byte[] redTable;
+        private final byte[] greenTable;
+        private final byte[] blueTable;
+        private final byte[] alphaTable;
 
+        private SeparableRowBlender(BlendingMode mode) {
+            Blender blender = Blender.getBlenderFor(mode);
+            int[] src = new int[4];
+            int[] dst = new int[4];
             int[] result = new int[4];
-            int[] srcPixel = new int[4];
-            int[] dstPixel = new int[4];
-            int[] srcPixels = new int[width];
-            int[] dstPixels = new int[width];
 
-            for (int y = 0; y < height; y++) {
-                src.getDataElements(0, y, width, 1, srcPixels);
-                dstIn.getDataElements(0, y, width, 1, dstPixels);
-                for (int x = 0; x < width; x++) {
-                    // pixels are stored as INT_ABGR
-                    // our arrays are [R, G, B, A]
-                    int pixel = srcPixels[x];
-                    srcPixel[0] = pixel & 0xFF;
-                    srcPixel[1] = (pixel >> 8) & 0xFF;
-                    srcPixel[2] = (pixel >> 16) & 0xFF;
-                    srcPixel[3] = (pixel >> 24) & 0xFF;
-
-                    pixel = dstPixels[x];
-                    dstPixel[0] = pixel & 0xFF;
-                    dstPixel[1] = (pixel >> 8) & 0xFF;
-                    dstPixel[2] = (pixel >> 16) & 0xFF;
-                    dstPixel[3] = (pixel >> 24) & 0xFF;
-
-                    blender.blend(srcPixel, dstPixel, result);
-
-                    // mixes the result with the opacity
-                    dstPixels[x] = ((int) (dstPixel[3] + (result[3] - dstPixel[3]) * alpha) & 0xFF) << 24 |
-                            ((int) (dstPixel[0] + (result[0] - dstPixel[0]) * alpha) & 0xFF) |
-                            ((int) (dstPixel[1] + (result[1] - dstPixel[1]) * alpha) & 0xFF) << 8 |
-                            ((int) (dstPixel[2] + (result[2] - dstPixel[2]) * alpha) & 0xFF) << 16;
+            byte[][] tables = new byte[4][256 * 256];
+            for (int s = 0; s < 256; s++) {
+                for (int d = 0; d < 256; d++) {
+                    Arrays.fill(src, s);
+                    Arrays.fill(dst, d);
+                    blender.blend(src, dst, result);
+                    int index = (s << 8) | d;
+                    for (int channel = 0; channel < 4; channel++) {
+                        tables[channel][index] = (byte) result[channel];
+                    }
                 }
-                dstOut.setDataElements(0, y, width, 1, dstPixels);
             }
+
+            // most modes treat all color channels in the same way
+            redTable = tables[0];
+            greenTable = Arrays.equals(tables[1], redTable) ? redTable : tables[1];
+            blueTable = Arrays.equals(tables[2], redTable) ? redTable : tables[2];
+            alphaTable = tables[3];
+        }
+
+        static synchronized SeparableRowBlender forMode(BlendingMode mode) {
+            return cache.computeIfAbsent(mode, SeparableRowBlender::new);
+        }
+
+        @Override
+        public void blendRow(int[] srcPixels, int[] dstPixels, int width,
+                             float alpha, int redShift, int blueShift) {
+            for (int x = 0; x < width; x++) {
+                int srcPixel = srcPixels[x];
+                int dstPixel = dstPixels[x];
+
+                int srcA = srcPixel >>> 24;
+                int srcR = (srcPixel >> redShift) & 0xFF;
+                int srcG = (srcPixel >> 8) & 0xFF;
+                int srcB = (srcPixel >> blueShift) & 0xFF;
+
+                int dstA = dstPixel >>> 24;
+                int dstR = (dstPixel >> redShift) & 0xFF;
+                int dstG = (dstPixel >> 8) & 0xFF;
+                int dstB = (dstPixel >> blueShift) & 0xFF;
+
+                int a = alphaTable[(srcA << 8) | dstA] & 0xFF;
+                int r = redTable[(srcR << 8) | dstR] & 0xFF;
+                int g = greenTable[(srcG << 8) | dstG] & 0xFF;
+                int b = blueTable[(srcB << 8) | dstB] & 0xFF;
+
+                if (alpha != 1.0f) {
+                    a = mix(dstA, a, alpha);
+                    r = mix(dstR, r, alpha);
+                    g = mix(dstG, g, alpha);
+                    b = mix(dstB, b, alpha);
+                }
+                dstPixels[x] = (a << 24) | (r << redShift) | (g << 8) | (b << blueShift);
+            }
+        }
+    }
+
+    /**
+     * A row blender for the modes combining the hue, saturation
+     * and lightness of the source and destination pixels.
+     * The HSL calculations are the same as in {@link ColorUtilities},
+     * but they are done with local variables instead of arrays.
+     */
+    private static final class HslRowBlender extends RowBlender {
+        // the 0..1 values of the 0..255 channel values
+        private static final float[] unitValues = new float[256];
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                unitValues[i] = i / 255.0f;
+            }
+        }
+
+        // true if the component is taken from the source pixel
+        private final boolean srcHue;
+        private final boolean srcSaturation;
+        private final boolean srcLightness;
+
+        private HslRowBlender(boolean srcHue, boolean srcSaturation, boolean srcLightness) {
+            this.srcHue = srcHue;
+            this.srcSaturation = srcSaturation;
+            this.srcLightness = srcLightness;
+        }
+
+        @Override
+        public void blendRow(int[] srcPixels, int[] dstPixels, int width,
+                             float alpha, int redShift, int blueShift) {
+            // neighboring pixels are often the same, and
+            // then the last result can be reused
+            int lastSrcPixel = 0;
+            int lastDstPixel = 0;
+            int lastResult = 0;
+            boolean hasLast = false;
+
+            for (int x = 0; x < width; x++) {
+                int srcPixel = srcPixels[x];
+                int dstPixel = dstPixels[x];
+                if (hasLast && srcPixel == lastSrcPixel && dstPixel == lastDstPixel) {
+                    dstPixels[x] = lastResult;
+                    continue;
+                }
+
+                int srcR = (srcPixel >> redShift) & 0xFF;
+                int srcG = (srcPixel >> 8) & 0xFF;
+                int srcB = (srcPixel >> blueShift) & 0xFF;
+
+                int dstA = dstPixel >>> 24;
+                int dstR = (dstPixel >> redShift) & 0xFF;
+                int dstG = (dstPixel >> 8) & 0xFF;
+                int dstB = (dstPixel >> blueShift) & 0xFF;
+
+                float h = srcHue ? hue(srcR, srcG, srcB) : hue(dstR, dstG, dstB);
+                float s = srcSaturation ? saturation(srcR, srcG, srcB) : saturation(dstR, dstG, dstB);
+                float l = srcLightness ? lightness(srcR, srcG, srcB) : lightness(dstR, dstG, dstB);
+
+                int a = unionAlpha(srcPixel >>> 24, dstA);
+                int r;
+                int g;
+                int b;
+                if (s - 0.01f <= 0.0f) {
+                    r = g = b = (int) (l * 255.0f);
+                } else {
+                    float v2 = l < 0.5f ? l * (1 + s) : (l + s) - (s * l);
+                    float v1 = 2 * l - v2;
+                    r = (int) (255.0f * hueToRGB(v1, v2, h + (1.0f / 3.0f)));
+                    g = (int) (255.0f * hueToRGB(v1, v2, h));
+                    b = (int) (255.0f * hueToRGB(v1, v2, h - (1.0f / 3.0f)));
+                }
+
+                if (alpha != 1.0f) {
+                    a = mix(dstA, a, alpha);
+                    r = mix(dstR, r, alpha);
+                    g = mix(dstG, g, alpha);
+                    b = mix(dstB, b, alpha);
+                }
+                int result = (a << 24) | ((r & 0xFF) << redShift)
+                        | ((g & 0xFF) << 8) | ((b & 0xFF) << blueShift);
+                dstPixels[x] = result;
+
+                lastSrcPixel = srcPixel;
+                lastDstPixel = dstPixel;
+                lastResult = result;
+                hasLast = true;
+            }
+        }
+
+        private static float lightness(int r, int g, int b) {
+            float red = unitValues[r];
+            float green = unitValues[g];
+            float blue = unitValues[b];
+            float min = Math.min(Math.min(red, green), blue);
+            float max = Math.max(Math.max(red, green), blue);
+            return (max + min) / 2.0f;
+        }
+
+        private static float saturation(int r, int g, int b) {
+            float red = unitValues[r];
+            float green = unitValues[g];
+            float blue = unitValues[b];
+            float min = Math.min(Math.min(red, green), blue);
+            float max = Math.max(Math.max(red, green), blue);
+            float delta = max - min;
+            if (delta - 0.01f <= 0.0f) {
+                return 0.0f;
+            }
+            float lightness = (max + min) / 2.0f;
+            if (lightness < 0.5f) {
+                return delta / (max + min);
+            }
+            return delta / (2 - max - min);
+        }
+
+        private static float hue(int r, int g, int b) {
+            float red = unitValues[r];
+            float green = unitValues[g];
+            float blue = unitValues[b];
+            float min = Math.min(Math.min(red, green), blue);
+            float max = Math.max(Math.max(red, green), blue);
+            float delta = max - min;
+            if (delta - 0.01f <= 0.0f) {
+                return 0.0f;
+            }
+
+            float deltaR = (((max - red) / 6.0f) + (delta / 2.0f)) / delta;
+            float deltaG = (((max - green) / 6.0f) + (delta / 2.0f)) / delta;
+            float deltaB = (((max - blue) / 6.0f) + (delta / 2.0f)) / delta;
+
+            float hue;
+            if (red == max) {
+                hue = deltaB - deltaG;
+            } else if (green == max) {
+                hue = (1.0f / 3.0f) + deltaR - deltaB;
+            } else {
+                hue = (2.0f / 3.0f) + deltaG - deltaR;
+            }
+
+            if (hue < 0) {
+                hue += 1;
+            }
+            if (hue > 1) {
+                hue -= 1;
+            }
+            return hue;
+        }
+
+        private static float hueToRGB(float v1, float v2, float hue) {
+            if (hue < 0.0f) {
+                hue += 1.0f;
+            }
+            if (hue > 1.0f) {
+                hue -= 1.0f;
+            }
+            if ((6.0f * hue) < 1.0f) {
+                return v1 + (v2 - v1) * 6.0f * hue;
+            }
+            if ((2.0f * hue) < 1.0f) {
+                return v2;
+            }
+            if ((3.0f * hue) < 2.0f) {
+                return v1 + (v2 - v1) * ((2.0f / 3.0f) - hue) * 6.0f;
+            }
+            return v1;
         }
     }
 
     private static abstract class Blender {
         public abstract void blend(int[] src, int[] dst, int[] result);
 
-        public static Blender getBlenderFor(BlendComposite composite) {
-            switch (composite.getMode()) {
+        public static Blender getBlenderFor(BlendingMode mode) {
+            switch (mode) {
                 case CROSS_FADE:
                     return new Blender() {
                         @Override
@@ -831,7 +1112,7 @@ public final class BlendComposite implements Composite {
                     };
             }
             throw new IllegalArgumentException("Blender not implemented for " +
-                    composite.getMode().name());
+                    mode.name());
         }
     }
 }
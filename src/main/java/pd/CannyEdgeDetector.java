@@ -8,11 +8,13 @@
 package pd;
 
 import net.jafama.FastMath;
+import pixelitor.ThreadPool;
+import pixelitor.utils.CancellationToken;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.image.BufferedImage;
-import java.util.Arrays;
+import java.lang.ref.SoftReference;
 
 /**
  * <p><em>This software has been released into the public domain.
@@ -51,6 +53,21 @@ public class CannyEdgeDetector {
     private static final float MAGNITUDE_LIMIT = 1000.0F;
     private static final int MAGNITUDE_MAX = (int) (MAGNITUDE_SCALE * MAGNITUDE_LIMIT);
 
+    // the stages which report the progress of each row
+    private static final int NUM_TRACKED_STAGES = 6;
+
+    // candidate edge pixels are labeled with the index of their parent
+    // in the connected components, except for the roots and for the
+    // pixels that can't be edges, which are labeled with these values
+    private static final int NOT_CANDIDATE = -1;
+    private static final int WEAK_ROOT = -2;
+    private static final int STRONG_ROOT = -3;
+
+    // the scratch buffers of the last run, which are reused if the next
+    // image has the same size. The soft reference allows the garbage
+    // collector to free them if the memory is needed elsewhere.
+    private static SoftReference<Buffers> cachedBuffers;
+
     // fields
 
     private int height;
@@ -72,6 +89,7 @@ public class CannyEdgeDetector {
     private float[] xGradient;
     private float[] yGradient;
 
+    private ProgressTracker progressTracker;
     private ProgressTracker pt;
 
     // constructors
@@ -265,55 +283,72 @@ public class CannyEdgeDetector {
         this.contrastNormalized = contrastNormalized;
     }
 
+    /**
+     * Sets the tracker of the progress of the process method.
+     * By default, the progress is shown in the status bar.
+     */
+    public void setProgressTracker(ProgressTracker progressTracker) {
+        this.progressTracker = progressTracker;
+    }
+
     // methods
 
     public void process() {
         width = sourceImage.getWidth();
         height = sourceImage.getHeight();
-
-        // the number of computational units are experimental values
-        // that seem to work pretty well
-        pt = new StatusBarProgressTracker("Canny", width + 450);
-
         picsize = width * height;
-        initArrays();
-
-        pt.unitsDone(10);
 
-        readLuminance();
-
-        pt.unitsDone(50);
-
-        if (contrastNormalized) {
-            normalizeContrast();
-            pt.unitsDone(10);
+        pt = progressTracker;
+        if (pt == null) {
+            pt = new StatusBarProgressTracker("Canny", NUM_TRACKED_STAGES * height);
         }
 
-        computeGradients(gaussianKernelRadius, gaussianKernelWidth);
-        int low = Math.round(lowThreshold * MAGNITUDE_SCALE);
-        int high = Math.round(highThreshold * MAGNITUDE_SCALE);
-        performHysteresis(low, high);
-        pt.unitDone();
-
-        thresholdEdges();
-        pt.unitDone();
+        Buffers buffers = takeBuffers(picsize);
+        data = buffers.data;
+        magnitude = buffers.magnitude;
+        xConv = buffers.xConv;
+        yConv = buffers.yConv;
+        xGradient = buffers.xGradient;
+        yGradient = buffers.yGradient;
+        try {
+            readLuminance();
+
+            if (contrastNormalized) {
+                normalizeContrast();
+            }
 
-        writeEdges(data);
-        pt.finished();
+            computeGradients(gaussianKernelRadius, gaussianKernelWidth);
+            int low = Math.round(lowThreshold * MAGNITUDE_SCALE);
+            int high = Math.round(highThreshold * MAGNITUDE_SCALE);
+            performHysteresis(low, high);
+
+            // the hysteresis writes the edges into the magnitude array
+            writeEdges(magnitude);
+        } finally {
+            data = null;
+            magnitude = null;
+            xConv = null;
+            yConv = null;
+            xGradient = null;
+            yGradient = null;
+            releaseBuffers(buffers);
+            pt.finished();
+        }
     }
 
     // private utility methods
 
-    private void initArrays() {
-        if (data == null || picsize != data.length) {
-            data = new int[picsize];
-            magnitude = new int[picsize];
-
-            xConv = new float[picsize];
-            yConv = new float[picsize];
-            xGradient = new float[picsize];
-            yGradient = new float[picsize];
+    private static synchronized Buffers takeBuffers(int size) {
+        Buffers buffers = cachedBuffers == null ? null : cachedBuffers.get();
+        cachedBuffers = null;
+        if (buffers != null && buffers.data.length == size) {
+            return buffers;
         }
+        return new Buffers(size);
+    }
+
+    private static synchronized void releaseBuffers(Buffers buffers) {
+        cachedBuffers = new SoftReference<>(buffers);
     }
 
     //NOTE: The elements of the method below (specifically the technique for
@@ -343,149 +378,167 @@ public class CannyEdgeDetector {
             kernel[kwidth] = (g1 + g2 + g3) / 3.0f / (2.0f * (float) Math.PI * kernelRadius * kernelRadius);
             diffKernel[kwidth] = g3 - g2;
         }
+        int kw = kwidth;
 
-        pt.unitDone();
-
-        int initX = kwidth - 1;
-        int maxX = width - (kwidth - 1);
-        int initY = width * (kwidth - 1);
-        int maxY = width * (height - (kwidth - 1));
+        // the buffers are reused, therefore every stage also
+        // writes zeros outside the area where it is calculated
+        int minX = kw - 1;
+        int maxX = width - (kw - 1);
+        int minY = kw - 1;
+        int maxY = height - (kw - 1);
 
         //perform convolution in x and y directions
-        for (int x = initX; x < maxX; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                int index = x + y;
-                float sumX = data[index] * kernel[0];
-                float sumY = sumX;
-                int xOffset = 1;
-                int yOffset = width;
-                for (; xOffset < kwidth; ) {
-                    sumY += kernel[xOffset] * (data[index - yOffset] + data[index + yOffset]);
-                    sumX += kernel[xOffset] * (data[index - xOffset] + data[index + xOffset]);
-                    yOffset += width;
-                    xOffset++;
-                }
-
-                yConv[index] = sumY;
-                xConv[index] = sumX;
-            }
-
-        }
-
-        pt.unitsDone(200);
+        ThreadPool.parallelRows(height, width * kw, pt, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                boolean rowInside = y >= minY && y < maxY;
+                for (int x = 0; x < width; x++) {
+                    int index = x + y * width;
+                    if (!rowInside || x < minX || x >= maxX) {
+                        xConv[index] = 0;
+                        yConv[index] = 0;
+                        continue;
+                    }
+                    float sumX = data[index] * kernel[0];
+                    float sumY = sumX;
+                    int xOffset = 1;
+                    int yOffset = width;
+                    for (; xOffset < kw; ) {
+                        sumY += kernel[xOffset] * (data[index - yOffset] + data[index + yOffset]);
+                        sumX += kernel[xOffset] * (data[index - xOffset] + data[index + xOffset]);
+                        yOffset += width;
+                        xOffset++;
+                    }
 
-        for (int x = initX; x < maxX; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                float sum = 0.0f;
-                int index = x + y;
-                for (int i = 1; i < kwidth; i++) {
-                    sum += diffKernel[i] * (yConv[index - i] - yConv[index + i]);
+                    yConv[index] = sumY;
+                    xConv[index] = sumX;
                 }
-
-                xGradient[index] = sum;
             }
-
-        }
-
-        pt.unitsDone(100);
-
-        for (int x = kwidth; x < width - kwidth; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                float sum = 0.0f;
-                int index = x + y;
-                int yOffset = width;
-                for (int i = 1; i < kwidth; i++) {
-                    sum += diffKernel[i] * (xConv[index - yOffset] - xConv[index + yOffset]);
-                    yOffset += width;
+        });
+
+        ThreadPool.parallelRows(height, width * kw, pt, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                boolean rowInside = y >= minY && y < maxY;
+                for (int x = 0; x < width; x++) {
+                    int index = x + y * width;
+
+                    float xSum = 0.0f;
+                    if (rowInside && x >= minX && x < maxX) {
+                        for (int i = 1; i < kw; i++) {
+                            xSum += diffKernel[i] * (yConv[index - i] - yConv[index + i]);
+                        }
+                    }
+                    xGradient[index] = xSum;
+
+                    float ySum = 0.0f;
+                    if (rowInside && x >= kw && x < width - kw) {
+                        int yOffset = width;
+                        for (int i = 1; i < kw; i++) {
+                            ySum += diffKernel[i] * (xConv[index - yOffset] - xConv[index + yOffset]);
+                            yOffset += width;
+                        }
+                    }
+                    yGradient[index] = ySum;
                 }
-
-                yGradient[index] = sum;
             }
-
-        }
-
-        pt.unitsDone(100);
-
-        initX = kwidth;
-        maxX = width - kwidth;
-        initY = width * kwidth;
-        maxY = width * (height - kwidth);
-        for (int x = initX; x < maxX; x++) {
-            pt.unitDone();
-            for (int y = initY; y < maxY; y += width) {
-                int index = x + y;
-                int indexN = index - width;
-                int indexS = index + width;
-                int indexW = index - 1;
-                int indexE = index + 1;
-                int indexNW = indexN - 1;
-                int indexNE = indexN + 1;
-                int indexSW = indexS - 1;
-                int indexSE = indexS + 1;
-
-                float xGrad = xGradient[index];
-                float yGrad = yGradient[index];
-                float gradMag = hypot(xGrad, yGrad);
-
-                //perform non-maximal supression
-                float nMag = hypot(xGradient[indexN], yGradient[indexN]);
-                float sMag = hypot(xGradient[indexS], yGradient[indexS]);
-                float wMag = hypot(xGradient[indexW], yGradient[indexW]);
-                float eMag = hypot(xGradient[indexE], yGradient[indexE]);
-                float neMag = hypot(xGradient[indexNE], yGradient[indexNE]);
-                float seMag = hypot(xGradient[indexSE], yGradient[indexSE]);
-                float swMag = hypot(xGradient[indexSW], yGradient[indexSW]);
-                float nwMag = hypot(xGradient[indexNW], yGradient[indexNW]);
-                float tmp;
-                /*
-                 * An explanation of what's happening here, for those who want
-                 * to understand the source: This performs the "non-maximal
-                 * supression" phase of the Canny edge detection in which we
-                 * need to compare the gradient magnitude to that in the
-                 * direction of the gradient; only if the value is a local
-                 * maximum do we consider the point as an edge candidate.
-                 *
-                 * We need to break the comparison into a number of different
-                 * cases depending on the gradient direction so that the
-                 * appropriate values can be used. To avoid computing the
-                 * gradient direction, we use two simple comparisons: first we
-                 * check that the partial derivatives have the same sign (1)
-                 * and then we check which is larger (2). As a consequence, we
-                 * have reduced the problem to one of four identical cases that
-                 * each test the central gradient magnitude against the values at
-                 * two points with 'identical support'; what this means is that
-                 * the geometry required to accurately interpolate the magnitude
-                 * of gradient function at those points has an identical
-                 * geometry (upto right-angled-rotation/reflection).
-                 *
-                 * When comparing the central gradient to the two interpolated
-                 * values, we avoid performing any divisions by multiplying both
-                 * sides of each inequality by the greater of the two partial
-                 * derivatives. The common comparand is stored in a temporary
-                 * variable (3) and reused in the mirror case (4).
-                 *
-                 */
-                if (xGrad * yGrad <= 0 /*(1)*/
-                    ? Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
-                    ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /*(3)*/
-                    && tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /*(4)*/
-                    : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /*(3)*/
-                    && tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /*(4)*/
-                    : Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
-                    ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /*(3)*/
-                    && tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /*(4)*/
-                    : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /*(3)*/
-                    && tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /*(4)*/
-                ) {
-                    magnitude[index] = gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag);
-                    //NOTE: The orientation of the edge is not employed by this
-                    //implementation. It is a simple matter to compute it at
-                    //this point as: Math.atan2(yGrad, xGrad);
-                } else {
-                    magnitude[index] = 0;
+        });
+
+        // the convolution results aren't needed anymore, so the
+        // gradient magnitudes are calculated only once, into xConv
+        float[] gradMagnitude = xConv;
+        ThreadPool.parallelRows(height, width, ProgressTracker.NULL_TRACKER, (fromY, toY) -> {
+            for (int index = fromY * width; index < toY * width; index++) {
+                gradMagnitude[index] = hypot(xGradient[index], yGradient[index]);
+            }
+        });
+
+        ThreadPool.parallelRows(height, width, pt, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                boolean rowInside = y >= kw && y < height - kw;
+                for (int x = 0; x < width; x++) {
+                    int index = x + y * width;
+                    if (!rowInside || x < kw || x >= width - kw) {
+                        magnitude[index] = 0;
+                        continue;
+                    }
+                    magnitude[index] = suppressNonMaximum(index, gradMagnitude);
                 }
             }
+        });
+    }
+
+    private int suppressNonMaximum(int index, float[] gradMagnitude) {
+        int indexN = index - width;
+        int indexS = index + width;
+        int indexW = index - 1;
+        int indexE = index + 1;
+        int indexNW = indexN - 1;
+        int indexNE = indexN + 1;
+        int indexSW = indexS - 1;
+        int indexSE = indexS + 1;
+
+        float xGrad = xGradient[index];
+        float yGrad = yGradient[index];
+        float gradMag = gradMagnitude[index];
+
+        //perform non-maximal supression
+        float nMag = gradMagnitude[indexN];
+        float sMag = gradMagnitude[indexS];
+        float wMag = gradMagnitude[indexW];
+        float eMag = gradMagnitude[indexE];
+        float neMag = gradMagnitude[indexNE];
+        float seMag = gradMagnitude[indexSE];
+        float swMag = gradMagnitude[indexSW];
+        float nwMag = gradMagnitude[indexNW];
+        float tmp;
+        /*
+         * An explanation of what's happening here, for those who want
+         * to understand the source: This performs the "non-maximal
+         * supression" phase of the Canny edge detection in which we
+         * need to compare the gradient magnitude to that in the
+         * direction of the gradient; only if the value is a local
+         * maximum do we consider the point as an edge candidate.
+         *
+         * We need to break the comparison into a number of different
+         * cases depending on the gradient direction so that the
+         * appropriate values can be used. To avoid computing the
+         * gradient direction, we use two simple comparisons: first we
+         * check that the partial derivatives have the same sign (1)
+         * and then we check which is larger (2). As a consequence, we
+         * have reduced the problem to one of four identical cases that
+         * each test the central gradient magnitude against the values at
+         * two points with 'identical support'; what this means is that
+         * the geometry required to accurately interpolate the magnitude
+         * of gradient function at those points has an identical
+         * geometry (upto right-angled-rotation/reflection).
+         *
+         * When comparing the central gradient to the two interpolated
+         * values, we avoid performing any divisions by multiplying both
+         * sides of each inequality by the greater of the two partial
+         * derivatives. The common comparand is stored in a temporary
+         * variable (3) and reused in the mirror case (4).
+         *
+         */
+        if (xGrad * yGrad <= 0 /*(1)*/
+            ? Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
+            ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /*(3)*/
+            && tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /*(4)*/
+            : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /*(3)*/
+            && tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /*(4)*/
+            : Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
+            ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /*(3)*/
+            && tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /*(4)*/
+            : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /*(3)*/
+            && tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /*(4)*/
+        ) {
+            return gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag);
+            //NOTE: The orientation of the edge is not employed by this
+            //implementation. It is a simple matter to compute it at
+            //this point as: Math.atan2(yGrad, xGrad);
         }
+        return 0;
     }
 
     //NOTE: It is quite feasible to replace the implementation of this method
@@ -501,57 +554,137 @@ public class CannyEdgeDetector {
 
     private void performHysteresis(int low, int high) {
         //NOTE: this implementation reuses the data array to store both
-        //luminance data from the image, and edge intensity from the processing.
-        //This is done for memory efficiency, other implementations may wish
-        //to separate these functions.
-        Arrays.fill(data, 0);
-
-        int offset = 0;
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (data[offset] == 0 && magnitude[offset] >= high) {
-                    follow(x, y, offset, low);
+        //luminance data from the image, and the connected components
+        //of the candidate edge pixels from the processing.
+        //This is done for memory efficiency.
+        int[] labels = data;
+        int candidateMin = Math.max(1, Math.min(low, high));
+
+        // first the components are found separately in bands of rows
+        boolean[] bandStarts = new boolean[height];
+        ThreadPool.parallelRows(height, width, pt, (fromY, toY) -> {
+            bandStarts[fromY] = true;
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                for (int x = 0; x < width; x++) {
+                    int index = x + y * width;
+                    if (magnitude[index] < candidateMin) {
+                        labels[index] = NOT_CANDIDATE;
+                        continue;
+                    }
+                    labels[index] = WEAK_ROOT;
+                    if (x > 0) {
+                        union(labels, index, index - 1);
+                    }
+                    if (y > fromY) {
+                        connectToRowAbove(labels, x, index);
+                    }
+                }
+            }
+        });
+
+        // then they are joined across the band boundaries
+        for (int y = 1; y < height; y++) {
+            if (bandStarts[y]) {
+                for (int x = 0; x < width; x++) {
+                    int index = x + y * width;
+                    if (labels[index] != NOT_CANDIDATE) {
+                        connectToRowAbove(labels, x, index);
+                    }
                 }
-                offset++;
             }
         }
-    }
 
-    private void follow(int x1, int y1, int i1, int threshold) {
-        int x0 = x1 == 0 ? x1 : x1 - 1;
-        int x2 = x1 == width - 1 ? x1 : x1 + 1;
-        int y0 = y1 == 0 ? y1 : y1 - 1;
-        int y2 = y1 == height - 1 ? y1 : y1 + 1;
-
-        data[i1] = magnitude[i1];
-        for (int x = x0; x <= x2; x++) {
-            for (int y = y0; y <= y2; y++) {
-                int i2 = x + y * width;
-                if ((y != y1 || x != x1)
-                    && data[i2] == 0
-                    && magnitude[i2] >= threshold) {
-                    follow(x, y, i2, threshold);
-                    return;
+        // a component is an edge if it has a pixel above the high threshold
+        ThreadPool.parallelRows(height, width, ProgressTracker.NULL_TRACKER, (fromY, toY) -> {
+            for (int index = fromY * width; index < toY * width; index++) {
+                if (labels[index] != NOT_CANDIDATE && magnitude[index] >= high) {
+                    labels[findRoot(labels, index)] = STRONG_ROOT;
                 }
             }
+        });
+
+        // the magnitudes aren't needed anymore, so the edges are written there
+        ThreadPool.parallelRows(height, width, pt, (fromY, toY) -> {
+            CancellationToken.checkCurrent();
+            for (int index = fromY * width; index < toY * width; index++) {
+                boolean edge = labels[index] != NOT_CANDIDATE
+                        && labels[findRoot(labels, index)] == STRONG_ROOT;
+                magnitude[index] = edge ? -1 : 0xff000000;
+            }
+        });
+    }
+
+    private void connectToRowAbove(int[] labels, int x, int index) {
+        int above = index - width;
+        if (x > 0) {
+            union(labels, index, above - 1);
+        }
+        union(labels, index, above);
+        if (x < width - 1) {
+            union(labels, index, above + 1);
         }
     }
 
-    private void thresholdEdges() {
-        for (int i = 0; i < picsize; i++) {
-            data[i] = data[i] > 0 ? -1 : 0xff000000;
+    // joins the components of the given pixels, if the second one is also a candidate
+    private static void union(int[] labels, int index1, int index2) {
+        if (labels[index2] == NOT_CANDIDATE) {
+            return;
+        }
+        int root1 = findRootAndCompress(labels, index1);
+        int root2 = findRootAndCompress(labels, index2);
+        // the root is always the pixel with the smallest index
+        if (root1 < root2) {
+            labels[root2] = root1;
+        } else if (root2 < root1) {
+            labels[root1] = root2;
         }
     }
 
+    // doesn't modify the labels, therefore it can be called from several threads
+    private static int findRoot(int[] labels, int index) {
+        while (labels[index] >= 0) {
+            index = labels[index];
+        }
+        return index;
+    }
+
+    private static int findRootAndCompress(int[] labels, int index) {
+        int root = findRoot(labels, index);
+        while (labels[index] >= 0) {
+            int next = labels[index];
+            labels[index] = root;
+            index = next;
+        }
+        return root;
+    }
+
     private static int luminance(float r, float g, float b) {
         return Math.round(0.299f * r + 0.587f * g + 0.114f * b);
     }
 
     private void readLuminance() {
         int type = sourceImage.getType();
+        if (type != BufferedImage.TYPE_INT_RGB
+            && type != BufferedImage.TYPE_INT_ARGB
+            && type != BufferedImage.TYPE_INT_ARGB_PRE
+            && type != BufferedImage.TYPE_BYTE_GRAY
+            && type != BufferedImage.TYPE_USHORT_GRAY
+            && type != BufferedImage.TYPE_3BYTE_BGR) {
+            throw new IllegalArgumentException("Unsupported image type: " + type);
+        }
+
+        Object pixels = sourceImage.getRaster().getDataElements(0, 0, width, height, null);
+        ThreadPool.parallelRows(height, width, pt, (fromY, toY) -> {
+            CancellationToken.checkCurrent();
+            readLuminance(type, pixels, fromY * width, toY * width);
+        });
+    }
+
+    private void readLuminance(int type, Object pixelArray, int from, int to) {
         if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
-            int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
+            int[] pixels = (int[]) pixelArray;
+            for (int i = from; i < to; i++) {
                 int p = pixels[i];
                 int r = (p & 0xff0000) >> 16;
                 int g = (p & 0xff00) >> 8;
@@ -559,8 +692,8 @@ public class CannyEdgeDetector {
                 data[i] = luminance(r, g, b);
             }
         } else if (type == BufferedImage.TYPE_INT_ARGB_PRE) {
-            int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
+            int[] pixels = (int[]) pixelArray;
+            for (int i = from; i < to; i++) {
                 int p = pixels[i];
                 int a = (p >>> 24) & 0xff;
                 int r = (p & 0xff0000) >> 16;
@@ -581,33 +714,31 @@ public class CannyEdgeDetector {
                 data[i] = lum;
             }
         } else if (type == BufferedImage.TYPE_BYTE_GRAY) {
-            byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
+            byte[] pixels = (byte[]) pixelArray;
+            for (int i = from; i < to; i++) {
                 data[i] = (pixels[i] & 0xff);
             }
         } else if (type == BufferedImage.TYPE_USHORT_GRAY) {
-            short[] pixels = (short[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
+            short[] pixels = (short[]) pixelArray;
+            for (int i = from; i < to; i++) {
                 data[i] = (pixels[i] & 0xffff) / 256;
             }
         } else if (type == BufferedImage.TYPE_3BYTE_BGR) {
-            byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            int offset = 0;
-            for (int i = 0; i < picsize; i++) {
+            byte[] pixels = (byte[]) pixelArray;
+            int offset = from * 3;
+            for (int i = from; i < to; i++) {
                 int b = pixels[offset++] & 0xff;
                 int g = pixels[offset++] & 0xff;
                 int r = pixels[offset++] & 0xff;
                 data[i] = luminance(r, g, b);
             }
-        } else {
-            throw new IllegalArgumentException("Unsupported image type: " + type);
         }
     }
 
     private void normalizeContrast() {
         int[] histogram = new int[256];
-        for (int datum : data) {
-            histogram[datum]++;
+        for (int i = 0; i < picsize; i++) {
+            histogram[data[i]]++;
         }
         int[] remap = new int[256];
         int sum = 0;
@@ -621,9 +752,11 @@ public class CannyEdgeDetector {
             j = target;
         }
 
-        for (int i = 0; i < data.length; i++) {
-            data[i] = remap[data[i]];
-        }
+        ThreadPool.parallelRows(height, width, ProgressTracker.NULL_TRACKER, (fromY, toY) -> {
+            for (int i = fromY * width; i < toY * width; i++) {
+                data[i] = remap[data[i]];
+            }
+        });
     }
 
     private void writeEdges(int[] pixels) {
@@ -635,4 +768,22 @@ public class CannyEdgeDetector {
         }
         edgesImage.getWritableTile(0, 0).setDataElements(0, 0, width, height, pixels);
     }
+
+    private static class Buffers {
+        final int[] data;
+        final int[] magnitude;
+        final float[] xConv;
+        final float[] yConv;
+        final float[] xGradient;
+        final float[] yGradient;
+
+        Buffers(int size) {
+            data = new int[size];
+            magnitude = new int[size];
+            xConv = new float[size];
+            yConv = new float[size];
+            xGradient = new float[size];
+            yGradient = new float[size];
+        }
+    }
 }
@@ -17,6 +17,8 @@
 
 package pixelitor;
 
+import pixelitor.filters.levels.RGBLookup;
+import pixelitor.filters.lookup.FastLookupOp;
 import pixelitor.gui.HistogramsPanel;
 import pixelitor.gui.PixelitorWindow;
 import pixelitor.gui.View;
@@ -38,6 +40,7 @@ import pixelitor.history.SelectionShapeChangeEdit;
 import pixelitor.io.IOThread;
 import pixelitor.io.OutputFormat;
 import pixelitor.io.SaveSettings;
+import pixelitor.layers.AdjustmentLayer;
 import pixelitor.layers.ContentLayer;
 import pixelitor.layers.Drawable;
 import pixelitor.layers.ImageLayer;
@@ -56,6 +59,8 @@ import pixelitor.tools.pen.Path;
 import pixelitor.tools.pen.Paths;
 import pixelitor.tools.util.PPoint;
 import pixelitor.tools.util.PRectangle;
+import pixelitor.utils.DirtyTiles;
+import pixelitor.utils.ImagePyramid;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 import pixelitor.utils.VisibleForTesting;
@@ -70,11 +75,13 @@ import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.ShortLookupTable;
 import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -98,6 +105,11 @@ public class Composition implements Serializable {
     // serialization is used for saving in the pxc format
     private static final long serialVersionUID = 1L;
 
+    // smaller images are composited on a single thread,
+    // because starting the bands would cost more than it saves
+    private static final int MIN_PIXELS_FOR_BANDS = 512 * 512;
+    private static final int MIN_BAND_HEIGHT = 32;
+
     // a counter for the names of new layers
     private int newLayerCount = 1;
 
@@ -117,6 +129,33 @@ public class Composition implements Serializable {
 
     private transient BufferedImage compositeImage;
 
+    // the tiles of the composite image that have to be recalculated
+    private transient DirtyTiles dirtyTiles;
+
+    // true if the composite image was given to code which might
+    // keep a reference to it, so it must not be updated in place
+    private transient boolean compositeImageShared;
+
+    // the cached composites bellow and above the edited layer,
+    // created only after the active layer is edited
+    private transient LayerStackCache stackCache;
+
+    // true if the current composite image was calculated using the stackCache
+    private transient boolean compositeFromStackCache;
+
+    // the cached ruby overlay of the selection and the state
+    // of the selections and of the canvas it was calculated from
+    private transient Shape rubyOverlayShape;
+    private transient List<Object> rubyOverlayKey;
+
+    // the downsampled versions of the composite image,
+    // created only when painting at zoom levels of 50% or less
+    private transient ImagePyramid pyramid;
+
+    // the tiles of the composite image that were recalculated
+    // in place since the histograms were last requested
+    private transient DirtyTiles histogramDirtyTiles;
+
     private transient View view;
 
     private transient Selection selection;
@@ -219,6 +258,14 @@ public class Composition implements Serializable {
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         // init transient variables
         compositeImage = null; // will be set when needed
+        dirtyTiles = null;
+        compositeImageShared = false;
+        stackCache = null;
+        compositeFromStackCache = false;
+        pyramid = null;
+        histogramDirtyTiles = null;
+        rubyOverlayShape = null;
+        rubyOverlayKey = null;
         file = null; // will be set later
         dirty = false;
         view = null; // will be set later
@@ -395,7 +442,14 @@ public class Composition implements Serializable {
         // apply the effect of the merged layer to the image of the image layer
         Graphics2D g = bellowImage.createGraphics();
         g.translate(-bellowLayer.getTx(), -bellowLayer.getTy());
-        BufferedImage result = layer.applyLayer(g, bellowImage, false);
+        BufferedImage result;
+        if (layer instanceof AdjustmentLayer) {
+            // the cached output of the adjustment layer belongs
+            // to the composite of all the layers bellow it
+            result = ((AdjustmentLayer) layer).applyLayerUncached(g, bellowImage);
+        } else {
+            result = layer.applyLayer(g, bellowImage, false);
+        }
         if (result != null) {  // this was an adjustment
             bellowLayer.setImage(result);
         }
@@ -655,7 +709,7 @@ public class Composition implements Serializable {
                 selection.moveWhileDragging(relImX, relImY);
             }
         }
-        imageChanged();
+        layerChanged(activeLayer);
     }
 
     public void endMovement(MoveMode mode) {
@@ -815,28 +869,162 @@ public class Composition implements Serializable {
 
         BufferedImage imageSoFar = new BufferedImage(
                 canvas.getImWidth(), canvas.getImHeight(), TYPE_INT_ARGB_PRE);
-        Graphics2D g = imageSoFar.createGraphics();
 
-        boolean firstVisibleLayer = true;
-        for (Layer layer : layerList) {
+        return applyLayers(layerList, 0, layerList.size(), imageSoFar, true);
+    }
+
+    /**
+     * Applies the visible layers from the given index range on the given image.
+     * Returns the result, which is a different image if an adjustment
+     * layer or a watermarking text layer replaced it.
+     */
+    static BufferedImage applyLayers(List<Layer> layers, int from, int to,
+                                     BufferedImage imageSoFar,
+                                     boolean firstVisibleLayer) {
+        if (canApplyInBands(layers, from, to, imageSoFar)) {
+            int numBands = Math.min(ThreadPool.getNumCores(),
+                    imageSoFar.getHeight() / MIN_BAND_HEIGHT);
+            applyLayersInBands(layers, from, to, imageSoFar, firstVisibleLayer, numBands);
+            return imageSoFar;
+        }
+
+        Graphics2D g = imageSoFar.createGraphics();
+        for (int i = from; i < to; i++) {
+            Layer layer = layers.get(i);
             if (layer.isVisible()) {
+                int fusedTo = firstVisibleLayer ? i : findFusableLookups(layers, i, to);
+                if (fusedTo > i) {
+                    imageSoFar = applyFusedLookups(layers, i, fusedTo, imageSoFar);
+                    g.dispose();
+                    g = imageSoFar.createGraphics();
+                    i = fusedTo - 1;
+                    continue;
+                }
+
                 BufferedImage result = layer.applyLayer(g, imageSoFar, firstVisibleLayer);
                 if (result != null) { // adjustment layer or watermarking text layer
                     imageSoFar = result;
-                    if (g != null) {
-                        g.dispose();
-                    }
+                    g.dispose();
                     g = imageSoFar.createGraphics();
                 }
                 firstVisibleLayer = false;
             }
         }
-
         g.dispose();
 
         return imageSoFar;
     }
 
+    /**
+     * Returns the end of the run of visible adjustment layers starting
+     * at the given index that can be fused into a single lookup,
+     * or the start index if there are not at least two of them.
+     */
+    private static int findFusableLookups(List<Layer> layers, int start, int to) {
+        int numFusable = 0;
+        int end = start;
+        for (int i = start; i < to; i++) {
+            Layer layer = layers.get(i);
+            if (layer.isVisible()) {
+                if (!(layer instanceof AdjustmentLayer)
+                        || ((AdjustmentLayer) layer).getFusableLookup() == null) {
+                    break;
+                }
+                numFusable++;
+            }
+            end = i + 1;
+        }
+        return numFusable >= 2 ? end : start;
+    }
+
+    /**
+     * Applies the lookup adjustment layers from the given range on the given
+     * image in one pass, instead of running their filters one after the other.
+     */
+    private static BufferedImage applyFusedLookups(List<Layer> layers, int from, int to,
+                                                   BufferedImage imageSoFar) {
+        RGBLookup fused = null;
+        for (int i = from; i < to; i++) {
+            Layer layer = layers.get(i);
+            if (layer.isVisible()) {
+                RGBLookup lookup = ((AdjustmentLayer) layer).getFusableLookup();
+                fused = fused == null ? lookup : fused.then(lookup);
+            }
+        }
+
+        BufferedImage result = ImageUtils.createImageWithSameCM(imageSoFar);
+        var op = new FastLookupOp((ShortLookupTable) fused.getLookupOp());
+        op.filter(imageSoFar, result);
+        return result;
+    }
+
+    private static boolean canApplyInBands(List<Layer> layers, int from, int to,
+                                           BufferedImage imageSoFar) {
+        if (ThreadPool.getNumCores() < 2) {
+            return false;
+        }
+        long numPixels = (long) imageSoFar.getWidth() * imageSoFar.getHeight();
+        if (numPixels < MIN_PIXELS_FOR_BANDS
+                || imageSoFar.getHeight() < 2 * MIN_BAND_HEIGHT) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            Layer layer = layers.get(i);
+            if (layer.isVisible() && !layer.canBeAppliedInBands()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits the image into horizontal bands and applies the layers
+     * on each band on a different thread. Each band is clipped, so
+     * the blending modes work exactly as in the single-threaded case.
+     */
+    @VisibleForTesting
+    public static void applyLayersInBands(List<Layer> layers, int from, int to,
+                                          BufferedImage imageSoFar,
+                                          boolean firstVisibleLayer, int numBands) {
+        boolean first = firstVisibleLayer;
+        for (int i = from; i < to; i++) {
+            Layer layer = layers.get(i);
+            if (layer.isVisible()) {
+                layer.prepareForBands(first);
+                first = false;
+            }
+        }
+
+        int width = imageSoFar.getWidth();
+        int height = imageSoFar.getHeight();
+        int bandHeight = (height + numBands - 1) / numBands;
+
+        ThreadPool.parallelFor(numBands, band -> {
+            int bandY = band * bandHeight;
+            int bandHeightHere = Math.min(bandHeight, height - bandY);
+            if (bandHeightHere <= 0) {
+                return;
+            }
+            BufferedImage bandImage = imageSoFar.getSubimage(
+                    0, bandY, width, bandHeightHere);
+            Graphics2D g = bandImage.createGraphics();
+            // the layers paint in canvas coordinates, clipped to the band
+            g.translate(0, -bandY);
+            g.clipRect(0, bandY, width, bandHeightHere);
+
+            boolean firstInBand = firstVisibleLayer;
+            for (int i = from; i < to; i++) {
+                Layer layer = layers.get(i);
+                if (layer.isVisible()) {
+                    BufferedImage result = layer.applyLayer(g, bandImage, firstInBand);
+                    assert result == null : "adjustment in " + layer.getName();
+                    firstInBand = false;
+                }
+            }
+            g.dispose();
+        });
+    }
+
     public String generateNewLayerName() {
         String retVal = "layer " + newLayerCount;
         newLayerCount++;
@@ -844,7 +1032,13 @@ public class Composition implements Serializable {
     }
 
     public void repaintRegion(PPoint start, PPoint end, double thickness) {
-        invalidateCompositeCache();
+        double minX = Math.min(start.getImX(), end.getImX()) - thickness;
+        double minY = Math.min(start.getImY(), end.getImY()) - thickness;
+        double maxX = Math.max(start.getImX(), end.getImX()) + thickness;
+        double maxY = Math.max(start.getImY(), end.getImY()) + thickness;
+        invalidateCompositeRegion(new Rectangle2D.Double(
+                minX, minY, maxX - minX, maxY - minY));
+
         if (view != null) { // during reload image it can be null
             view.repaintRegion(start, end, thickness);
             view.repaintNavigator(false);
@@ -852,7 +1046,7 @@ public class Composition implements Serializable {
     }
 
     public void repaintRegion(PRectangle area) {
-        invalidateCompositeCache();
+        invalidateCompositeRegion(area.getIm());
         if (view != null) { // during reload image it can be null
             view.repaintRegion(area);
             view.repaintNavigator(false);
@@ -887,15 +1081,32 @@ public class Composition implements Serializable {
     }
 
     private void paintSelectionAsRubyOverlay(Graphics2D g) {
-        Shape totalShape = calcTotalSelectionShape();
-        if (totalShape != null) {
-            Shape inverted = canvas.invertShape(totalShape);
+        Shape overlay = getRubyOverlayShape();
+        if (overlay != null) {
             g.setComposite(AlphaComposite.SrcOver.derive(0.5f));
             g.setColor(Color.RED);
-            g.fill(inverted);
+            g.fill(overlay);
         }
     }
 
+    /**
+     * Returns the inverted total selection shape. The Area operations
+     * are expensive, so it is recalculated only if a selection
+     * or the canvas size changed since the last paint.
+     */
+    private Shape getRubyOverlayShape() {
+        List<Object> key = Arrays.asList(
+                builtSelection, builtSelection == null ? 0 : builtSelection.getShapeVersion(),
+                selection, selection == null ? 0 : selection.getShapeVersion(),
+                canvas.getImWidth(), canvas.getImHeight());
+        if (!key.equals(rubyOverlayKey)) {
+            rubyOverlayKey = key;
+            Shape totalShape = calcTotalSelectionShape();
+            rubyOverlayShape = totalShape == null ? null : canvas.invertShape(totalShape);
+        }
+        return rubyOverlayShape;
+    }
+
     private Shape calcTotalSelectionShape() {
         Shape totalShape = null;
         if (builtSelection != null) {
@@ -1138,14 +1349,180 @@ public class Composition implements Serializable {
 
     /**
      * Returns the composite image, which has the same dimensions as the canvas.
+     * The returned image is not modified later by this composition.
      */
     public BufferedImage getCompositeImage() {
-        if(compositeImage == null) {
-            compositeImage = calculateCompositeImage();
-        }
+        updateCompositeCache();
+        compositeImageShared = true;
         return compositeImage;
     }
 
+    /**
+     * Returns the composite image for code that only reads it
+     * immediately (like painting) and doesn't keep a reference to it,
+     * because the returned image can be updated in place later.
+     */
+    public BufferedImage getCompositeImageForPainting() {
+        updateCompositeCache();
+        return compositeImage;
+    }
+
+    /**
+     * Returns the areas of the composite image that changed since the
+     * last call, or null if the whole composite image could have changed.
+     */
+    public List<Rectangle> takeHistogramChanges() {
+        int width = canvas.getImWidth();
+        int height = canvas.getImHeight();
+        if (histogramDirtyTiles == null || !histogramDirtyTiles.hasSize(width, height)) {
+            histogramDirtyTiles = new DirtyTiles(width, height);
+            return null;
+        }
+        if (histogramDirtyTiles.isAllDirty()) {
+            histogramDirtyTiles.markAllClean();
+            return null;
+        }
+        List<Rectangle> changes = new ArrayList<>();
+        histogramDirtyTiles.cleanDirtyTiles(changes::add);
+        return changes;
+    }
+
+    /**
+     * Like getCompositeImageForPainting(), but when painting with
+     * the given scaling (at most 0.5), it returns a smaller,
+     * downsampled version of the composite image, which still has
+     * enough pixels for the given scaling. The returned image must
+     * be painted over the whole canvas area.
+     */
+    public BufferedImage getCompositeImageForPainting(double scaling) {
+        BufferedImage image = getCompositeImageForPainting();
+        if (scaling > 0.5 || image.getType() != TYPE_INT_ARGB_PRE) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (pyramid == null || !pyramid.hasSize(width, height)) {
+            if (pyramid != null) {
+                pyramid.dispose();
+            }
+            pyramid = new ImagePyramid(width, height);
+        }
+        return pyramid.getLevel(image, pyramid.getLevelFor(scaling));
+    }
+
+    private void updateCompositeCache() {
+        if (compositeImage == null) {
+            compositeFromStackCache = stackCache != null;
+            if (compositeFromStackCache) {
+                compositeImage = stackCache.calcCompositeImage(layerList,
+                        canvas.getImWidth(), canvas.getImHeight());
+            } else {
+                compositeImage = calculateCompositeImage();
+            }
+            compositeImageShared = false;
+            if (dirtyTiles == null || !dirtyTiles.hasSize(
+                    compositeImage.getWidth(), compositeImage.getHeight())) {
+                dirtyTiles = new DirtyTiles(
+                        compositeImage.getWidth(), compositeImage.getHeight());
+            } else {
+                dirtyTiles.markAllClean();
+            }
+        } else if (dirtyTiles.hasDirtyTiles()) {
+            dirtyTiles.cleanDirtyTiles(this::recalcCompositeTile);
+        }
+    }
+
+    private void recalcCompositeTile(Rectangle tile) {
+        recalcTile(layerList, compositeImage, tile,
+                compositeFromStackCache ? stackCache : null);
+    }
+
+    /**
+     * Re-blends the layers only within the given tile of the composite image.
+     * The stack cache is the one that calculated the composite image, or null.
+     */
+    @VisibleForTesting
+    static void recalcTile(List<Layer> layers, BufferedImage composite,
+                           Rectangle tile, LayerStackCache stackCache) {
+        BufferedImage tileImage = composite.getSubimage(
+                tile.x, tile.y, tile.width, tile.height);
+        Graphics2D g = tileImage.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, tile.width, tile.height);
+
+        // after the translation the layers can paint
+        // in canvas coordinates, clipped to the tile
+        g.translate(-tile.x, -tile.y);
+        g.clipRect(tile.x, tile.y, tile.width, tile.height);
+
+        if (stackCache != null) {
+            stackCache.recalcTile(layers, g, tileImage, tile);
+        } else {
+            boolean firstVisibleLayer = true;
+            for (Layer layer : layers) {
+                if (layer.isVisible()) {
+                    BufferedImage result = layer.applyLayer(g, tileImage, firstVisibleLayer);
+                    assert result == null : "adjustment in " + layer.getName();
+                    firstVisibleLayer = false;
+                }
+            }
+        }
+        g.dispose();
+    }
+
+    /**
+     * Only the tiles touched by the given area (in image space) will be
+     * recalculated the next time the composite image is needed.
+     */
+    @VisibleForTesting
+    void invalidateCompositeRegion(Rectangle2D imArea) {
+        // the region changes come from the tools editing the active layer
+        activeLayer.contentChanged(imArea);
+
+        if (compositeImage == null) {
+            return; // will be fully recalculated anyway
+        }
+        if (compositeImageShared || !canUpdateCompositeInTiles()
+                || !dirtyTiles.hasSize(canvas.getImWidth(), canvas.getImHeight())) {
+            invalidateCompositeCache();
+            return;
+        }
+
+        // enlarge the area with a pixel in each direction
+        // to be safe from antialiasing and rounding effects
+        Rectangle area = imArea.getBounds();
+        area.grow(1, 1);
+        dirtyTiles.markDirty(area);
+        if (pyramid != null) {
+            pyramid.markDirty(area);
+        }
+        if (histogramDirtyTiles != null) {
+            histogramDirtyTiles.markDirty(area);
+        }
+    }
+
+    /**
+     * Adjustment layers transform the whole image bellow them,
+     * and their result at a pixel can depend on far away pixels,
+     * therefore in their presence the composite can't be
+     * recalculated tile by tile (unless they are cached bellow
+     * the edited layer).
+     */
+    private boolean canUpdateCompositeInTiles() {
+        if (compositeFromStackCache) {
+            // the tiles are invalidated because the active layer changed
+            return stackCache.isSplitLayer(activeLayer)
+                    && stackCache.canUpdateInTiles(layerList);
+        }
+        for (Layer layer : layerList) {
+            if (layer.isVisible() && layer.isAdjustment()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void imageChanged() {
         imageChanged(FULL);
     }
@@ -1159,8 +1536,55 @@ public class Composition implements Serializable {
      * and additional actions might be necessary
      */
     public void imageChanged(ImageChangeActions actions, boolean sizeChanged) {
+        invalidateStackCache();
+        invalidateCompositeCache();
+        layerList.forEach(Layer::contentChanged);
+
+        updateAfterImageChange(actions, sizeChanged);
+    }
+
+    public void layerChanged(Layer layer) {
+        layerChanged(layer, FULL);
+    }
+
+    /**
+     * Like imageChanged, but only the given layer (or its mask) changed,
+     * therefore the cached composites of the other layers can be reused.
+     */
+    public void layerChanged(Layer layer, ImageChangeActions actions) {
+        if (layer.getOwner() != null) { // a layer mask
+            layer = layer.getOwner();
+        }
+        layer.contentChanged();
+
+        if (stackCache != null && !stackCache.isSplitLayer(layer)) {
+            int changedIndex = layerList.indexOf(layer);
+            if (stackCache.isSplitLayer(activeLayer) && changedIndex != -1) {
+                stackCache.layerChanged(changedIndex, layerList.indexOf(activeLayer));
+            } else {
+                invalidateStackCache();
+            }
+        }
+
+        // caching makes sense only if the edited layer is the active one,
+        // and only while the composition is edited in a view
+        if (stackCache == null && layer == activeLayer
+                && view != null && layerList.size() > 1) {
+            stackCache = new LayerStackCache(layer);
+        }
+
         invalidateCompositeCache();
+        updateAfterImageChange(actions, false);
+    }
 
+    private void invalidateStackCache() {
+        if (stackCache != null) {
+            stackCache.dispose();
+            stackCache = null;
+        }
+    }
+
+    private void updateAfterImageChange(ImageChangeActions actions, boolean sizeChanged) {
         if (actions.repaintNeeded()) {
             if (view != null) {
                 view.repaint();
@@ -1178,6 +1602,14 @@ public class Composition implements Serializable {
             compositeImage.flush();
         }
         compositeImage = null;
+        compositeImageShared = false;
+        compositeFromStackCache = false;
+        if (pyramid != null) {
+            pyramid.markAllDirty();
+        }
+        if (histogramDirtyTiles != null) {
+            histogramDirtyTiles.markAllDirty();
+        }
     }
 
     public boolean isActive() {
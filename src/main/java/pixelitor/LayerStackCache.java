@@ -0,0 +1,267 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import pixelitor.layers.BlendingMode;
+import pixelitor.layers.Layer;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * Caches the composite of the layers bellow and above a "split layer"
+ * (the edited layer), so that when only the split layer changes,
+ * the composite image can be recalculated by blending a single layer
+ * between two cached images, independently of the number of layers.
+ *
+ * The layers above the split layer can be pre-blended only if all
+ * of them are normal (not adjustment) layers with the normal blending
+ * mode, because only then is their blending associative (up to
+ * the rounding of the 8-bit channels, so the result can differ from
+ * blending them one by one by a level or two).
+ * Otherwise they are applied one by one on top of the split layer.
+ */
+class LayerStackCache {
+    private final Layer splitLayer;
+
+    // the layer list at the time of the last calculation, because
+    // adding or removing a layer (even without changing the composite
+    // image) also invalidates the cached images
+    private List<Layer> layersSnapshot;
+
+    // the composite of the visible layers bellow the split layer,
+    // or null if there are no visible layers bellow it
+    private BufferedImage bellowImage;
+    private boolean bellowValid = false;
+
+    // the visible layers above the split layer, pre-blended
+    // into a transparent image, or null if there are no visible
+    // layers above, or if they can't be pre-blended
+    private BufferedImage aboveImage;
+    private boolean abovePreBlended;
+    private boolean aboveValid = false;
+
+    LayerStackCache(Layer splitLayer) {
+        this.splitLayer = splitLayer;
+    }
+
+    boolean isSplitLayer(Layer layer) {
+        return layer == splitLayer;
+    }
+
+    /**
+     * The layer at the given index changed, so the
+     * cached image containing it must be recalculated
+     */
+    void layerChanged(int changedIndex, int splitIndex) {
+        if (changedIndex < splitIndex) {
+            invalidateBellow();
+        } else if (changedIndex > splitIndex) {
+            invalidateAbove();
+        }
+    }
+
+    private void invalidateBellow() {
+        if (bellowImage != null) {
+            bellowImage.flush();
+            bellowImage = null;
+        }
+        bellowValid = false;
+    }
+
+    private void invalidateAbove() {
+        if (aboveImage != null) {
+            aboveImage.flush();
+            aboveImage = null;
+        }
+        aboveValid = false;
+    }
+
+    void dispose() {
+        invalidateBellow();
+        invalidateAbove();
+    }
+
+    /**
+     * Calculates the full composite image, reusing
+     * (and if necessary recalculating) the cached images.
+     */
+    BufferedImage calcCompositeImage(List<Layer> layers, int width, int height) {
+        int splitIndex = layers.indexOf(splitLayer);
+        assert splitIndex != -1 : splitLayer.getName() + " not in " + layers;
+
+        if (!layers.equals(layersSnapshot)) {
+            dispose();
+            layersSnapshot = new ArrayList<>(layers);
+        }
+        updateCachedImages(layers, splitIndex, width, height);
+
+        BufferedImage imageSoFar;
+        if (bellowImage != null) {
+            imageSoFar = new BufferedImage(bellowImage.getColorModel(),
+                    bellowImage.copyData(null), bellowImage.isAlphaPremultiplied(), null);
+        } else {
+            imageSoFar = new BufferedImage(width, height, TYPE_INT_ARGB_PRE);
+        }
+        boolean firstVisibleLayer = bellowImage == null;
+
+        if (splitLayer.isVisible()) {
+            imageSoFar = Composition.applyLayers(layers, splitIndex, splitIndex + 1,
+                    imageSoFar, firstVisibleLayer);
+            firstVisibleLayer = false;
+        }
+
+        if (abovePreBlended) {
+            Graphics2D g = imageSoFar.createGraphics();
+            g.drawImage(aboveImage, 0, 0, null);
+            g.dispose();
+        } else {
+            imageSoFar = Composition.applyLayers(layers, splitIndex + 1, layers.size(),
+                    imageSoFar, firstVisibleLayer);
+        }
+        return imageSoFar;
+    }
+
+    private void updateCachedImages(List<Layer> layers, int splitIndex,
+                                    int width, int height) {
+        if (bellowImage != null && (bellowImage.getWidth() != width
+                || bellowImage.getHeight() != height)) {
+            invalidateBellow();
+        }
+        if (aboveImage != null && (aboveImage.getWidth() != width
+                || aboveImage.getHeight() != height)) {
+            invalidateAbove();
+        }
+
+        if (!bellowValid) {
+            if (hasVisibleLayer(layers, 0, splitIndex)) {
+                bellowImage = Composition.applyLayers(layers, 0, splitIndex,
+                        new BufferedImage(width, height, TYPE_INT_ARGB_PRE), true);
+            }
+            bellowValid = true;
+        }
+
+        if (!aboveValid) {
+            abovePreBlended = false;
+            if (canPreBlend(layers, splitIndex + 1, layers.size())) {
+                aboveImage = Composition.applyLayers(layers, splitIndex + 1, layers.size(),
+                        new BufferedImage(width, height, TYPE_INT_ARGB_PRE), true);
+                abovePreBlended = true;
+            }
+            aboveValid = true;
+        }
+    }
+
+    /**
+     * Returns true if all the visible layers in the given range
+     * can be blended together before blending them with the
+     * layers bellow them. This also returns false if there
+     * are no visible layers in the range.
+     */
+    private static boolean canPreBlend(List<Layer> layers, int from, int to) {
+        boolean foundVisible = false;
+        for (int i = from; i < to; i++) {
+            Layer layer = layers.get(i);
+            if (layer.isVisible()) {
+                if (layer.isAdjustment()
+                        || layer.getBlendingMode() != BlendingMode.NORMAL) {
+                    return false;
+                }
+                foundVisible = true;
+            }
+        }
+        return foundVisible;
+    }
+
+    private static boolean hasVisibleLayer(List<Layer> layers, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (layers.get(i).isVisible()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if a composite image calculated by this cache can be
+     * updated tile by tile. The layers bellow don't matter, because
+     * their result is cached.
+     */
+    boolean canUpdateInTiles(List<Layer> layers) {
+        if (!layers.equals(layersSnapshot)) {
+            return false;
+        }
+        if (splitLayer.isVisible() && splitLayer.isAdjustment()) {
+            return false;
+        }
+        if (abovePreBlended) {
+            return true;
+        }
+        int splitIndex = layers.indexOf(splitLayer);
+        for (int i = splitIndex + 1; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if (layer.isVisible() && layer.isAdjustment()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Recalculates the given tile of a composite image that was
+     * previously calculated by this cache. The given graphics must
+     * be translated into canvas coordinates and clipped to the tile.
+     */
+    void recalcTile(List<Layer> layers, Graphics2D g,
+                    BufferedImage tileImage, Rectangle tile) {
+        assert bellowValid && aboveValid;
+
+        if (bellowImage != null) {
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(bellowImage, 0, 0, null);
+        }
+        boolean firstVisibleLayer = bellowImage == null;
+
+        int splitIndex = layers.indexOf(splitLayer);
+        if (splitLayer.isVisible()) {
+            BufferedImage result = splitLayer.applyLayer(g, tileImage, firstVisibleLayer);
+            assert result == null : "adjustment in " + splitLayer.getName();
+            firstVisibleLayer = false;
+        }
+
+        if (abovePreBlended) {
+            g.setComposite(AlphaComposite.SrcOver);
+            g.drawImage(aboveImage, 0, 0, null);
+        } else {
+            for (int i = splitIndex + 1; i < layers.size(); i++) {
+                Layer layer = layers.get(i);
+                if (layer.isVisible()) {
+                    BufferedImage result = layer.applyLayer(g, tileImage, firstVisibleLayer);
+                    assert result == null : "adjustment in " + layer.getName();
+                    firstVisibleLayer = false;
+                }
+            }
+        }
+    }
+}
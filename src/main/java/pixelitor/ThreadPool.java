@@ -17,16 +17,24 @@
 
 package pixelitor;
 
-import com.jhlabs.image.AbstractBufferedImageOp;
+import pixelitor.utils.CancellationToken;
 import pixelitor.utils.ProgressTracker;
 
-import java.awt.image.BufferedImage;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * A thread pool for parallel execution on multiple CPU cores
@@ -37,9 +45,31 @@ public class ThreadPool {
     private static final ExecutorService executorService =
             Executors.newFixedThreadPool(NUM_CORES);
 
+    // used for the data-parallel loops
+    private static final ForkJoinPool forkJoinPool = new ForkJoinPool(NUM_CORES);
+
+    // a range is split until it has about this many chunks per core,
+    // so that the cores finishing early can steal the remaining work
+    private static final int CHUNKS_PER_CORE = 8;
+
+    // the chunks are not split further than this (measured in pixels),
+    // because then the scheduling would cost more than the work
+    private static final int MIN_CHUNK_SIZE = 16 * 1024;
+
+    // how often the progress is reported while waiting
+    private static final long PROGRESS_MILLIS = 50;
+
     private ThreadPool() {
     }
 
+    /**
+     * Processes the rows from fromY (inclusive) to toY (exclusive)
+     */
+    @FunctionalInterface
+    public interface RowsTask {
+        void processRows(int fromY, int toY);
+    }
+
     /**
      * Submits a task that doesn't return anything
      */
@@ -48,72 +78,184 @@ public class ThreadPool {
     }
 
     /**
-     * Submits a task that returns something, such as
-     * the calculated pixels in a line
+     * Processes the given number of rows (or other independent work
+     * items) in parallel, in chunks of consecutive rows. The chunk size
+     * adapts to the work: tall images are split into enough chunks
+     * for the load balancing, while small images are not split into
+     * chunks so small that the scheduling would dominate.
+     * The row length is the approximate cost of a row in pixels.
+     * The given {@link ProgressTracker} is updated with one
+     * unit per row, always on the calling thread.
+     *
+     * The {@link CancellationToken} of the calling thread is also
+     * the current token of the worker threads while they process the
+     * rows. After a cancellation, the chunks that haven't started
+     * are skipped, and a {@link CancellationException} is thrown.
      */
-    public static <T> Future<T> submit2(Callable<T> task) {
-        return executorService.submit(task);
+    public static void parallelRows(int numRows, int rowLength,
+                                    ProgressTracker pt, RowsTask task) {
+        assert pt != null;
+        if (numRows <= 0) {
+            return;
+        }
+
+        int chunkRows = calcChunkRows(numRows, rowLength);
+        if (chunkRows >= numRows || NUM_CORES == 1) {
+            task.processRows(0, numRows);
+            pt.unitsDone(numRows);
+            return;
+        }
+        run(new RowsAction(0, numRows, chunkRows, task), pt, numRows);
     }
 
     /**
-     * Waits until all the given futures complete their
-     * computation, and updates the given
-     * {@link ProgressTracker} in the meantime.
+     * Returns the number of rows in a chunk that is not split further.
      */
-    public static void waitFor(Iterable<Future<?>> futures, ProgressTracker pt) {
-        assert pt != null;
+    static int calcChunkRows(int numRows, int rowLength) {
+        int forBalancing = numRows / (NUM_CORES * CHUNKS_PER_CORE);
+        int forOverhead = MIN_CHUNK_SIZE / Math.max(1, rowLength);
+        return Math.max(1, Math.max(forBalancing, forOverhead));
+    }
 
-        for (var future : futures) {
-            try {
-                future.get();
-
-                // not completely accurate because the submit order is not
-                // necessarily the same as the finish order, but
-                // good enough in practice
-                pt.unitDone();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+    /**
+     * Runs the given task for each index from 0 to numTasks - 1
+     * in parallel. Each index is a separate work unit, so this
+     * is for tasks that are big on their own.
+     * It is safe to call this even from a pool thread.
+     * An exception thrown by the task is rethrown on the calling
+     * thread after all the indexes are done.
+     */
+    public static void parallelFor(int numTasks, IntConsumer task) {
+        if (numTasks <= 1 || NUM_CORES == 1) {
+            for (int i = 0; i < numTasks; i++) {
+                task.accept(i);
             }
+            return;
         }
+
+        run(new RowsAction(0, numTasks, 1, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                task.accept(i);
+            }
+        }), ProgressTracker.NULL_TRACKER, numTasks);
     }
 
-    // same as the above, but with array argument
-    public static void waitFor(Future<?>[] futures, ProgressTracker pt) {
-        assert pt != null;
+    private static void run(RowsAction root, ProgressTracker pt, int numRows) {
+        if (ForkJoinTask.inForkJoinPool()) {
+            // nested parallelism: the current worker thread
+            // also takes part in the work while waiting
+            root.invoke();
+            pt.unitsDone(numRows);
+        } else {
+            forkJoinPool.execute(root);
+            waitAndTrackProgress(root, pt, numRows);
+        }
+        root.rethrowFailure();
+    }
 
-        for (var future : futures) {
+    private static void waitAndTrackProgress(RowsAction root, ProgressTracker pt, int numRows) {
+        int reported = 0;
+        while (true) {
             try {
-                future.get();
-                pt.unitDone();
+                root.get(PROGRESS_MILLIS, MILLISECONDS);
+                break;
+            } catch (TimeoutException e) {
+                int done = root.progress.get();
+                if (done > reported) {
+                    pt.unitsDone(done - reported);
+                    reported = done;
+                }
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
             } catch (ExecutionException e) {
-                e.getCause().printStackTrace();
+                break; // the failure was recorded and will be rethrown
             }
         }
+        pt.unitsDone(numRows - reported);
     }
 
     /**
-     * Similar to waitFor, but works with futures
-     * that return an int array representing a line, and
-     * updates the given destination image with the new pixels.
+     * Splits a row range in halves until the chunks are small enough.
+     * The state shared by all the chunks of a loop is kept in the root.
      */
-    public static void waitFor2(Future<int[]>[] futures, BufferedImage dst, int width, ProgressTracker pt) {
-        assert pt != null;
+    private static class RowsAction extends RecursiveAction {
+        private final int fromY;
+        private final int toY;
+        private final int chunkRows;
+        private final RowsTask task;
+
+        // the token of the thread that started the loop, can be null
+        private final CancellationToken token;
+
+        // the number of finished rows
+        private final AtomicInteger progress;
+        private final AtomicReference<Throwable> failure;
+
+        RowsAction(int fromY, int toY, int chunkRows, RowsTask task) {
+            this(fromY, toY, chunkRows, task, CancellationToken.getCurrent(),
+                    new AtomicInteger(), new AtomicReference<>());
+        }
+
+        private RowsAction(int fromY, int toY, int chunkRows, RowsTask task,
+                           CancellationToken token, AtomicInteger progress,
+                           AtomicReference<Throwable> failure) {
+            this.fromY = fromY;
+            this.toY = toY;
+            this.chunkRows = chunkRows;
+            this.task = task;
+            this.token = token;
+            this.progress = progress;
+            this.failure = failure;
+        }
 
-        try {
-            for (int i = 0; i < futures.length; i++) {
-                var lineFuture = futures[i];
-                int[] linePixels = lineFuture.get();
-                AbstractBufferedImageOp.setRGB(dst, 0, i, width, 1, linePixels);
+        @Override
+        protected void compute() {
+            if (toY - fromY <= chunkRows) {
+                processChunk();
+                progress.addAndGet(toY - fromY);
+            } else {
+                int middle = (fromY + toY) >>> 1;
+                invokeAll(
+                        new RowsAction(fromY, middle, chunkRows, task, token, progress, failure),
+                        new RowsAction(middle, toY, chunkRows, task, token, progress, failure));
+            }
+        }
+
+        private void processChunk() {
+            if (failure.get() != null) {
+                return; // no point in continuing
+            }
+            try {
+                if (token == null) {
+                    task.processRows(fromY, toY);
+                } else if (token.isCancelled()) {
+                    throw new CancellationException();
+                } else {
+                    token.runWith(() -> task.processRows(fromY, toY));
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
 
-                pt.unitDone();
+        // rethrows the first exception of the task on the calling thread
+        void rethrowFailure() {
+            Throwable e = failure.get();
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else if (e instanceof Error) {
+                throw (Error) e;
+            } else if (e != null) {
+                throw new IllegalStateException(e);
             }
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
         }
     }
 
+    public static int getNumCores() {
+        return NUM_CORES;
+    }
+
     public static Executor getExecutor() {
         return executorService;
     }
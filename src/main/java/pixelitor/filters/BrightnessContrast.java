@@ -20,14 +20,18 @@ package pixelitor.filters;
 import com.jhlabs.image.PixelUtils;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
-import pixelitor.utils.ImageUtils;
+import pixelitor.filters.levels.RGBLookup;
+import pixelitor.filters.lookup.FastLookupOp;
+import pixelitor.filters.lookup.LookupFilter;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ShortLookupTable;
 
 /**
  * The Brightness/Contrast filter
  */
-public class BrightnessContrast extends ParametrizedFilter {
+public class BrightnessContrast extends ParametrizedFilter implements LookupFilter {
     public static final String NAME = "Brightness/Contrast";
 
     private final RangeParam brightnessParam = new RangeParam("Brightness", -100, 0, 100);
@@ -48,6 +52,16 @@ public class BrightnessContrast extends ParametrizedFilter {
             return src;
         }
 
+        RGBLookup rgbLookup = getRGBLookup();
+
+        BufferedImageOp filterOp = new FastLookupOp((ShortLookupTable) rgbLookup.getLookupOp());
+        filterOp.filter(src, dest);
+
+        return dest;
+    }
+
+    @Override
+    public RGBLookup getRGBLookup() {
         // prepare brightness
         double brightnessValue = brightnessParam.getValue() / 10.0;
         double pow = -brightnessValue + 1;
@@ -61,7 +75,7 @@ public class BrightnessContrast extends ParametrizedFilter {
         double contrastFactor = (259.0 * (contrastValue + 255)) / (255.0 * (259 - contrastValue));
 
         // create the lookup table
-        int[] lookup = new int[256];
+        short[] lookup = new short[256];
         for (int i = 0; i < lookup.length; i++) {
             double lookupValue = i; // by default do nothing
 
@@ -71,37 +85,19 @@ public class BrightnessContrast extends ParametrizedFilter {
             // modify for contrast
             lookupValue = contrastFactor * (lookupValue - 128) + 128;
 
-            lookup[i] = PixelUtils.clamp((int) lookupValue);
+            lookup[i] = (short) PixelUtils.clamp((int) lookupValue);
         }
 
-        // transform the image
-        int[] srcData = ImageUtils.getPixelsAsArray(src);
-        int[] destData = ImageUtils.getPixelsAsArray(dest);
-        for (int i = 0; i < destData.length; i++) {
-            int rgb = srcData[i];
-
-//            int a = (rgb >>> 24) & 0xFF;
-            int a = rgb & 0xFF000000;
-            int r = (rgb >>> 16) & 0xFF;
-            int g = (rgb >>> 8) & 0xFF;
-            int b = rgb & 0xFF;
-
-            if (a == 0) {
-                destData[i] = 0; // for premultiplied images
-            } else {
-                r = lookup[r];
-                g = lookup[g];
-                b = lookup[b];
-
-                destData[i] = a | r << 16 | g << 8 | b;
-            }
-        }
-
-        return dest;
+        return new RGBLookup(lookup, lookup, lookup);
     }
 
     @Override
     public boolean supportsGray() {
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.POINT;
+    }
+}
@@ -188,4 +188,9 @@ public class ChannelInvert extends ParametrizedFilter {
     public boolean supportsGray() {
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.POINT;
+    }
+}
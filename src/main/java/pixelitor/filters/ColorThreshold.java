@@ -78,4 +78,9 @@ public class ColorThreshold extends ParametrizedFilter {
     public boolean supportsGray() {
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.POINT;
+    }
+}
@@ -122,4 +122,9 @@ public class Colorize extends ParametrizedFilter {
     public boolean supportsGray() {
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.POINT;
+    }
+}
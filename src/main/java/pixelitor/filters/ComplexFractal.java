@@ -17,6 +17,7 @@
 
 package pixelitor.filters;
 
+import pixelitor.filters.gui.BooleanParam;
 import pixelitor.filters.gui.ImagePositionParam;
 import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.IntChoiceParam.Value;
@@ -55,6 +56,8 @@ public abstract class ComplexFractal extends ParametrizedFilter {
             new Value("None (Faster)", AA_NONE),
             new Value("2x2 (Better, Slower)", AA_2x2),
     }, IGNORE_RANDOMIZE);
+    protected final BooleanParam borderTracingParam = new BooleanParam(
+            "Border Tracing (Faster, Approximate)", false, IGNORE_RANDOMIZE);
 
     protected ComplexFractal(int defaultIterations, float zoomX) {
         super(ShowOriginal.NO);
@@ -71,7 +74,8 @@ public abstract class ComplexFractal extends ParametrizedFilter {
                 zoomCenter.withDecimalPlaces(2),
                 iterationsParam,
                 colorsParam,
-                aaParam);
+                aaParam,
+                borderTracingParam);
     }
 
     @Override
@@ -24,13 +24,16 @@ import pixelitor.gui.utils.GUIUtils;
 import pixelitor.layers.Drawable;
 import pixelitor.layers.Layer;
 import pixelitor.layers.LayerMask;
+import pixelitor.utils.CancellationToken;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 import pixelitor.utils.test.RandomGUITest;
 
 import java.awt.Component;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.Serializable;
+import java.util.concurrent.CancellationException;
 
 import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 import static pixelitor.ChangeReason.FILTER_WITHOUT_DIALOG;
@@ -43,6 +46,9 @@ public abstract class Filter implements Serializable {
 
     private transient FilterAction filterAction;
 
+    // the token of the currently running execution, if any
+    private transient volatile CancellationToken runningToken;
+
     // used for making sure that there are no
     // unnecessary filter executions triggered
     public static long runCount = 0;
@@ -82,8 +88,19 @@ public abstract class Filter implements Serializable {
     public void run(Drawable dr, ChangeReason cr, Component busyCursorParent) {
         long startTime = System.nanoTime();
 
-        Runnable task = () -> transformAndHandleExceptions(dr, cr);
-        GUIUtils.runWithBusyCursor(busyCursorParent, task);
+        // a new execution supersedes the previous one
+        cancelRunning();
+        CancellationToken token = new CancellationToken();
+        runningToken = token;
+
+        Runnable task = () -> token.runTracked(() -> transformAndHandleExceptions(dr, cr));
+        try {
+            GUIUtils.runWithBusyCursor(busyCursorParent, task);
+        } finally {
+            if (runningToken == token) {
+                runningToken = null;
+            }
+        }
 
         long totalTime = (System.nanoTime() - startTime) / 1_000_000;
         Messages.showPerformanceMessage(getName(), totalTime);
@@ -91,6 +108,18 @@ public abstract class Filter implements Serializable {
         FilterUtils.setLastFilter(this);
     }
 
+    /**
+     * Asks the currently running execution of this filter (if any)
+     * to stop. It can be called from any thread. A cancelled
+     * execution publishes no result.
+     */
+    public void cancelRunning() {
+        CancellationToken token = runningToken;
+        if (token != null) {
+            token.cancel();
+        }
+    }
+
     private void transformAndHandleExceptions(Drawable dr, ChangeReason cr) {
         BufferedImage dest;
 
@@ -99,19 +128,33 @@ public abstract class Filter implements Serializable {
                 throw new IllegalStateException("not image layer or mask");
             }
 
-            BufferedImage src = dr.getFilterSourceImage();
-            dest = transformImage(src);
+            dest = transformFilterSource(dr.getFilterSourceImage(),
+                    dr.getImage(), dr.getFilterSourceBounds());
 
             assert dest != null;
 
+            // the result of a superseded execution is thrown away
+            CancellationToken.checkCurrent();
+
             if (cr.isPreview()) {
                 dr.changePreviewImage(dest, getName(), cr);
             } else {
                 dr.filterWithoutDialogFinished(dest, cr, getName());
             }
-        } catch (OutOfMemoryError e) {
-            Dialogs.showOutOfMemoryDialog(e);
+        } catch (CancellationException e) {
+            // stopped by cancelRunning(), nothing to report
         } catch (Throwable e) {
+            handleException(dr, e);
+        }
+    }
+
+    /**
+     * Reports an error thrown while this filter was running on the given {@link Drawable}.
+     */
+    public void handleException(Drawable dr, Throwable e) {
+        if (e instanceof OutOfMemoryError) {
+            Dialogs.showOutOfMemoryDialog((OutOfMemoryError) e);
+        } else {
             Layer layer = (Layer) dr;
             if (layer instanceof LayerMask) {
                 layer = layer.getOwner();
@@ -164,6 +207,58 @@ public abstract class Filter implements Serializable {
         return dest;
     }
 
+    /**
+     * Transforms the filter source image of a {@link Drawable}, given its
+     * image and the bounds of the filter source within the image
+     * (null if there is no selection). A local filter calculates only
+     * the filter source bounds, but unlike a global filter, it also
+     * considers the pixels around the selection within its footprint,
+     * so that the result near the selection edges is the same as if
+     * the whole image was filtered.
+     */
+    public BufferedImage transformFilterSource(BufferedImage src,
+                                               BufferedImage image,
+                                               Rectangle sourceBounds) {
+        if (sourceBounds == null || getFootprint().isGlobal()) {
+            return transformImage(src);
+        }
+        return transformRegion(image, sourceBounds);
+    }
+
+    /**
+     * Returns which source pixels can influence an output pixel.
+     * Local filters can override this, so that only
+     * the necessary parts of the image are calculated.
+     */
+    public Footprint getFootprint() {
+        return Footprint.GLOBAL;
+    }
+
+    /**
+     * Calculates only the given region of the result, which
+     * must be within the bounds of the source image.
+     * Can be called only if the footprint is not global.
+     * The returned image has the size of the region.
+     */
+    public BufferedImage transformRegion(BufferedImage src, Rectangle region) {
+        Footprint footprint = getFootprint();
+        if (footprint.isGlobal()) {
+            throw new IllegalStateException(getName() + " is not a local filter");
+        }
+
+        Rectangle inputArea = footprint.getInputArea(region).intersection(
+                new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+        BufferedImage input = ImageUtils.getCopyOfSubimage(src, inputArea);
+        BufferedImage output = transformImage(input);
+
+        if (inputArea.equals(region)) {
+            return output;
+        }
+        return ImageUtils.getCopyOfSubimage(output, new Rectangle(
+                region.x - inputArea.x, region.y - inputArea.y,
+                region.width, region.height));
+    }
+
     public void setFilterAction(FilterAction filterAction) {
         this.filterAction = filterAction;
     }
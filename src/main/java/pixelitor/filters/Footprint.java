@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import java.awt.Rectangle;
+
+/**
+ * Describes which source pixels can influence an output pixel of a filter.
+ * For a local filter (a point filter or a filter with a fixed radius),
+ * an output pixel depends only on the source pixels within the radius, and
+ * not on its absolute position or on the size of the image. Therefore
+ * any region of the output can be calculated from a part of the source.
+ */
+public final class Footprint {
+    /**
+     * An output pixel depends only on the same source pixel
+     */
+    public static final Footprint POINT = new Footprint(0);
+
+    /**
+     * An output pixel can depend on anything, including its
+     * position and the size of the image. This is the default.
+     */
+    public static final Footprint GLOBAL = new Footprint(-1);
+
+    private final int radius;
+
+    private Footprint(int radius) {
+        this.radius = radius;
+    }
+
+    /**
+     * An output pixel depends only on the source
+     * pixels within the given distance.
+     */
+    public static Footprint radius(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius = " + radius);
+        }
+        if (radius == 0) {
+            return POINT;
+        }
+        return new Footprint(radius);
+    }
+
+    /**
+     * Like {@link #radius(int)}, but for a fractional radius.
+     */
+    public static Footprint radius(double radius) {
+        return radius((int) Math.ceil(radius));
+    }
+
+    public boolean isGlobal() {
+        return radius < 0;
+    }
+
+    public int getRadius() {
+        assert !isGlobal();
+        return radius;
+    }
+
+    /**
+     * Returns the source area which is necessary for
+     * calculating the given area of the output.
+     */
+    public Rectangle getInputArea(Rectangle outputArea) {
+        assert !isGlobal();
+        Rectangle input = new Rectangle(outputArea);
+        input.grow(radius, radius);
+        return input;
+    }
+
+    @Override
+    public String toString() {
+        if (isGlobal()) {
+            return "Footprint{global}";
+        }
+        return "Footprint{radius=" + radius + '}';
+    }
+}
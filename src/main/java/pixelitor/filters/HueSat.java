@@ -128,4 +128,9 @@ public class HueSat extends ParametrizedFilter {
             return a | newRGB; // add the real alpha
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.POINT;
+    }
+}
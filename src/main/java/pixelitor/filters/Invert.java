@@ -17,6 +17,8 @@
 package pixelitor.filters;
 
 import com.jhlabs.image.PixelUtils;
+import pixelitor.filters.levels.RGBLookup;
+import pixelitor.filters.lookup.LookupFilter;
 import pixelitor.utils.ImageUtils;
 
 import java.awt.image.BufferedImage;
@@ -24,7 +26,7 @@ import java.awt.image.BufferedImage;
 /**
  * Invert filter
  */
-public class Invert extends Filter {
+public class Invert extends Filter implements LookupFilter {
     // for compatibility with older adjustment layer tests
     private static final long serialVersionUID = -6279018636064203421L;
 
@@ -94,6 +96,15 @@ public class Invert extends Filter {
         }
     }
 
+    @Override
+    public RGBLookup getRGBLookup() {
+        short[] lookup = new short[256];
+        for (int i = 0; i < lookup.length; i++) {
+            lookup[i] = (short) (255 - i);
+        }
+        return new RGBLookup(lookup, lookup, lookup);
+    }
+
     public static void quickInvert(BufferedImage dest) {
         int[] pixels = ImageUtils.getPixelsAsArray(dest);
         for (int i = 0, pixelsLength = pixels.length; i < pixelsLength; i++) {
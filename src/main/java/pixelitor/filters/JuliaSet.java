@@ -56,6 +56,7 @@ public class JuliaSet extends ComplexFractal {
         int iterations = iterationsParam.getValue();
         filter.setColors(createColors(iterations));
         filter.setMaxIterations(iterations);
+        filter.setBorderTracing(borderTracingParam.isChecked());
 
         filter.setCy(cParam.getValueAsDPercentage(0));
         filter.setCx(cParam.getValueAsDPercentage(1));
@@ -73,11 +74,11 @@ class JuliaSetImpl extends ComplexFractalImpl {
     }
 
     @Override
-    public int filterRGB(int x, int y, int rgb) {
+    protected int calcIterations(int x, int y) {
         double zx = cxStart + x * xMultiplier;
         double zy = cyStart + y * yMultiplier;
 
-        return calcIteratedColor(zx, zy, cx, cy);
+        return iterate(zx, zy, cx, cy);
     }
 
     public void setCy(double cx) {
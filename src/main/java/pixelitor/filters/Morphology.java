@@ -23,6 +23,7 @@ import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
 import pixelitor.filters.impl.MorphologyFilter;
 import pixelitor.utils.StatusBarProgressTracker;
+import pixelitor.utils.VisibleForTesting;
 
 import java.awt.image.BufferedImage;
 
@@ -35,10 +36,10 @@ import static pixelitor.filters.impl.MorphologyFilter.OP_ERODE;
 public class Morphology extends ParametrizedFilter {
     public static final String NAME = "Morphology";
 
-    private static final int OP_OPEN = 10;
-    private static final int OP_CLOSE = 11;
+    static final int OP_OPEN = 10;
+    static final int OP_CLOSE = 11;
 
-    private final RangeParam radius = new RangeParam("Radius", 1, 1, 21);
+    private final RangeParam radius = new RangeParam("Radius", 1, 1, 100);
     private final IntChoiceParam kernel = new IntChoiceParam("Kernel Shape", new Value[]{
             new Value("Diamond", MorphologyFilter.KERNEL_DIAMOND),
             new Value("Square", MorphologyFilter.KERNEL_SQUARE),
@@ -60,8 +61,7 @@ public class Morphology extends ParametrizedFilter {
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
         var filter = new MorphologyFilter(NAME);
 
-        int iterations = radius.getValue();
-        filter.setIterations(iterations);
+        filter.setRadius(radius.getValue());
         filter.setKernel(kernel.getValue());
 
         int selectedOp = op.getValue();
@@ -70,26 +70,51 @@ public class Morphology extends ParametrizedFilter {
             filter.setOp(selectedOp);
             dest = filter.filter(src, dest);
         } else {
-            var pt = new StatusBarProgressTracker(NAME, 2 * iterations);
+            var pt = new StatusBarProgressTracker(NAME, 2 * MorphologyFilter.NUM_WORK_UNITS);
             filter.setProgressTracker(pt);
 
-            if (selectedOp == OP_OPEN) {
-                filter.setOp(OP_ERODE);
-                dest = filter.filter(src, dest);
-                filter.setOp(OP_DILATE);
-                dest = filter.filter(dest, dest);
-            } else if (selectedOp == OP_CLOSE) {
-                filter.setOp(OP_DILATE);
-                dest = filter.filter(src, dest);
-                filter.setOp(OP_ERODE);
-                dest = filter.filter(dest, dest);
-            } else {
-                throw new IllegalStateException("selectedOp = " + selectedOp);
+            try {
+                dest = openOrClose(filter, selectedOp, src, dest);
+            } finally {
+                pt.finished();
             }
-
-            pt.finished();
         }
 
         return dest;
     }
+
+    /**
+     * Runs the two passes of an open or close operation.
+     */
+    @VisibleForTesting
+    static BufferedImage openOrClose(MorphologyFilter filter, int op, BufferedImage src, BufferedImage dest) {
+        if (op == OP_OPEN) {
+            filter.setOp(OP_ERODE);
+            dest = filter.filter(src, dest);
+            filter.setOp(OP_DILATE);
+            dest = filter.filter(dest, dest);
+        } else if (op == OP_CLOSE) {
+            filter.setOp(OP_DILATE);
+            dest = filter.filter(src, dest);
+            filter.setOp(OP_ERODE);
+            dest = filter.filter(dest, dest);
+        } else {
+            throw new IllegalStateException("op = " + op);
+        }
+        return dest;
+    }
+
+    @Override
+    public Footprint getFootprint() {
+        return calcFootprint(op.getValue(), radius.getValue());
+    }
+
+    @VisibleForTesting
+    static Footprint calcFootprint(int op, int radius) {
+        if (op == OP_OPEN || op == OP_CLOSE) {
+            // the two passes both use the radius
+            return Footprint.radius(2 * radius);
+        }
+        return Footprint.radius(radius);
+    }
 }
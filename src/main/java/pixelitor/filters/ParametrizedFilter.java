@@ -27,9 +27,13 @@ import pixelitor.filters.gui.ShowOriginal;
 import pixelitor.layers.Drawable;
 import pixelitor.utils.ImageUtils;
 
+import java.awt.Graphics2D;
 import java.awt.Shape;
 import java.awt.image.BufferedImage;
 
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+
 /**
  * A filter that keeps its settings in a ParamSet object
  * The advantage is that subclasses don't need to create their own adjustment GUIs,
@@ -46,6 +50,11 @@ public abstract class ParametrizedFilter extends FilterWithGUI {
     // the area affected by a filter
     private Shape[] affectedAreaShapes;
 
+    // the size of the transformed image relative to the real image,
+    // less than 1 only while a proxy preview is calculated.
+    // Only the thread running the filter accesses it.
+    private double proxyScale = 1.0;
+
     protected ParametrizedFilter(ShowOriginal addShowOriginal) {
         this.addShowOriginal = addShowOriginal;
     }
@@ -78,6 +87,69 @@ public abstract class ParametrizedFilter extends FilterWithGUI {
 
     public abstract BufferedImage doTransform(BufferedImage src, BufferedImage dest);
 
+    /**
+     * Whether a quick preview can be calculated on a downscaled proxy
+     * of the source image. Filters with resolution-dependent parameters
+     * (radii, cell sizes) must pass them through {@link #scaledForProxy(double)}
+     * if they return true here.
+     */
+    public boolean supportsProxyPreviews() {
+        return false;
+    }
+
+    /**
+     * Runs the filter on a copy of the source image that is
+     * downscaled by the given factor, and scales the result back
+     * to the original size. Much faster, but less detailed than
+     * {@link #transformImage(BufferedImage)}.
+     */
+    public BufferedImage transformProxy(BufferedImage src, int factor) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int proxyWidth = Math.max(1, width / factor);
+        int proxyHeight = Math.max(1, height / factor);
+
+        BufferedImage proxySrc = ImageUtils.getFasterScaledInstance(src,
+                proxyWidth, proxyHeight, VALUE_INTERPOLATION_BILINEAR, true);
+        BufferedImage proxyDest;
+        proxyScale = proxyWidth / (double) width;
+        try {
+            proxyDest = transformImage(proxySrc);
+        } finally {
+            proxyScale = 1.0;
+        }
+
+        BufferedImage dest = ImageUtils.createImageWithSameCM(src);
+        Graphics2D g = dest.createGraphics();
+        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(proxyDest, 0, 0, width, height, null);
+        g.dispose();
+        return dest;
+    }
+
+    /**
+     * Converts a distance given in the pixels of the real image
+     * into the pixels of the image that is currently transformed.
+     */
+    protected double scaledForProxy(double distance) {
+        return distance * proxyScale;
+    }
+
+    /**
+     * Like {@link #scaledForProxy(double)}, but a distance
+     * that is not zero doesn't become zero.
+     */
+    protected int scaledForProxy(int distance) {
+        if (distance == 0 || proxyScale == 1.0) {
+            return distance;
+        }
+        int scaled = (int) Math.round(distance * proxyScale);
+        if (scaled == 0) {
+            return distance > 0 ? 1 : -1;
+        }
+        return scaled;
+    }
+
     private void setParamSet(ParamSet paramSet) {
         this.paramSet = paramSet;
         // switch the affected area functionality here on-off
@@ -21,6 +21,7 @@ import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
 import pixelitor.filters.levels.RGBLookup;
 import pixelitor.filters.lookup.FastLookupOp;
+import pixelitor.filters.lookup.LookupFilter;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
@@ -29,7 +30,7 @@ import java.awt.image.ShortLookupTable;
 /**
  * Posterize filter
  */
-public class Posterize extends ParametrizedFilter {
+public class Posterize extends ParametrizedFilter implements LookupFilter {
     public static final String NAME = "Posterize";
 
     private final RangeParam redLevels = new RangeParam("Red", 2, 2, 50);
@@ -51,11 +52,7 @@ public class Posterize extends ParametrizedFilter {
 
     @Override
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
-        int numRedLevels = redLevels.getValue();
-        int numGreenLevels = greenLevels.getValue();
-        int numBlueLevels = blueLevels.getValue();
-        var rgbLookup = new RGBLookup();
-        rgbLookup.initFromPosterize(numRedLevels, numGreenLevels, numBlueLevels);
+        RGBLookup rgbLookup = getRGBLookup();
 
         BufferedImageOp filterOp = new FastLookupOp((ShortLookupTable) rgbLookup.getLookupOp());
         filterOp.filter(src, dest);
@@ -63,6 +60,16 @@ public class Posterize extends ParametrizedFilter {
         return dest;
     }
 
+    @Override
+    public RGBLookup getRGBLookup() {
+        int numRedLevels = redLevels.getValue();
+        int numGreenLevels = greenLevels.getValue();
+        int numBlueLevels = blueLevels.getValue();
+        var rgbLookup = new RGBLookup();
+        rgbLookup.initFromPosterize(numRedLevels, numGreenLevels, numBlueLevels);
+        return rgbLookup;
+    }
+
     @Override
     public boolean excludedFromAnimation() {
         return true;
@@ -72,4 +79,9 @@ public class Posterize extends ParametrizedFilter {
     public boolean supportsGray() {
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.POINT;
+    }
+}
@@ -39,7 +39,7 @@ import static pixelitor.ChangeReason.PREVIEWING;
 public class RandomFilterGUI extends FilterGUI {
     private final JPanel realSettingsPanel;
     private final Drawable dr;
-    private JPanel lastFilterPanel;
+    private FilterGUI lastFilterPanel;
     private final RandomFilterSource filterSource;
     private final JPanel northPanel;
     private final JButton backButton;
@@ -65,6 +65,13 @@ public class RandomFilterGUI extends FilterGUI {
         updateEnabled();
     }
 
+    @Override
+    public void finishPreviews(boolean accepted) {
+        if (lastFilterPanel != null) {
+            lastFilterPanel.finishPreviews(accepted);
+        }
+    }
+
     private JButton createButton(String text, ActionListener listener) {
         JButton button = new JButton(text);
         button.addActionListener(e -> {
@@ -82,6 +89,7 @@ public class RandomFilterGUI extends FilterGUI {
 
     private void showFilter(Filter newFilter) {
         if (lastFilterPanel != null) {
+            lastFilterPanel.finishPreviews(false);
             realSettingsPanel.remove(lastFilterPanel);
         }
 
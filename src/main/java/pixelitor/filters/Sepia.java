@@ -50,4 +50,9 @@ public class Sepia extends ParametrizedFilter {
         dest = filter.filter(src, dest);
         return dest;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.POINT;
+    }
+}
@@ -21,14 +21,18 @@ import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
-import pixelitor.utils.ImageUtils;
+import pixelitor.filters.levels.RGBLookup;
+import pixelitor.filters.lookup.FastLookupOp;
+import pixelitor.filters.lookup.LookupFilter;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ShortLookupTable;
 
 /**
  * Solarize
  */
-public class Solarize extends ParametrizedFilter {
+public class Solarize extends ParametrizedFilter implements LookupFilter {
     public static final String NAME = "Solarize";
 
     private static final int TYPE_CLASSIC = 1; // pixels above the threshold level are inverted + contrast is maximized
@@ -56,9 +60,16 @@ public class Solarize extends ParametrizedFilter {
 
     @Override
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
-        int[] srcData = ImageUtils.getPixelsAsArray(src);
-        int[] destData = ImageUtils.getPixelsAsArray(dest);
+        RGBLookup rgbLookup = getRGBLookup();
 
+        BufferedImageOp filterOp = new FastLookupOp((ShortLookupTable) rgbLookup.getLookupOp());
+        filterOp.filter(src, dest);
+
+        return dest;
+    }
+
+    @Override
+    public RGBLookup getRGBLookup() {
         float redThr = redThreshold.getValueAsFloat();
         float greenThr = greenThreshold.getValueAsFloat();
         float blueThr = blueThreshold.getValueAsFloat();
@@ -72,77 +83,63 @@ public class Solarize extends ParametrizedFilter {
         float m1Blue = 255.0f / blueThr;
         float m2Blue = 255.0f / (255.0f - blueThr);
 
-        int[] redLookup = new int[256];
-        int[] greenLookup = new int[256];
-        int[] blueLookup = new int[256];
+        short[] redLookup = new short[256];
+        short[] greenLookup = new short[256];
+        short[] blueLookup = new short[256];
 
         int solarizeType = type.getValue();
         if (solarizeType == TYPE_CLASSIC) {
             for (int i = 0; i < 256; i++) {
                 if (i > redThr) {
-                    redLookup[i] = 255 - (int) (m2Red * (i - redThr));
+                    redLookup[i] = (short) (255 - (int) (m2Red * (i - redThr)));
                 } else {
-                    redLookup[i] = 255 - (int) (m1Red * (redThr - i));
+                    redLookup[i] = (short) (255 - (int) (m1Red * (redThr - i)));
                 }
 
                 if (i > greenThr) {
-                    greenLookup[i] = 255 - (int) (m2Green * (i - greenThr));
+                    greenLookup[i] = (short) (255 - (int) (m2Green * (i - greenThr)));
                 } else {
-                    greenLookup[i] = 255 - (int) (m1Green * (greenThr - i));
+                    greenLookup[i] = (short) (255 - (int) (m1Green * (greenThr - i)));
                 }
 
                 if (i > blueThr) {
-                    blueLookup[i] = 255 - (int) (m2Blue * (i - blueThr));
+                    blueLookup[i] = (short) (255 - (int) (m2Blue * (i - blueThr)));
                 } else {
-                    blueLookup[i] = 255 - (int) (m1Blue * (blueThr - i));
+                    blueLookup[i] = (short) (255 - (int) (m1Blue * (blueThr - i)));
                 }
             }
         } else if (solarizeType == TYPE_INVERTED) {
             for (int i = 0; i < 256; i++) {
                 if (i > redThr) {
-                    redLookup[i] = (int) (m2Red * (i - redThr));
+                    redLookup[i] = (short) (m2Red * (i - redThr));
                 } else {
-                    redLookup[i] = (int) (m1Red * (redThr - i));
+                    redLookup[i] = (short) (m1Red * (redThr - i));
                 }
 
                 if (i > greenThr) {
-                    greenLookup[i] = (int) (m2Green * (i - greenThr));
+                    greenLookup[i] = (short) (m2Green * (i - greenThr));
                 } else {
-                    greenLookup[i] = (int) (m1Green * (greenThr - i));
+                    greenLookup[i] = (short) (m1Green * (greenThr - i));
                 }
 
                 if (i > blueThr) {
-                    blueLookup[i] = (int) (m2Blue * (i - blueThr));
+                    blueLookup[i] = (short) (m2Blue * (i - blueThr));
                 } else {
-                    blueLookup[i] = (int) (m1Blue * (blueThr - i));
+                    blueLookup[i] = (short) (m1Blue * (blueThr - i));
                 }
             }
         }
 
-        for (int i = 0, destDataLength = destData.length; i < destDataLength; i++) {
-            int rgb = srcData[i];
-
-            int a = (rgb >>> 24) & 0xFF;
-            if (a == 0) {
-                destData[i] = 0;
-            } else {
-                int r = (rgb >>> 16) & 0xFF;
-                int g = (rgb >>> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                int newR = redLookup[r];
-                int newG = greenLookup[g];
-                int newB = blueLookup[b];
-
-                destData[i] = a << 24 | newR << 16 | newG << 8 | newB;
-            }
-        }
-
-        return dest;
+        return new RGBLookup(redLookup, greenLookup, blueLookup);
     }
 
     @Override
     public boolean supportsGray() {
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.POINT;
+    }
+}
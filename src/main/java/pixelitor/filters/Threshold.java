@@ -152,4 +152,9 @@ public class Threshold extends ParametrizedFilter {
     public boolean supportsGray() {
         return false;
     }
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.POINT;
+    }
 }
@@ -131,7 +131,7 @@ public class CustomConvolveGUI extends FilterGUI implements ActionListener {
         } else if (size == 5) {
             init5x5Presets();
         } else {
-            throw new IllegalStateException("size = " + size);
+            initLargePresets();
         }
 
         presetsBox.add(Box.createVerticalStrut(20));
@@ -280,6 +280,37 @@ public class CustomConvolveGUI extends FilterGUI implements ActionListener {
                 0, 1, 1});
     }
 
+    private void initLargePresets() {
+        float[] diskBlur = new float[size * size];
+        float[] motionBlur = new float[size * size];
+        int r = size / 2;
+        int numDiskValues = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int dx = x - r;
+                int dy = y - r;
+                if (dx * dx + dy * dy <= r * r) {
+                    numDiskValues++;
+                }
+            }
+        }
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int dx = x - r;
+                int dy = y - r;
+                if (dx * dx + dy * dy <= r * r) {
+                    diskBlur[y * size + x] = 1.0f / numDiskValues;
+                }
+                if (x + y == size - 1) {
+                    motionBlur[y * size + x] = 1.0f / size;
+                }
+            }
+        }
+
+        initPreset("Disk Blur", diskBlur);
+        initPreset("Motion Blur", motionBlur);
+    }
+
     private void reset(int size) {
         float[] defaultValues = new float[size * size];
         defaultValues[defaultValues.length / 2] = 1.0f;
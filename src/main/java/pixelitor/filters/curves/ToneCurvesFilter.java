@@ -21,6 +21,8 @@ package pixelitor.filters.curves;
 import com.jhlabs.image.CurvesFilter;
 import pixelitor.filters.gui.FilterGUI;
 import pixelitor.filters.gui.FilterWithGUI;
+import pixelitor.filters.levels.RGBLookup;
+import pixelitor.filters.lookup.LookupFilter;
 import pixelitor.layers.Drawable;
 
 import java.awt.image.BufferedImage;
@@ -30,7 +32,7 @@ import java.awt.image.BufferedImage;
  *
  * @author Łukasz Kurzaj lukaszkurzaj@gmail.com
  */
-public class ToneCurvesFilter extends FilterWithGUI {
+public class ToneCurvesFilter extends FilterWithGUI implements LookupFilter {
     public static final String NAME = "Curves";
 
     private CurvesFilter filter;
@@ -47,22 +49,47 @@ public class ToneCurvesFilter extends FilterWithGUI {
 
     @Override
     public BufferedImage transform(BufferedImage src, BufferedImage dest) {
-        if (filter == null) {
-            filter = new CurvesFilter(NAME);
-        }
         if (curves == null) {
             return src;
         }
 
+        updateFilter();
+        dest = filter.filter(src, dest);
+        return dest;
+    }
+
+    private void updateFilter() {
+        if (filter == null) {
+            filter = new CurvesFilter(NAME);
+        }
+
         filter.setCurves(
                 curves.getCurve(ToneCurveType.RGB).curve,
                 curves.getCurve(ToneCurveType.RED).curve,
                 curves.getCurve(ToneCurveType.GREEN).curve,
                 curves.getCurve(ToneCurveType.BLUE).curve
         );
+    }
 
-        dest = filter.filter(src, dest);
-        return dest;
+    @Override
+    public RGBLookup getRGBLookup() {
+        if (curves == null) {
+            return RGBLookup.createIdentity();
+        }
+
+        updateFilter();
+        // each channel of a packed value contains the mapping of that channel
+        int[] lut = filter.getLUT();
+        short[] redLUT = new short[256];
+        short[] greenLUT = new short[256];
+        short[] blueLUT = new short[256];
+        for (int i = 0; i < 256; i++) {
+            int rgb = lut[i];
+            redLUT[i] = (short) ((rgb >>> 16) & 0xFF);
+            greenLUT[i] = (short) ((rgb >>> 8) & 0xFF);
+            blueLUT[i] = (short) (rgb & 0xFF);
+        }
+        return new RGBLookup(redLUT, greenLUT, blueLUT);
     }
 
     @Override
@@ -40,4 +40,17 @@ public abstract class FilterGUI extends JPanel implements PreviewExecutor {
     public void runFilterPreview() {
         filter.run(dr, PREVIEWING, this);
     }
+
+    /**
+     * Called when the dialog of this GUI is closed. GUIs that calculate
+     * the previews in the background must stop doing so here, and if
+     * the dialog was accepted, they must make sure that the preview
+     * of the current settings is shown before returning.
+     */
+    public void finishPreviews(boolean accepted) {
+    }
+
+    protected Drawable getDrawable() {
+        return dr;
+    }
 }
@@ -79,8 +79,8 @@ public interface FilterParam extends FilterSetting, Resettable {
     /**
      * Returns the parameter value.
      * The return type can't be more specific than Object,
-     * but this is still useful for testing.
+     * but this is still useful for testing and for detecting
+     * changes, because the returned values can be compared with equals.
      */
-    @VisibleForTesting
     Object getParamValue();
 }
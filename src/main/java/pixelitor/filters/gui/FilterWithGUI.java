@@ -48,8 +48,14 @@ public abstract class FilterWithGUI extends Filter {
                 .name("filterDialog")
                 .content(gui)
                 .withScrollbars()
-                .okAction(() -> dr.onFilterDialogAccepted(getName()))
-                .cancelAction(dr::onFilterDialogCanceled)
+                .okAction(() -> {
+                    gui.finishPreviews(true);
+                    dr.onFilterDialogAccepted(getName());
+                })
+                .cancelAction(() -> {
+                    gui.finishPreviews(false);
+                    dr.onFilterDialogCanceled();
+                })
                 .show();
     }
 }
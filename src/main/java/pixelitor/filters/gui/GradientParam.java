@@ -28,7 +28,9 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static com.bric.swing.MultiThumbSlider.HORIZONTAL;
 import static java.awt.Color.BLACK;
@@ -236,7 +238,12 @@ public class GradientParam extends AbstractFilterParam {
 
     @Override
     public Object getParamValue() {
-        return Arrays.asList(gradientSlider.getValues());
+        List<Object> values = new ArrayList<>();
+        for (float pos : gradientSlider.getThumbPositions()) {
+            values.add(pos);
+        }
+        values.addAll(Arrays.asList(gradientSlider.getValues()));
+        return values;
     }
 
     @Override
@@ -165,6 +165,19 @@ public class ParamSet {
         return new CompositeState(this);
     }
 
+    /**
+     * Returns the current values of all parameters (including the
+     * ones that can't be animated), which can be compared with equals
+     * to check whether anything changed since the values were taken.
+     */
+    public List<Object> copyValues() {
+        List<Object> values = new ArrayList<>(paramList.size());
+        for (FilterParam param : paramList) {
+            values.add(param.getParamValue());
+        }
+        return values;
+    }
+
     public void setState(CompositeState newStateSet) {
         Iterator<ParamState<?>> newStates = newStateSet.iterator();
         paramList.stream()
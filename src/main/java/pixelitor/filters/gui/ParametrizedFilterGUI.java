@@ -17,23 +17,48 @@
 
 package pixelitor.filters.gui;
 
+import pixelitor.Composition;
 import pixelitor.OpenImages;
+import pixelitor.ThreadPool;
+import pixelitor.filters.FilterUtils;
 import pixelitor.filters.ParametrizedFilter;
+import pixelitor.gui.View;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.layers.Drawable;
+import pixelitor.selection.Selection;
+import pixelitor.utils.CancellationToken;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Messages;
 
 import javax.swing.*;
+import java.awt.AlphaComposite;
 import java.awt.BorderLayout;
+import java.awt.EventQueue;
 import java.awt.FlowLayout;
+import java.awt.Graphics2D;
 import java.awt.GridLayout;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 import static java.awt.BorderLayout.CENTER;
 import static java.awt.BorderLayout.SOUTH;
+import static pixelitor.ChangeReason.PREVIEWING;
 
 
 /**
- * A GUI for parametrized filters
+ * A GUI for parametrized filters.
+ *
+ * While the dialog is visible, the previews are calculated in the background,
+ * so that the dialog stays responsive while a slider is dragged. Only the
+ * latest settings matter: a change cancels the running calculation, and
+ * the intermediate settings are never rendered. All the preview-related
+ * state is accessed only on the EDT.
  */
 public class ParametrizedFilterGUI extends FilterGUI implements ParamAdjustmentListener {
     /**
@@ -43,6 +68,29 @@ public class ParametrizedFilterGUI extends FilterGUI implements ParamAdjustmentL
     private static boolean resetParams = true;
     private ShowOriginalCB showOriginalCB;
 
+    // images smaller than this are always previewed in full resolution
+    private static final int MIN_PIXELS_FOR_PROXY = 2_000_000;
+
+    // the proxy is downscaled by 8 instead of 4 if it would be bigger than this
+    private static final int MAX_PROXY_PIXELS = 1_000_000;
+
+    // how long the settings must be unchanged before the quick
+    // (proxy or viewport) preview is refined to a full preview
+    private static final int REFINE_DELAY_MILLIS = 300;
+
+    // the preview calculation running in the background, or null
+    private CompletableFuture<BufferedImage> runningPreview;
+    private CancellationToken runningToken;
+    private long runningStartTime;
+    private boolean runningQuick;
+
+    // runs while the quick previews are not refined because
+    // the settings are still changing
+    private final Timer refineTimer = new Timer(REFINE_DELAY_MILLIS, e -> refineTimerFired());
+
+    // whether the shown preview belongs to the current settings
+    private boolean previewUpToDate = false;
+
     public ParametrizedFilterGUI(ParametrizedFilter filter,
                                  Drawable dr,
                                  ShowOriginal addShowOriginal) {
@@ -54,6 +102,7 @@ public class ParametrizedFilterGUI extends FilterGUI implements ParamAdjustmentL
                                  ShowOriginal addShowOriginal,
                                  Object otherInfo) {
         super(filter, dr);
+        refineTimer.setRepeats(false);
 
         ParamSet params = filter.getParamSet();
         if (resetParams) {
@@ -124,6 +173,255 @@ public class ParametrizedFilterGUI extends FilterGUI implements ParamAdjustmentL
         runFilterPreview();
     }
 
+    @Override
+    public void runFilterPreview() {
+        if (isShowing()) {
+            if (hasQuickPreviews()) {
+                // the full preview is calculated only
+                // when the settings stopped changing
+                refineTimer.restart();
+            }
+            previewUpToDate = false;
+            if (runningPreview == null) {
+                startBackgroundPreview();
+            } else {
+                // the next calculation starts when the
+                // cancelled one has stopped
+                runningToken.cancel();
+            }
+        } else {
+            // while the GUI is created or hidden, there is
+            // no interaction that should be kept responsive
+            cancelBackgroundPreview();
+            super.runFilterPreview();
+            previewUpToDate = true;
+        }
+    }
+
+    private boolean hasQuickPreviews() {
+        return !filter.getFootprint().isGlobal()
+                || useProxyPreviews(getDrawable().getFilterSourceImage());
+    }
+
+    private boolean useProxyPreviews(BufferedImage src) {
+        if (!((ParametrizedFilter) filter).supportsProxyPreviews()) {
+            return false;
+        }
+        return (long) src.getWidth() * src.getHeight() >= MIN_PIXELS_FOR_PROXY;
+    }
+
+    /**
+     * Returns the part of the filter source image that is visible
+     * in the view, or null if a viewport preview would not help.
+     */
+    private Rectangle calcVisibleRegion(BufferedImage src) {
+        if (filter.getFootprint().isGlobal()) {
+            return null;
+        }
+        Drawable dr = getDrawable();
+        Composition comp = dr.getComp();
+        View view = comp.getView();
+        if (view == null || view.isMock()) {
+            return null;
+        }
+
+        // the visible part of the canvas
+        Rectangle region = view.componentToImageSpace(view.getVisiblePart()).getBounds();
+
+        // translate to the coordinates of the source image
+        Selection selection = comp.getSelection();
+        if (selection == null) {
+            region.translate(-dr.getTx(), -dr.getTy());
+        } else {
+            // the source is the part of the image within the selection bounds
+            Rectangle selBounds = selection.getShapeBounds(1);
+            region.translate(-Math.max(selBounds.x, dr.getTx()),
+                    -Math.max(selBounds.y, dr.getTy()));
+        }
+        region = region.intersection(new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+        if (region.isEmpty()) {
+            return null;
+        }
+
+        long visiblePixels = (long) region.width * region.height;
+        long allPixels = (long) src.getWidth() * src.getHeight();
+        if (visiblePixels * 2 > allPixels) {
+            return null; // the saving would be too small
+        }
+        return region;
+    }
+
+    /**
+     * Calculates the given region with the filter, and places the
+     * result onto a copy of the source. The rest of the image is
+     * filled in by the full preview, when the settings stopped changing.
+     */
+    private BufferedImage transformViewport(BufferedImage src, BufferedImage image,
+                                            Rectangle sourceBounds, Rectangle region) {
+        BufferedImage regionResult;
+        if (sourceBounds == null) {
+            regionResult = filter.transformRegion(src, region);
+        } else {
+            // also consider the pixels around the selection, as the full preview does
+            Rectangle regionInImage = new Rectangle(region);
+            regionInImage.translate(sourceBounds.x, sourceBounds.y);
+            regionResult = filter.transformRegion(image, regionInImage);
+        }
+
+        BufferedImage dest = ImageUtils.copyImage(src);
+        Graphics2D g = dest.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(regionResult, region.x, region.y, null);
+        g.dispose();
+        return dest;
+    }
+
+    private static int calcProxyFactor(BufferedImage src) {
+        long numPixels = (long) src.getWidth() * src.getHeight();
+        if (numPixels / (4 * 4) <= MAX_PROXY_PIXELS) {
+            return 4;
+        }
+        return 8;
+    }
+
+    private void refineTimerFired() {
+        if (runningPreview == null && !previewUpToDate && isShowing()) {
+            startBackgroundPreview();
+        }
+        // otherwise the refined preview starts after the running one
+    }
+
+    private void startBackgroundPreview() {
+        Drawable dr = getDrawable();
+        BufferedImage src = dr.getFilterSourceImage();
+        BufferedImage image = dr.getImage();
+        Rectangle sourceBounds = dr.getFilterSourceBounds();
+        var token = new CancellationToken();
+        var pFilter = (ParametrizedFilter) filter;
+
+        Supplier<BufferedImage> task = () -> filter.transformFilterSource(src, image, sourceBounds);
+        boolean quick = false;
+        if (refineTimer.isRunning()) {
+            // the settings are still changing
+            Rectangle visibleRegion = calcVisibleRegion(src);
+            if (visibleRegion != null) {
+                task = () -> transformViewport(src, image, sourceBounds, visibleRegion);
+                quick = true;
+            } else if (useProxyPreviews(src)) {
+                task = () -> pFilter.transformProxy(src, calcProxyFactor(src));
+                quick = true;
+            }
+        }
+
+        runningToken = token;
+        runningQuick = quick;
+        runningStartTime = System.nanoTime();
+        Supplier<BufferedImage> finalTask = task;
+        runningPreview = CompletableFuture.supplyAsync(
+                () -> token.callTracked(finalTask),
+                ThreadPool.getExecutor());
+        runningPreview.whenCompleteAsync(
+                (dest, e) -> backgroundPreviewFinished(token, dest, e),
+                EventQueue::invokeLater);
+    }
+
+    private void backgroundPreviewFinished(CancellationToken token,
+                                           BufferedImage dest, Throwable e) {
+        if (token != runningToken) {
+            return; // already handled in finishPreviews
+        }
+        runningPreview = null;
+        runningToken = null;
+
+        if (!isShowing()) {
+            return;
+        }
+        if (token.isCancelled()) {
+            // the settings changed during the calculation
+            startBackgroundPreview();
+        } else {
+            publishPreview(dest, e, runningQuick);
+            if (!previewUpToDate && !refineTimer.isRunning()) {
+                // the settings stopped changing during the quick calculation
+                startBackgroundPreview();
+            }
+        }
+    }
+
+    private void publishPreview(BufferedImage dest, Throwable e, boolean quick) {
+        Drawable dr = getDrawable();
+        if (e instanceof CompletionException || e instanceof ExecutionException) {
+            e = e.getCause();
+        }
+        if (e instanceof CancellationException) {
+            return;
+        }
+        if (e != null) {
+            if (!quick) {
+                filter.handleException(dr, e);
+                // even after an error, there is nothing better to show
+                previewUpToDate = true;
+            }
+            return;
+        }
+
+        dr.changePreviewImage(dest, filter.getName(), PREVIEWING);
+        if (!quick) {
+            long totalTime = (System.nanoTime() - runningStartTime) / 1_000_000;
+            Messages.showPerformanceMessage(filter.getName(), totalTime);
+            FilterUtils.setLastFilter(filter);
+            previewUpToDate = true;
+        }
+    }
+
+    @Override
+    public void finishPreviews(boolean accepted) {
+        refineTimer.stop();
+
+        CompletableFuture<BufferedImage> running = runningPreview;
+        CancellationToken token = runningToken;
+        runningPreview = null;
+        runningToken = null;
+
+        if (running != null) {
+            if (!accepted || runningQuick) {
+                token.cancel();
+            }
+            // the filter can't be started again while it still runs
+            BufferedImage dest = null;
+            Throwable error = null;
+            try {
+                dest = running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                token.cancel();
+            } catch (ExecutionException e) {
+                error = e;
+            }
+            if (!token.isCancelled()) {
+                publishPreview(dest, error, false);
+            }
+        }
+
+        if (accepted && !previewUpToDate) {
+            super.runFilterPreview();
+            previewUpToDate = true;
+        }
+    }
+
+    private void cancelBackgroundPreview() {
+        refineTimer.stop();
+        if (runningPreview != null) {
+            finishPreviews(false);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        cancelBackgroundPreview();
+        super.removeNotify();
+    }
+
     private boolean hasShowOriginal() {
         return showOriginalCB != null;
     }
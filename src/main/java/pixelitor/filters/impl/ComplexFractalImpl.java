@@ -18,10 +18,34 @@
 package pixelitor.filters.impl;
 
 import com.jhlabs.image.PointFilter;
+import pixelitor.ThreadPool;
+import pixelitor.utils.CancellationToken;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.VisibleForTesting;
 
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+
+/**
+ * Common superclass for the escape-time fractals. The subclasses
+ * calculate the iteration counts of the individual pixels,
+ * and this class decides which pixels have to be calculated.
+ */
 public abstract class ComplexFractalImpl extends PointFilter {
+    // the size of the image blocks that are subdivided in parallel
+    private static final int BLOCK_SIZE = 64;
+
+    // smaller rectangles are not subdivided further
+    private static final int MIN_SUBDIVISION_SIZE = 8;
+
+    private static final int NOT_CALCULATED = -1;
+
+    // the orbits are compared with a saved point in
+    // intervals which start at this length and double
+    private static final int MIN_PERIOD_CHECK = 8;
+
     // the bounds in the complex space
     private final double cxMin;
     private final double cxMax;
@@ -45,6 +69,7 @@ public abstract class ComplexFractalImpl extends PointFilter {
 
     private int maxIterations = 570;
     private double zoom = 1.0f;
+    private boolean borderTracing = false;
 
     protected int[] colors;
 
@@ -62,11 +87,32 @@ public abstract class ComplexFractalImpl extends PointFilter {
 
     @Override
     public BufferedImage filter(BufferedImage src, BufferedImage dst) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        setUpCoordinates(width, height);
+
+        if (!borderTracing || src.getType() == TYPE_BYTE_GRAY) {
+            return super.filter(src, dst);
+        }
+
+        if (dst == null) {
+            dst = createCompatibleDestImage(src, null);
+        }
+        int[] iterations = calcIterationMap(width, height);
+        int[] outPixels = ImageUtils.getPixelsAsArray(dst);
+        for (int i = 0; i < outPixels.length; i++) {
+            outPixels[i] = colors[iterations[i]];
+        }
+        return dst;
+    }
+
+    @VisibleForTesting
+    void setUpCoordinates(int width, int height) {
         double zoomedRangeCX = cxRange / zoom;
         double zoomedRangeCY = cyRange / zoom;
 
-        xMultiplier = zoomedRangeCX / src.getWidth();
-        yMultiplier = zoomedRangeCY / src.getHeight();
+        xMultiplier = zoomedRangeCX / width;
+        yMultiplier = zoomedRangeCY / height;
 
         // the zoom center in the "C-space"
         double zoomCenterCX = cxMin + zoomCenterX * cxRange;
@@ -94,20 +140,123 @@ public abstract class ComplexFractalImpl extends PointFilter {
         } else {
             cyStart =  cyZoomedMin;
         }
+    }
 
-        return super.filter(src, dst);
+    @Override
+    public int filterRGB(int x, int y, int rgb) {
+        return colors[calcIterations(x, y)];
     }
 
-    protected int calcIteratedColor(double zx, double zy, double cx, double cy) {
-        int it = iterate(zx, zy, cx, cy, maxIterations);
-        return colors[it];
+    /**
+     * Returns the number of iterations that were left when
+     * the given pixel escaped, or 0 for the points of the set.
+     */
+    protected abstract int calcIterations(int x, int y);
+
+    /**
+     * Calculates the iteration counts of all pixels with the Mariani-Silver
+     * algorithm: if the border of a rectangle has the same iteration count
+     * everywhere, then the inside is filled with it, otherwise the
+     * rectangle is subdivided. The image is split into blocks,
+     * which are subdivided in parallel. This is an approximation: details
+     * which don't reach the border of a rectangle are filled over.
+     */
+    @VisibleForTesting
+    int[] calcIterationMap(int width, int height) {
+        int[] iterations = new int[width * height];
+        Arrays.fill(iterations, NOT_CALCULATED);
+
+        int numBlockRows = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        pt = createProgressTracker(numBlockRows);
+        ThreadPool.parallelRows(numBlockRows, width * BLOCK_SIZE, pt, (fromRow, toRow) -> {
+            for (int blockRow = fromRow; blockRow < toRow; blockRow++) {
+                int y0 = blockRow * BLOCK_SIZE;
+                int y1 = Math.min(y0 + BLOCK_SIZE, height);
+                for (int x0 = 0; x0 < width; x0 += BLOCK_SIZE) {
+                    CancellationToken.checkCurrent();
+                    int x1 = Math.min(x0 + BLOCK_SIZE, width);
+                    subdivide(iterations, width, x0, y0, x1, y1);
+                }
+            }
+        });
+        finishProgressTracker();
+
+        return iterations;
     }
 
-    private static int iterate(double x, double y, double cx, double cy, int maxIt) {
+    // calculates the rectangle from (x0, y0) inclusive to (x1, y1) exclusive
+    private void subdivide(int[] iterations, int width, int x0, int y0, int x1, int y1) {
+        int first = calcIfNeeded(iterations, width, x0, y0);
+        boolean uniform = true;
+        for (int x = x0; x < x1; x++) {
+            uniform &= calcIfNeeded(iterations, width, x, y0) == first;
+            uniform &= calcIfNeeded(iterations, width, x, y1 - 1) == first;
+        }
+        for (int y = y0 + 1; y < y1 - 1; y++) {
+            uniform &= calcIfNeeded(iterations, width, x0, y) == first;
+            uniform &= calcIfNeeded(iterations, width, x1 - 1, y) == first;
+        }
+
+        int rectWidth = x1 - x0;
+        int rectHeight = y1 - y0;
+        if (rectWidth <= 2 || rectHeight <= 2) {
+            return; // there are no inner pixels
+        }
+
+        if (uniform) {
+            for (int y = y0 + 1; y < y1 - 1; y++) {
+                int offset = y * width;
+                Arrays.fill(iterations, offset + x0 + 1, offset + x1 - 1, first);
+            }
+        } else if (rectWidth < MIN_SUBDIVISION_SIZE || rectHeight < MIN_SUBDIVISION_SIZE) {
+            for (int y = y0 + 1; y < y1 - 1; y++) {
+                for (int x = x0 + 1; x < x1 - 1; x++) {
+                    calcIfNeeded(iterations, width, x, y);
+                }
+            }
+        } else if (rectWidth >= rectHeight) {
+            // the middle column is on the border of both halves
+            int middle = x0 + rectWidth / 2;
+            subdivide(iterations, width, x0, y0, middle + 1, y1);
+            subdivide(iterations, width, middle, y0, x1, y1);
+        } else {
+            int middle = y0 + rectHeight / 2;
+            subdivide(iterations, width, x0, y0, x1, middle + 1);
+            subdivide(iterations, width, x0, middle, x1, y1);
+        }
+    }
+
+    private int calcIfNeeded(int[] iterations, int width, int x, int y) {
+        int index = x + y * width;
+        int it = iterations[index];
+        if (it == NOT_CALCULATED) {
+            it = calcIterations(x, y);
+            iterations[index] = it;
+        }
+        return it;
+    }
+
+    protected int iterate(double zx, double zy, double cx, double cy) {
+        return iterate(zx, zy, cx, cy, maxIterations);
+    }
+
+    /**
+     * The escape time algorithm with periodicity checking: if the orbit
+     * returns exactly to an earlier point, then it can never escape, and
+     * the result (0) is the same as after iterating until the limit.
+     */
+    @VisibleForTesting
+    static int iterate(double x, double y, double cx, double cy, int maxIt) {
         int it = maxIt;
         double x2 = 0;
         double y2 = 0;
         double xy;
+
+        double savedX = x;
+        double savedY = y;
+        int checkLength = MIN_PERIOD_CHECK;
+        int sinceSaved = 0;
+
         while (x2 + y2 <= 4 && it > 0) {
             it--;
             xy = x * y;
@@ -115,6 +264,16 @@ public abstract class ComplexFractalImpl extends PointFilter {
             y2 = y * y;
             x = x2 - y2 + cx;
             y = xy + xy + cy;
+
+            if (x == savedX && y == savedY) {
+                return 0;
+            }
+            if (++sinceSaved == checkLength) {
+                savedX = x;
+                savedY = y;
+                sinceSaved = 0;
+                checkLength <<= 1;
+            }
         }
         return it;
     }
@@ -151,4 +310,8 @@ public abstract class ComplexFractalImpl extends PointFilter {
     public void setMaxIterations(int maxIterations) {
         this.maxIterations = maxIterations;
     }
+
+    public void setBorderTracing(boolean borderTracing) {
+        this.borderTracing = borderTracing;
+    }
 }
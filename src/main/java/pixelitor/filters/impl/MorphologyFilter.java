@@ -18,15 +18,31 @@
 package pixelitor.filters.impl;
 
 import com.jhlabs.image.WholeImageFilter;
+import pixelitor.ThreadPool;
 import pixelitor.filters.Morphology;
+import pixelitor.utils.CancellationToken;
+import pixelitor.utils.ProgressTracker;
 
 import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
 /**
  * The implementation of the {@link Morphology} filter.
+ *
+ * The erosion/dilation with a square of the given radius is calculated
+ * with horizontal and vertical running minimums/maximums, using the
+ * van Herk/Gil-Werman algorithm, whose cost doesn't depend on the radius.
+ * A diamond is decomposed into the two diagonal lines plus one or two
+ * 3x3 diamonds. The result is the same as repeating a 3x3 pass radius
+ * times, where the pixels outside the image are ignored.
+ * As in the original iterative version, the dilation's output is opaque.
  */
 public class MorphologyFilter extends WholeImageFilter {
-    private int iterations = 1;
+    // the channels are processed separately, each is a work unit
+    public static final int NUM_WORK_UNITS = 4;
+
+    private int radius = 1;
 
     public static final int OP_ERODE = 1;
     public static final int OP_DILATE = 2;
@@ -48,81 +64,39 @@ public class MorphologyFilter extends WholeImageFilter {
         this.op = op;
     }
 
-    public void setIterations(int iterations) {
-        this.iterations = iterations;
+    public void setRadius(int radius) {
+        this.radius = radius;
     }
 
     @Override
     protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
         int[] outPixels = new int[width * height];
-        int numPixels = inPixels.length;
-        short[] inA = new short[numPixels];
-        short[] inR = new short[numPixels];
-        short[] inG = new short[numPixels];
-        short[] inB = new short[numPixels];
-
-        pt = createProgressTracker(iterations);
-        for (int it = 0; it < iterations; it++) {
-            if (it > 0) {
-                System.arraycopy(outPixels, 0, inPixels, 0, numPixels);
+        boolean erode = op == OP_ERODE;
+
+        pt = createProgressTracker(NUM_WORK_UNITS);
+        for (int shift = 0; shift < 32; shift += 8) {
+            if (shift == 24 && !erode) {
+                // the iterative version started the alpha maximum at 0xFF
+                for (int i = 0; i < outPixels.length; i++) {
+                    outPixels[i] |= 0xFF_00_00_00;
+                }
+                pt.unitDone();
+                continue;
             }
-            for (int i = 0; i < numPixels; i++) {
-                int rgb = inPixels[i];
-                inA[i] = (short) ((rgb >> 24) & 0xff);
-                inR[i] = (short) ((rgb >> 16) & 0xff);
-                inG[i] = (short) ((rgb >> 8) & 0xff);
-                inB[i] = (short) (rgb & 0xff);
+
+            int[] channel = new int[width * height];
+            for (int i = 0; i < channel.length; i++) {
+                channel[i] = (inPixels[i] >>> shift) & 0xFF;
             }
 
-            int index = 0;
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    short a = 0xff;
-                    short r = 0xff;
-                    short g = 0xff;
-                    short b = 0xff;
-
-                    if (op == OP_DILATE) {
-                        r = 0;
-                        g = 0;
-                        b = 0;
-                    }
+            if (kernel == KERNEL_DIAMOND) {
+                channel = diamond(channel, width, height, erode);
+            } else {
+                channel = square(channel, width, height, erode);
+            }
 
-                    for (int dy = -1; dy <= 1; dy++) {
-                        int iy = y + dy;
-                        if (0 <= iy && iy < height) {
-                            int xOffset = iy * width;
-                            for (int dx = -1; dx <= 1; dx++) {
-                                if (kernel == KERNEL_DIAMOND) {
-                                    if (dx == dy && dx != 0) {
-                                        continue;
-                                    }
-                                    if (dx == -dy && dx != 0) {
-                                        continue;
-                                    }
-                                }
-
-                                int ix = x + dx;
-                                if (0 <= ix && ix < width) {
-                                    int comparedIndex = xOffset + ix;
-
-                                    if (op == OP_ERODE) {
-                                        a = min(a, inA[comparedIndex]);
-                                        r = min(r, inR[comparedIndex]);
-                                        g = min(g, inG[comparedIndex]);
-                                        b = min(b, inB[comparedIndex]);
-                                    } else {
-                                        a = max(a, inA[comparedIndex]);
-                                        r = max(r, inR[comparedIndex]);
-                                        g = max(g, inG[comparedIndex]);
-                                        b = max(b, inB[comparedIndex]);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    outPixels[index++] = a << 24 | r << 16 | g << 8 | b;
-                }
+            for (int i = 0; i < channel.length; i++) {
+                outPixels[i] |= channel[i] << shift;
             }
             pt.unitDone();
         }
@@ -130,12 +104,155 @@ public class MorphologyFilter extends WholeImageFilter {
         return outPixels;
     }
 
-    private static short min(short a, short b) {
-        return (a <= b) ? a : b;
+    private int[] square(int[] channel, int width, int height, boolean erode) {
+        int[] tmp = new int[channel.length];
+        // rows, then columns
+        runningExtremes(channel, tmp, height, width,
+                y -> y * width, 1, y -> width, radius, erode);
+        runningExtremes(tmp, channel, width, height,
+                x -> x, width, x -> height, radius, erode);
+        return channel;
+    }
+
+    private int[] diamond(int[] channel, int width, int height, boolean erode) {
+        // a diamond of radius 2a + 1 is the sum of the two diagonal lines
+        // of radius a and a 3x3 diamond, and a diamond of radius 2a is the
+        // sum of the diagonal lines of radius a - 1 and two 3x3 diamonds
+        int lineRadius = (radius - 1) / 2;
+        int numSmallDiamonds = radius % 2 == 1 ? 1 : 2;
+
+        // the diagonal lines can leave the image and come back, therefore
+        // they run on an image padded with values that don't change the result
+        int pad = radius;
+        int pw = width + 2 * pad;
+        int ph = height + 2 * pad;
+        int[] padded = new int[pw * ph];
+        if (erode) {
+            Arrays.fill(padded, 0xFF);
+        }
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(channel, y * width, padded, (y + pad) * pw + pad, width);
+        }
+
+        int[] tmp = new int[padded.length];
+        if (lineRadius > 0) {
+            // lines going down-right, starting from the top row and the left column
+            runningExtremes(padded, tmp, pw + ph - 1, Math.min(pw, ph),
+                    line -> line < pw ? line : (line - pw + 1) * pw, pw + 1,
+                    line -> line < pw ? Math.min(pw - line, ph) : Math.min(pw, ph - (line - pw + 1)),
+                    lineRadius, erode);
+            // lines going down-left, starting from the top row and the right column
+            runningExtremes(tmp, padded, pw + ph - 1, Math.min(pw, ph),
+                    line -> line < pw ? line : (line - pw + 1) * pw + pw - 1, pw - 1,
+                    line -> line < pw ? Math.min(line + 1, ph) : Math.min(pw, ph - (line - pw + 1)),
+                    lineRadius, erode);
+        }
+        for (int i = 0; i < numSmallDiamonds; i++) {
+            smallDiamond(padded, tmp, pw, ph, erode);
+            int[] swap = padded;
+            padded = tmp;
+            tmp = swap;
+        }
+
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(padded, (y + pad) * pw + pad, channel, y * width, width);
+        }
+        return channel;
+    }
+
+    /**
+     * Calculates the minimum or maximum within the given radius along each
+     * of the given lines of the image with the van Herk/Gil-Werman algorithm.
+     */
+    private static void runningExtremes(int[] in, int[] out, int numLines, int maxLength,
+                                        IntUnaryOperator lineStart, int stride,
+                                        IntUnaryOperator lineLength,
+                                        int radius, boolean min) {
+        ThreadPool.parallelRows(numLines, maxLength, ProgressTracker.NULL_TRACKER, (fromLine, toLine) -> {
+            // the values after the end of the line are also used
+            int[] line = new int[maxLength + radius];
+            int[] forward = new int[maxLength + radius];
+            int[] backward = new int[maxLength + radius];
+            for (int l = fromLine; l < toLine; l++) {
+                CancellationToken.checkCurrent();
+                int start = lineStart.applyAsInt(l);
+                int length = lineLength.applyAsInt(l);
+                for (int i = 0, index = start; i < length; i++, index += stride) {
+                    line[i] = in[index];
+                }
+                runningExtremes(line, length, forward, backward, radius, min);
+                for (int i = 0, index = start; i < length; i++, index += stride) {
+                    out[index] = line[i];
+                }
+            }
+        });
+    }
+
+    // the values are replaced in place
+    private static void runningExtremes(int[] values, int length,
+                                        int[] forward, int[] backward,
+                                        int radius, boolean min) {
+        int windowSize = 2 * radius + 1;
+
+        // the line is extended with values that don't change the result
+        int extendedLength = length + radius;
+        Arrays.fill(values, length, extendedLength, min ? Integer.MAX_VALUE : Integer.MIN_VALUE);
+
+        // the extremes from the start of the block of windowSize
+        // values, and until the end of the block
+        for (int blockStart = 0; blockStart < extendedLength; blockStart += windowSize) {
+            int blockEnd = Math.min(blockStart + windowSize, extendedLength) - 1;
+            forward[blockStart] = values[blockStart];
+            for (int i = blockStart + 1; i <= blockEnd; i++) {
+                forward[i] = extreme(forward[i - 1], values[i], min);
+            }
+            backward[blockEnd] = values[blockEnd];
+            for (int i = blockEnd - 1; i >= blockStart; i--) {
+                backward[i] = extreme(backward[i + 1], values[i], min);
+            }
+        }
+
+        // each window consists of the end of a block and the start of the next
+        for (int i = 0; i < length; i++) {
+            int v = forward[i + radius];
+            if (i - radius >= 0) {
+                v = extreme(v, backward[i - radius], min);
+            }
+            values[i] = v;
+        }
     }
 
-    private static short max(short a, short b) {
-        return (a >= b) ? a : b;
+    private static void smallDiamond(int[] in, int[] out, int width, int height, boolean min) {
+        ThreadPool.parallelRows(height, width, ProgressTracker.NULL_TRACKER, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    int index = offset + x;
+                    int v = in[index];
+                    if (x > 0) {
+                        v = extreme(v, in[index - 1], min);
+                    }
+                    if (x < width - 1) {
+                        v = extreme(v, in[index + 1], min);
+                    }
+                    if (y > 0) {
+                        v = extreme(v, in[index - width], min);
+                    }
+                    if (y < height - 1) {
+                        v = extreme(v, in[index + width], min);
+                    }
+                    out[index] = v;
+                }
+            }
+        });
+    }
+
+    private static int extreme(int a, int b, boolean min) {
+        if (min) {
+            return a <= b ? a : b;
+        }
+        return a >= b ? a : b;
     }
 
     @Override
@@ -143,4 +260,3 @@ public class MorphologyFilter extends WholeImageFilter {
         return "Blur/Minimum";
     }
 }
-
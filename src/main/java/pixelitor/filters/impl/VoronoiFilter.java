@@ -22,10 +22,12 @@ import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Metric;
 import pixelitor.utils.ReseedSupport;
 import pixelitor.utils.Shapes;
+import pixelitor.utils.VisibleForTesting;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.Random;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
@@ -45,6 +47,8 @@ public class VoronoiFilter extends PointFilter {
     private int aaRes = 2;
     private int aaRes2 = aaRes * aaRes;
 
+    private SiteGrid grid;
+
     public VoronoiFilter(String filterName) {
         super(filterName);
     }
@@ -85,6 +89,8 @@ public class VoronoiFilter extends PointFilter {
             }
         }
 
+        grid = new SiteGrid(xCoords, yCoords, metric, src.getWidth(), src.getHeight());
+
         return super.filter(src, dst);
     }
 
@@ -107,40 +113,7 @@ public class VoronoiFilter extends PointFilter {
 
     @Override
     public int filterRGB(int x, int y, int rgb) {
-        int closestPointIndex = 0;
-        double fromHereToClosestSoFar = Double.POSITIVE_INFINITY;
-
-        // naive brute-force search, but quite fast, because
-        // it doesn't calculate square roots for the distance
-        // TODO use a faster algorithm
-        for (int i = 0; i < numPoints; i++) {
-            double fromHereToPointI = metric.distanceInt(
-                    xCoords[i], x, yCoords[i], y);
-            if (fromHereToPointI < fromHereToClosestSoFar) {
-                closestPointIndex = i;
-                fromHereToClosestSoFar = fromHereToPointI;
-            }
-        }
-
-        return colors[closestPointIndex];
-    }
-
-    /**
-     * Finds the nearest point with double precision. Used for AA
-     */
-    private int nearestSiteDouble(double x, double y) {
-        int closestPointIndex = 0;
-        double fromHereToClosestSoFar = Double.POSITIVE_INFINITY;
-
-        for (int i = 0; i < numPoints; i++) {
-            double fromHereToPointI = metric.distanceDouble(
-                    xCoords[i], x, yCoords[i], y);
-            if (fromHereToPointI < fromHereToClosestSoFar) {
-                closestPointIndex = i;
-                fromHereToClosestSoFar = fromHereToPointI;
-            }
-        }
-        return closestPointIndex;
+        return colors[grid.findNearest(x, y)];
     }
 
     /**
@@ -174,7 +147,7 @@ public class VoronoiFilter extends PointFilter {
             double yy = y + 1.0 / aaRes * i - 0.5;
             for (int j = 0; j < aaRes; j++) {
                 double xx = x + 1.0 / aaRes * j - 0.5;
-                int closestPointIndex = nearestSiteDouble(xx, yy);
+                int closestPointIndex = grid.findNearest(xx, yy);
                 int color = colors[closestPointIndex];
                 r += (color >>> 16) & 0xFF;
                 g += (color >>> 8) & 0xFF;
@@ -212,4 +185,101 @@ public class VoronoiFilter extends PointFilter {
             }
         }
     }
+
+    /**
+     * A uniform grid of the points, so that the nearest point can be found
+     * by looking only at the cells around a location. The result is the same
+     * as with a brute-force search: in case of a tie the point with the
+     * smaller index wins.
+     */
+    @VisibleForTesting
+    static class SiteGrid {
+        // the average number of points in a cell
+        private static final int POINTS_PER_CELL = 2;
+
+        private final int[] xCoords;
+        private final int[] yCoords;
+        private final Metric metric;
+
+        private final int cellSize;
+        private final int numCellsX;
+        private final int numCellsY;
+
+        // the point indexes sorted by cell (and by index within
+        // a cell), the points of cell i start at cellStarts[i]
+        private final int[] cellStarts;
+        private final int[] cellPoints;
+
+        SiteGrid(int[] xCoords, int[] yCoords, Metric metric, int width, int height) {
+            this.xCoords = xCoords;
+            this.yCoords = yCoords;
+            this.metric = metric;
+
+            int numPoints = xCoords.length;
+            double cellArea = (double) width * height * POINTS_PER_CELL / numPoints;
+            cellSize = Math.max(1, (int) Math.sqrt(cellArea));
+            numCellsX = (width + cellSize - 1) / cellSize;
+            numCellsY = (height + cellSize - 1) / cellSize;
+
+            int numCells = numCellsX * numCellsY;
+            cellStarts = new int[numCells + 1];
+            cellPoints = new int[numPoints];
+            for (int i = 0; i < numPoints; i++) {
+                cellStarts[cellIndexOf(i) + 1]++;
+            }
+            for (int c = 0; c < numCells; c++) {
+                cellStarts[c + 1] += cellStarts[c];
+            }
+            int[] next = Arrays.copyOf(cellStarts, numCells);
+            for (int i = 0; i < numPoints; i++) {
+                cellPoints[next[cellIndexOf(i)]++] = i;
+            }
+        }
+
+        private int cellIndexOf(int point) {
+            return (yCoords[point] / cellSize) * numCellsX + xCoords[point] / cellSize;
+        }
+
+        int findNearest(double x, double y) {
+            int cx = clamp((int) Math.floor(x / cellSize), numCellsX);
+            int cy = clamp((int) Math.floor(y / cellSize), numCellsY);
+
+            int nearest = -1;
+            double nearestDist = Double.POSITIVE_INFINITY;
+            int maxRing = Math.max(numCellsX, numCellsY);
+            for (int ring = 0; ring <= maxRing; ring++) {
+                int minY = Math.max(0, cy - ring);
+                int maxY = Math.min(numCellsY - 1, cy + ring);
+                for (int gy = minY; gy <= maxY; gy++) {
+                    boolean fullRow = gy == cy - ring || gy == cy + ring;
+                    // in the middle rows only the two ends belong to the ring
+                    int step = fullRow ? 1 : Math.max(1, 2 * ring);
+                    for (int gx = cx - ring; gx <= cx + ring; gx += step) {
+                        if (gx < 0 || gx >= numCellsX) {
+                            continue;
+                        }
+                        int cell = gy * numCellsX + gx;
+                        for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+                            int i = cellPoints[k];
+                            double dist = metric.distanceDouble(xCoords[i], x, yCoords[i], y);
+                            if (dist < nearestDist || (dist == nearestDist && i < nearest)) {
+                                nearest = i;
+                                nearestDist = dist;
+                            }
+                        }
+                    }
+                }
+
+                // the points in the next rings are farther than this along x or y
+                if (nearest >= 0 && nearestDist <= metric.minDistanceForAxisDistance(ring * cellSize)) {
+                    break;
+                }
+            }
+            return nearest;
+        }
+
+        private int clamp(int cell, int numCells) {
+            return cell < 0 ? 0 : (cell >= numCells ? numCells - 1 : cell);
+        }
+    }
 }
@@ -18,6 +18,7 @@
 package pixelitor.filters.jhlabsproxies;
 
 import com.jhlabs.image.BoxBlurFilter;
+import pixelitor.filters.Footprint;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.BooleanParam;
 import pixelitor.filters.gui.GroupedRangeParam;
@@ -78,4 +79,11 @@ public class JHBoxBlur extends ParametrizedFilter {
 
         return dest;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        // every iteration extends the reach of the blur
+        double maxRadius = Math.max(radius.getValueAsDouble(0), radius.getValueAsDouble(1));
+        return Footprint.radius(Math.ceil(maxRadius) * numberOfIterations.getValue());
+    }
+}
@@ -75,11 +75,16 @@ public class JHCaustics extends ParametrizedFilter {
         filter.setBrightness(brightness.getValue());
         filter.setDispersion(dispersion.getPercentageValF());
         filter.setSamples(samples.getValue());
-        filter.setScale(zoom.getValueAsFloat());
+        filter.setScale((float) scaledForProxy(zoom.getValueAsDouble()));
         filter.setTime(time.getPercentageValF());
         filter.setTurbulence(turbulence.getValueAsFloat() / 25.0f);
 
         dest = filter.filter(src, dest);
         return dest;
     }
+
+    @Override
+    public boolean supportsProxyPreviews() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ package pixelitor.filters.jhlabsproxies;
 
 
 import com.jhlabs.image.GaussianFilter;
+import pixelitor.filters.Footprint;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.BooleanParam;
 import pixelitor.filters.gui.RangeParam;
@@ -77,4 +78,9 @@ public class JHGaussianBlur extends ParametrizedFilter {
     public void setRadius(int newRadius) {
         radius.setValue(newRadius);
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.radius(radius.getValueAsDouble());
+    }
+}
@@ -62,7 +62,7 @@ public class JHLensBlur extends ParametrizedFilter {
             filter = new LensBlurFilter(NAME);
         }
 
-        filter.setRadius(amount.getValueAsFloat());
+        filter.setRadius((float) scaledForProxy(amount.getValueAsDouble()));
         filter.setSides(numberOfSides.getValue());
         filter.setBloom(bloomFactor.getValueAsFloat());
         filter.setBloomThreshold(bloomThreshold.getValueAsFloat());
@@ -75,4 +75,9 @@ public class JHLensBlur extends ParametrizedFilter {
 
         return dest;
     }
+
+    @Override
+    public boolean supportsProxyPreviews() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -18,25 +18,43 @@
 package pixelitor.filters.jhlabsproxies;
 
 import com.jhlabs.image.MedianFilter;
-import pixelitor.filters.Filter;
+import pixelitor.filters.Footprint;
+import pixelitor.filters.ParametrizedFilter;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.filters.gui.ShowOriginal;
 
 import java.awt.image.BufferedImage;
 
 /**
- * "3x3 Median Filter" based on the JHLabs {@link MedianFilter}
+ * Median filter based on the JHLabs {@link MedianFilter}
  */
-public class JHMedian extends Filter {
-    public static final String NAME = "3x3 Median Filter";
+public class JHMedian extends ParametrizedFilter {
+    public static final String NAME = "Median";
 
-    private final MedianFilter filter;
+    private final RangeParam radius = new RangeParam("Radius", 1, 1, 100);
+
+    private MedianFilter filter;
 
     public JHMedian() {
-        filter = new MedianFilter(NAME);
+        super(ShowOriginal.YES);
+
+        setParams(radius);
     }
 
     @Override
-    public BufferedImage transform(BufferedImage src, BufferedImage dest) {
+    public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
+        if (filter == null) {
+            filter = new MedianFilter(NAME);
+        }
+
+        filter.setRadius(radius.getValue());
+
         dest = filter.filter(src, dest);
         return dest;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.radius(radius.getValue());
+    }
+}
@@ -64,8 +64,8 @@ public class JHOilPainting extends ParametrizedFilter {
 
     @Override
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
-        int brushX = brushSize.getValue(0);
-        int brushY = brushSize.getValue(1);
+        int brushX = scaledForProxy(brushSize.getValue(0));
+        int brushY = scaledForProxy(brushSize.getValue(1));
         if (brushX == 0 && brushY == 0) {
             return src;
         }
@@ -121,4 +121,9 @@ public class JHOilPainting extends ParametrizedFilter {
     public boolean excludedFromAnimation() {
         return true;
     }
+
+    @Override
+    public boolean supportsProxyPreviews() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -18,6 +18,7 @@
 package pixelitor.filters.jhlabsproxies;
 
 import com.jhlabs.image.UnsharpFilter;
+import pixelitor.filters.Footprint;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
@@ -64,4 +65,9 @@ public class JHUnsharpMask extends ParametrizedFilter {
 
         return dest;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.radius(radius.getValueAsDouble());
+    }
+}
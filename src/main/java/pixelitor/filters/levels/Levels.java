@@ -21,6 +21,7 @@ import pixelitor.filters.gui.FilterGUI;
 import pixelitor.filters.gui.FilterWithGUI;
 import pixelitor.filters.levels.gui.LevelsGUI;
 import pixelitor.filters.lookup.FastLookupOp;
+import pixelitor.filters.lookup.LookupFilter;
 import pixelitor.layers.Drawable;
 import pixelitor.utils.Rnd;
 
@@ -32,7 +33,7 @@ import java.util.Objects;
 /**
  * The Levels filter
  */
-public class Levels extends FilterWithGUI {
+public class Levels extends FilterWithGUI implements LookupFilter {
     private RGBLookup rgbLookup;
 
     public Levels() {
@@ -60,6 +61,11 @@ public class Levels extends FilterWithGUI {
         return dest;
     }
 
+    @Override
+    public RGBLookup getRGBLookup() {
+        return rgbLookup;
+    }
+
     @Override
     public void randomizeSettings() {
         int inputBlackValue = Rnd.nextInt(255);
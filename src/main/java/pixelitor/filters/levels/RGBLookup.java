@@ -84,6 +84,33 @@ public class RGBLookup {
         }
     }
 
+    /**
+     * Returns a lookup which doesn't change the pixels
+     */
+    public static RGBLookup createIdentity() {
+        var lookup = new RGBLookup();
+        for (short i = 0; i < ARRAY_LENGTH; i++) {
+            lookup.redLUT[i] = i;
+            lookup.greenLUT[i] = i;
+            lookup.blueLUT[i] = i;
+        }
+        return lookup;
+    }
+
+    /**
+     * Returns a lookup which has the same effect as applying
+     * first this lookup and then the given one.
+     */
+    public RGBLookup then(RGBLookup next) {
+        var fused = new RGBLookup();
+        for (int i = 0; i < ARRAY_LENGTH; i++) {
+            fused.redLUT[i] = next.redLUT[redLUT[i]];
+            fused.greenLUT[i] = next.greenLUT[greenLUT[i]];
+            fused.blueLUT[i] = next.blueLUT[blueLUT[i]];
+        }
+        return fused;
+    }
+
     private void allocateArrays() {
         redLUT = new short[ARRAY_LENGTH];
         greenLUT = new short[ARRAY_LENGTH];
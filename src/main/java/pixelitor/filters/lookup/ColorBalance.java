@@ -18,6 +18,7 @@
 package pixelitor.filters.lookup;
 
 import com.jhlabs.image.PixelUtils;
+import pixelitor.filters.Footprint;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.IntChoiceParam.Value;
@@ -39,7 +40,7 @@ import static java.awt.Color.YELLOW;
 /**
  * Color balance filter
  */
-public class ColorBalance extends ParametrizedFilter {
+public class ColorBalance extends ParametrizedFilter implements LookupFilter {
     private static final int EVERYTHING = 0;
     private static final int SHADOWS = 1;
     private static final int MIDTONES = 2;
@@ -77,8 +78,7 @@ public class ColorBalance extends ParametrizedFilter {
             return src;
         }
 
-        var rgbLookup = new LookupHelper(cr, mg, yb, affect.getValue())
-                .getLookup();
+        RGBLookup rgbLookup = getRGBLookup();
 
         var filterOp = new FastLookupOp(
                 (ShortLookupTable) rgbLookup.getLookupOp());
@@ -88,6 +88,20 @@ public class ColorBalance extends ParametrizedFilter {
         return dest;
     }
 
+    @Override
+    public RGBLookup getRGBLookup() {
+        float cr = cyanRed.getValueAsFloat();
+        float mg = magentaGreen.getValueAsFloat();
+        float yb = yellowBlue.getValueAsFloat();
+
+        if (cr == 0 && mg == 0 && yb == 0) {
+            return RGBLookup.createIdentity();
+        }
+
+        return new LookupHelper(cr, mg, yb, affect.getValue())
+                .getLookup();
+    }
+
     private static class LookupHelper {
         private final float cyanRed;
         private final float magentaGreen;
@@ -182,4 +196,9 @@ public class ColorBalance extends ParametrizedFilter {
     public boolean supportsGray() {
         return false;
     }
+
+    @Override
+    public Footprint getFootprint() {
+        return Footprint.POINT;
+    }
 }
@@ -18,7 +18,11 @@
 package pixelitor.filters.lookup;
 
 import com.jhlabs.image.PixelUtils;
+import pixelitor.ThreadPool;
+import pixelitor.utils.CancellationToken;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.VisibleForTesting;
 
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
@@ -35,6 +39,18 @@ import java.awt.image.ShortLookupTable;
  * the image has packed ints
  */
 public class FastLookupOp implements BufferedImageOp {
+    // the factors are indexed by the alpha value, so that
+    // the per-pixel float divisions are avoided
+    private static final float[] UNPREMULTIPLY_FACTORS = new float[256];
+    private static final float[] PREMULTIPLY_FACTORS = new float[256];
+
+    static {
+        for (int a = 1; a < 256; a++) {
+            UNPREMULTIPLY_FACTORS[a] = 255.0f / a;
+            PREMULTIPLY_FACTORS[a] = a * (1.0f / 255.0f);
+        }
+    }
+
     private final ShortLookupTable lut;
 
     public FastLookupOp(ShortLookupTable lut) {
@@ -56,57 +72,7 @@ public class FastLookupOp implements BufferedImageOp {
             int length = srcData.length;
             assert length == destData.length;
 
-            short[][] table = lut.getTable();
-
-            for (int i = 0; i < length; i++) {
-                int rgb = srcData[i];
-                int a = (rgb >>> 24) & 0xFF;
-                int r = (rgb >>> 16) & 0xFF;
-                int g = (rgb >>> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                if (a == 255 || notPremultiplied) {
-                    r = table[0][r];
-                    g = table[1][g];
-                    b = table[2][b];
-                } else if (a == 0) {
-                    r = 0;
-                    g = 0;
-                    b = 0;
-                } else {
-                    // unpremultiply
-                    float f = 255.0f / a;
-                    int ur = (int) (r * f);
-                    int ug = (int) (g * f);
-                    int ub = (int) (b * f);
-
-                    if (ur > 255) {
-                        ur = 255;
-                    }
-                    if (ug > 255) {
-                        ug = 255;
-                    }
-                    if (ub > 255) {
-                        ub = 255;
-                    }
-
-                    // lookup
-                    ur = table[0][ur];
-                    ug = table[1][ug];
-                    ub = table[2][ub];
-
-                    // premultiply
-                    float f2 = a * (1.0f / 255.0f);
-                    r = (int) (ur * f2);
-                    g = (int) (ug * f2);
-                    b = (int) (ub * f2);
-
-                    r = PixelUtils.clamp(r);
-                    g = PixelUtils.clamp(g);
-                    b = PixelUtils.clamp(b);
-                }
-                destData[i] = a << 24 | r << 16 | g << 8 | b;
-            }
+            filterPacked(srcData, destData, src.getWidth(), lut.getTable(), notPremultiplied);
         } else { // fall back to a normal LookupOp
             BufferedImageOp lookupOp = new LookupOp(lut, null);
             lookupOp.filter(src, dst);
@@ -115,6 +81,82 @@ public class FastLookupOp implements BufferedImageOp {
         return dst;
     }
 
+    @VisibleForTesting
+    static void filterPacked(int[] srcData, int[] destData, int width,
+                             short[][] table, boolean notPremultiplied) {
+        int length = srcData.length;
+
+        // the pixels are independent, so the
+        // rows are processed on several threads
+        int numRows = (length + width - 1) / width;
+        ThreadPool.parallelRows(numRows, width, ProgressTracker.NULL_TRACKER, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                CancellationToken.checkCurrent();
+                int from = y * width;
+                int to = Math.min(from + width, length);
+                filterPixels(srcData, destData, from, to, table, notPremultiplied);
+            }
+        });
+    }
+
+    private static void filterPixels(int[] srcData, int[] destData,
+                                     int from, int to,
+                                     short[][] table, boolean notPremultiplied) {
+        short[] redTable = table[0];
+        short[] greenTable = table[1];
+        short[] blueTable = table[2];
+
+        for (int i = from; i < to; i++) {
+            int rgb = srcData[i];
+            int a = (rgb >>> 24) & 0xFF;
+            int r = (rgb >>> 16) & 0xFF;
+            int g = (rgb >>> 8) & 0xFF;
+            int b = rgb & 0xFF;
+
+            if (a == 255 || notPremultiplied) {
+                r = redTable[r];
+                g = greenTable[g];
+                b = blueTable[b];
+            } else if (a == 0) {
+                r = 0;
+                g = 0;
+                b = 0;
+            } else {
+                // unpremultiply
+                float f = UNPREMULTIPLY_FACTORS[a];
+                int ur = (int) (r * f);
+                int ug = (int) (g * f);
+                int ub = (int) (b * f);
+
+                if (ur > 255) {
+                    ur = 255;
+                }
+                if (ug > 255) {
+                    ug = 255;
+                }
+                if (ub > 255) {
+                    ub = 255;
+                }
+
+                // lookup
+                ur = redTable[ur];
+                ug = greenTable[ug];
+                ub = blueTable[ub];
+
+                // premultiply
+                float f2 = PREMULTIPLY_FACTORS[a];
+                r = (int) (ur * f2);
+                g = (int) (ug * f2);
+                b = (int) (ub * f2);
+
+                r = PixelUtils.clamp(r);
+                g = PixelUtils.clamp(g);
+                b = PixelUtils.clamp(b);
+            }
+            destData[i] = a << 24 | r << 16 | g << 8 | b;
+        }
+    }
+
     @Override
     public Rectangle2D getBounds2D(BufferedImage src) {
         return null;
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.lookup;
+
+import pixelitor.filters.levels.RGBLookup;
+
+/**
+ * A filter which maps each (unpremultiplied) channel value of a pixel
+ * independently through a lookup table, and therefore can be fused
+ * with other such filters into a single {@link FastLookupOp} pass.
+ */
+public interface LookupFilter {
+    /**
+     * Returns the lookup tables corresponding to the current
+     * settings, or null if the filter is not configured yet.
+     */
+    RGBLookup getRGBLookup();
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import pixelitor.utils.DirtyTiles;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.EventQueue;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Calculates the RGB histograms of images on a background thread.
+ *
+ * The requests arriving while a calculation is running are coalesced:
+ * only the latest one is executed, with the changed areas of all of them.
+ * The histograms are also kept for each tile of the image, so that repeated
+ * requests for the same image recount only the tiles touched by the
+ * changed areas.
+ */
+class HistogramService {
+    static final int NUM_BINS = 256;
+
+    // in sampling mode at most about this many pixels are counted
+    static final int MAX_SAMPLES = 1 << 22;
+
+    static final int TILE_SIZE = DirtyTiles.DEFAULT_TILE_SIZE;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "[Histogram thread]");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicReference<Request> pendingRequest = new AtomicReference<>();
+
+    // called on the EDT with the results
+    private final Consumer<Result> resultHandler;
+
+    // the state of the incremental calculation,
+    // used only by the calculating thread. The source and
+    // the pixels are referenced weakly, so that a closed composition
+    // can be garbage collected even before a new calculation
+    private WeakReference<Object> lastSource = new WeakReference<>(null);
+    private WeakReference<int[]> lastPixels = new WeakReference<>(null);
+    private int lastWidth;
+    private int lastHeight;
+    private int lastStep;
+    private int numTilesX;
+    private int numTilesY;
+
+    // the red, green and blue bins after each other,
+    // for the whole image and for each tile
+    private final int[] bins = new int[3 * NUM_BINS];
+    private int[][] tileBins;
+
+    HistogramService(Consumer<Result> resultHandler) {
+        this.resultHandler = resultHandler;
+    }
+
+    /**
+     * Requests the histograms of the given image, which belongs to
+     * the given source. The changed areas are the parts of the image
+     * that changed since the previous request with the same image,
+     * or null if the whole image has to be counted again.
+     * The image can still be modified in place by the EDT, but
+     * every such modification must be followed by a new request,
+     * so that the final result is correct.
+     */
+    void request(Object source, BufferedImage image, boolean sampling, List<Rectangle> changedAreas) {
+        assert EventQueue.isDispatchThread() : "not on EDT";
+
+        Request request = new Request(source, image, sampling, changedAreas);
+        while (true) {
+            Request previous = pendingRequest.get();
+            Request merged = request.mergeWith(previous);
+            if (pendingRequest.compareAndSet(previous, merged)) {
+                if (previous == null) {
+                    // otherwise the already scheduled task will pick up this request
+                    executor.execute(this::processPendingRequest);
+                }
+                return;
+            }
+        }
+    }
+
+    private void processPendingRequest() {
+        Request request = pendingRequest.getAndSet(null);
+        if (request == null) {
+            return;
+        }
+        BufferedImage image = request.image;
+        int[] pixels = ImageUtils.getPixelsAsArray(image);
+        Result result = calculate(request.source, pixels, image.getWidth(),
+                image.getHeight(), request.sampling, request.changedAreas);
+
+        EventQueue.invokeLater(() -> resultHandler.accept(result));
+    }
+
+    /**
+     * Updates the histograms with the current pixels of
+     * the source and returns a copy of the histograms.
+     */
+    Result calculate(Object source, int[] pixels, int width, int height,
+                     boolean sampling, List<Rectangle> changedAreas) {
+        int step = sampling ? calcSamplingStep(width, height) : 1;
+        if (changedAreas == null || source != lastSource.get()
+                || pixels != lastPixels.get() || width != lastWidth
+                || height != lastHeight || step != lastStep) {
+            lastSource = new WeakReference<>(source);
+            lastPixels = new WeakReference<>(pixels);
+            lastWidth = width;
+            lastHeight = height;
+            lastStep = step;
+            recountAll(pixels);
+        } else {
+            for (Rectangle area : changedAreas) {
+                recountArea(pixels, area);
+            }
+        }
+        return new Result(source,
+                Arrays.copyOfRange(bins, 0, NUM_BINS),
+                Arrays.copyOfRange(bins, NUM_BINS, 2 * NUM_BINS),
+                Arrays.copyOfRange(bins, 2 * NUM_BINS, 3 * NUM_BINS),
+                step * step);
+    }
+
+    /**
+     * Counts only every step-th pixel in both directions, so
+     * that approximately MAX_SAMPLES pixels are counted.
+     */
+    static int calcSamplingStep(int width, int height) {
+        long numPixels = (long) width * height;
+        if (numPixels <= MAX_SAMPLES) {
+            return 1;
+        }
+        return (int) Math.ceil(Math.sqrt((double) numPixels / MAX_SAMPLES));
+    }
+
+    private void recountAll(int[] pixels) {
+        numTilesX = (lastWidth + TILE_SIZE - 1) / TILE_SIZE;
+        numTilesY = (lastHeight + TILE_SIZE - 1) / TILE_SIZE;
+        tileBins = new int[numTilesX * numTilesY][3 * NUM_BINS];
+
+        Arrays.fill(bins, 0);
+        for (int tileIndex = 0; tileIndex < tileBins.length; tileIndex++) {
+            recountTile(pixels, tileIndex);
+        }
+    }
+
+    private void recountArea(int[] pixels, Rectangle area) {
+        Rectangle r = area.intersection(new Rectangle(0, 0, lastWidth, lastHeight));
+        if (r.isEmpty()) {
+            return;
+        }
+        int endTileX = (r.x + r.width - 1) / TILE_SIZE;
+        int endTileY = (r.y + r.height - 1) / TILE_SIZE;
+        for (int ty = r.y / TILE_SIZE; ty <= endTileY; ty++) {
+            for (int tx = r.x / TILE_SIZE; tx <= endTileX; tx++) {
+                recountTile(pixels, ty * numTilesX + tx);
+            }
+        }
+    }
+
+    private void recountTile(int[] pixels, int tileIndex) {
+        int[] counts = tileBins[tileIndex];
+        for (int i = 0; i < counts.length; i++) {
+            bins[i] -= counts[i];
+            counts[i] = 0;
+        }
+
+        int tileX = (tileIndex % numTilesX) * TILE_SIZE;
+        int tileY = (tileIndex / numTilesX) * TILE_SIZE;
+        int endX = Math.min(tileX + TILE_SIZE, lastWidth);
+        int endY = Math.min(tileY + TILE_SIZE, lastHeight);
+        // in sampling mode only the pixels on the global sampling grid are counted
+        int startX = roundUpToStep(tileX);
+        int startY = roundUpToStep(tileY);
+        for (int y = startY; y < endY; y += lastStep) {
+            int rowStart = y * lastWidth;
+            for (int x = startX; x < endX; x += lastStep) {
+                int rgb = pixels[rowStart + x];
+                if ((rgb >>> 24) != 0) {
+                    counts[(rgb >>> 16) & 0xFF]++;
+                    counts[NUM_BINS + ((rgb >>> 8) & 0xFF)]++;
+                    counts[2 * NUM_BINS + (rgb & 0xFF)]++;
+                }
+            }
+        }
+
+        for (int i = 0; i < counts.length; i++) {
+            bins[i] += counts[i];
+        }
+    }
+
+    private int roundUpToStep(int coord) {
+        return (coord + lastStep - 1) / lastStep * lastStep;
+    }
+
+    private static class Request {
+        private final Object source;
+        private final BufferedImage image;
+        private final boolean sampling;
+        private final List<Rectangle> changedAreas;
+
+        private Request(Object source, BufferedImage image, boolean sampling, List<Rectangle> changedAreas) {
+            this.source = source;
+            this.image = image;
+            this.sampling = sampling;
+            this.changedAreas = changedAreas;
+        }
+
+        /**
+         * Returns a request which replaces the given not yet processed
+         * request, so that its changed areas are not lost.
+         */
+        private Request mergeWith(Request previous) {
+            if (previous == null) {
+                return this;
+            }
+            if (previous.source != source || previous.image != image
+                    || previous.sampling != sampling
+                    || previous.changedAreas == null || changedAreas == null) {
+                return new Request(source, image, sampling, null);
+            }
+            List<Rectangle> areas = new ArrayList<>(previous.changedAreas);
+            areas.addAll(changedAreas);
+            return new Request(source, image, sampling, areas);
+        }
+    }
+
+    /**
+     * The calculated histograms. In sampling mode each
+     * counted pixel represents pixelsPerSample pixels.
+     */
+    static class Result {
+        final Object source;
+        final int[] reds;
+        final int[] greens;
+        final int[] blues;
+        final int pixelsPerSample;
+
+        Result(Object source, int[] reds, int[] greens, int[] blues, int pixelsPerSample) {
+            this.source = source;
+            this.reds = reds;
+            this.greens = greens;
+            this.blues = blues;
+            this.pixelsPerSample = pixelsPerSample;
+        }
+    }
+}
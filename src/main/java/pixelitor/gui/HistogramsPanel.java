@@ -19,8 +19,8 @@ package pixelitor.gui;
 
 import pixelitor.Composition;
 import pixelitor.OpenImages;
+import pixelitor.gui.HistogramService.Result;
 import pixelitor.utils.CompActivationListener;
-import pixelitor.utils.ImageUtils;
 
 import javax.swing.*;
 import java.awt.BorderLayout;
@@ -49,10 +49,16 @@ public class HistogramsPanel extends JPanel implements CompActivationListener {
     private final HistogramPainter red;
     private final HistogramPainter green;
     private final HistogramPainter blue;
-    private static final int HISTOGRAM_RESOLUTION = 256;
+    private static final int HISTOGRAM_RESOLUTION = HistogramService.NUM_BINS;
 
     private boolean logarithmic;
 
+    // if true, only a subset of the pixels of big images is counted
+    private boolean sampling = false;
+
+    private final HistogramService service = new HistogramService(this::showResult);
+    private Result lastResult;
+
     private HistogramsPanel() {
         setLayout(new BorderLayout());
 
@@ -76,9 +82,14 @@ public class HistogramsPanel extends JPanel implements CompActivationListener {
         JPanel northPanel = new JPanel(new FlowLayout(LEFT));
         northPanel.add(new JLabel("Type:"));
         northPanel.add(typeChooser);
+        JCheckBox samplingCB = new JCheckBox("Sample Big Images", sampling);
+        samplingCB.setToolTipText("<html>Calculate the histograms of big images faster,<br>" +
+                "by counting only a regular subset of the pixels");
+        northPanel.add(samplingCB);
         add(northPanel, NORTH);
         typeChooser.addActionListener(e ->
                 typeChanged((String) typeChooser.getSelectedItem()));
+        samplingCB.addActionListener(e -> samplingChanged(samplingCB.isSelected()));
 
         setBorder(createTitledBorder("Histograms"));
         JScrollPane scrollPane = new JScrollPane(painters);
@@ -89,17 +100,25 @@ public class HistogramsPanel extends JPanel implements CompActivationListener {
         boolean isLogarithmicNow = selected.equals(TYPE_LOGARITHMIC);
         if (isLogarithmicNow != logarithmic) {
             logarithmic = isLogarithmicNow;
-            OpenImages.getActiveCompOpt().ifPresent(
-                    this::updateFrom);
+            if (lastResult != null) {
+                // no need to recalculate, only the display changes
+                showResult(lastResult);
+            }
         }
     }
 
+    private void samplingChanged(boolean newValue) {
+        sampling = newValue;
+        OpenImages.getActiveCompOpt().ifPresent(this::updateFrom);
+    }
+
     public boolean isShown() {
         return getParent() != null;
     }
 
     @Override
     public void allCompsClosed() {
+        lastResult = null;
         red.allCompsClosed();
         green.allCompsClosed();
         blue.allCompsClosed();
@@ -111,39 +130,42 @@ public class HistogramsPanel extends JPanel implements CompActivationListener {
         updateFrom(newView.getComp());
     }
 
+    /**
+     * Starts the calculation of the histograms of the given composition
+     * on a background thread. The panel is updated when it's ready.
+     */
     public void updateFrom(Composition comp) {
         Objects.requireNonNull(comp);
         if (!isShown()) {
             return;
         }
-        BufferedImage image = comp.getCompositeImage();
-
-        int[] reds = new int[HISTOGRAM_RESOLUTION];
-        int[] blues = new int[HISTOGRAM_RESOLUTION];
-        int[] greens = new int[HISTOGRAM_RESOLUTION];
-
-        int[] data = ImageUtils.getPixelsAsArray(image);
-        for (int rgb : data) {
-            int a = (rgb >>> 24) & 0xFF;
-            if (a > 0) {
-                int r = (rgb >>> 16) & 0xFF;
-                int g = (rgb >>> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                reds[r]++;
-                greens[g]++;
-                blues[b]++;
-            }
+        BufferedImage image = comp.getCompositeImageForPainting();
+        service.request(comp, image, sampling, comp.takeHistogramChanges());
+    }
+
+    private void showResult(Result result) {
+        if (OpenImages.getActiveCompOpt().orElse(null) != result.source) {
+            return; // the composition was closed or deactivated in the meantime
         }
+        lastResult = result;
+
+        int[] reds = result.reds;
+        int[] greens = result.greens;
+        int[] blues = result.blues;
 
         if (logarithmic) {
+            reds = new int[HISTOGRAM_RESOLUTION];
+            greens = new int[HISTOGRAM_RESOLUTION];
+            blues = new int[HISTOGRAM_RESOLUTION];
+            double scale = result.pixelsPerSample;
             for (int i = 0; i < HISTOGRAM_RESOLUTION; i++) {
                 // Add one before taking the logarithm to avoid calculating log(0)
                 // Note that log(1) = 0, which is just perfect
                 // Also multiply with a big number to avoid rounding errors
-                reds[i] = (int) (1000.0 * Math.log(reds[i] + 1));
-                greens[i] = (int) (1000.0 * Math.log(greens[i] + 1));
-                blues[i] = (int) (1000.0 * Math.log(blues[i] + 1));
+                // In sampling mode the counts are estimated before the logarithm
+                reds[i] = (int) (1000.0 * Math.log(scale * result.reds[i] + 1));
+                greens[i] = (int) (1000.0 * Math.log(scale * result.greens[i] + 1));
+                blues[i] = (int) (1000.0 * Math.log(scale * result.blues[i] + 1));
             }
         }
 
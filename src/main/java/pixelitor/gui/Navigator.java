@@ -19,6 +19,7 @@ package pixelitor.gui;
 
 import org.jdesktop.swingx.painter.CheckerboardPainter;
 import pixelitor.Canvas;
+import pixelitor.Composition;
 import pixelitor.OpenImages;
 import pixelitor.colors.ColorUtils;
 import pixelitor.gui.utils.DialogBuilder;
@@ -308,7 +309,10 @@ public class Navigator extends JComponent
         var origTransform = g2.getTransform();
 
         g2.scale(imgScalingRatio, imgScalingRatio);
-        g2.drawImage(view.getComp().getCompositeImage(), 0, 0, null);
+        Composition comp = view.getComp();
+        Canvas canvas = comp.getCanvas();
+        g2.drawImage(comp.getCompositeImageForPainting(imgScalingRatio), 0, 0,
+                canvas.getImWidth(), canvas.getImHeight(), null);
         g2.setTransform(origTransform);
 
         g2.setStroke(VIEW_BOX_STROKE);
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * A retained image of the visible part of a {@link View}.
+ * After scrolling, the pixels that are still visible are shifted
+ * and only the newly exposed strips are rendered again, so panning
+ * costs work in proportion to the revealed area.
+ * All coordinates are in component space.
+ */
+class ScrollBuffer {
+    private BufferedImage image;
+
+    // the area of the component that the image currently represents
+    private final Rectangle bounds = new Rectangle();
+
+    // the union of the areas that must be rendered again,
+    // or null if the image is up-to-date
+    private Rectangle dirty;
+
+    // everything that influences the rendering besides the dirty areas
+    private Object stateKey;
+
+    /**
+     * Marks the given area as changed, it will be
+     * rendered again the next time it is painted.
+     */
+    void markDirty(int x, int y, int width, int height) {
+        if (image == null) {
+            return; // everything will be rendered anyway
+        }
+        // areas outside the current bounds can become
+        // visible only by scrolling, and then they are rendered
+        Rectangle area = bounds.intersection(new Rectangle(x, y, width, height));
+        if (area.isEmpty()) {
+            return;
+        }
+        if (dirty == null) {
+            dirty = area;
+        } else {
+            dirty.add(area);
+        }
+    }
+
+    /**
+     * Paints the given visible area on the given Graphics2D from
+     * the buffer, first updating the buffer where it's not up-to-date.
+     * The renderer is called with a Graphics2D that works
+     * in component space and is clipped to the area to be rendered.
+     */
+    void paint(Graphics2D g, Rectangle visible, Object stateKey,
+               Consumer<Graphics2D> renderer) {
+        if (visible.isEmpty()) {
+            return;
+        }
+
+        if (image == null
+                || image.getWidth() != visible.width
+                || image.getHeight() != visible.height
+                || !stateKey.equals(this.stateKey)) {
+            if (image == null
+                    || image.getWidth() != visible.width
+                    || image.getHeight() != visible.height) {
+                dispose();
+                image = new BufferedImage(visible.width, visible.height, TYPE_INT_ARGB_PRE);
+            }
+            this.stateKey = stateKey;
+            bounds.setBounds(visible);
+            dirty = null;
+            render(new Rectangle(visible), renderer);
+        } else if (bounds.x != visible.x || bounds.y != visible.y) {
+            scrollTo(visible, renderer);
+        }
+
+        if (dirty != null) {
+            Rectangle area = dirty.intersection(bounds);
+            dirty = null;
+            if (!area.isEmpty()) {
+                render(area, renderer);
+            }
+        }
+
+        g.drawImage(image, bounds.x, bounds.y, null);
+    }
+
+    /**
+     * Shifts the retained pixels by the scroll delta
+     * and renders the newly exposed strips.
+     */
+    private void scrollTo(Rectangle visible, Consumer<Graphics2D> renderer) {
+        int dx = bounds.x - visible.x;
+        int dy = bounds.y - visible.y;
+        int width = bounds.width;
+        int height = bounds.height;
+        bounds.setLocation(visible.x, visible.y);
+
+        if (Math.abs(dx) >= width || Math.abs(dy) >= height) {
+            // nothing can be reused
+            render(new Rectangle(bounds), renderer);
+            return;
+        }
+
+        Graphics2D ig = image.createGraphics();
+        ig.copyArea(Math.max(0, -dx), Math.max(0, -dy),
+                width - Math.abs(dx), height - Math.abs(dy), dx, dy);
+        ig.dispose();
+
+        // the exposed horizontal strip spans the whole width...
+        if (dy > 0) {
+            render(new Rectangle(bounds.x, bounds.y, width, dy), renderer);
+        } else if (dy < 0) {
+            render(new Rectangle(bounds.x, bounds.y + height + dy, width, -dy), renderer);
+        }
+
+        // ...and the vertical strip covers only the rest
+        int stripY = bounds.y + Math.max(0, dy);
+        int stripHeight = height - Math.abs(dy);
+        if (dx > 0) {
+            render(new Rectangle(bounds.x, stripY, dx, stripHeight), renderer);
+        } else if (dx < 0) {
+            render(new Rectangle(bounds.x + width + dx, stripY, -dx, stripHeight), renderer);
+        }
+    }
+
+    private void render(Rectangle area, Consumer<Graphics2D> renderer) {
+        Graphics2D ig = image.createGraphics();
+        ig.translate(-bounds.x, -bounds.y);
+        ig.clip(area);
+
+        ig.setComposite(AlphaComposite.Clear);
+        ig.fill(area);
+        ig.setComposite(AlphaComposite.SrcOver);
+
+        renderer.accept(ig);
+        ig.dispose();
+    }
+
+    void dispose() {
+        if (image != null) {
+            image.flush();
+            image = null;
+        }
+        stateKey = null;
+        dirty = null;
+    }
+}
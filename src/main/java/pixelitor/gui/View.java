@@ -65,6 +65,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 import static java.awt.Color.BLACK;
 import static java.lang.String.format;
@@ -101,6 +102,9 @@ public class View extends JComponent
 
     private Navigator navigator;
 
+    // the retained rendering of the visible canvas, used for fast panning
+    private final ScrollBuffer scrollBuffer = new ScrollBuffer();
+
     private static boolean showPixelGrid = false;
 
     public View(Composition comp) {
@@ -266,6 +270,7 @@ public class View extends JComponent
             // ImageFrame.internalFrameClosed
             viewContainer.dispose();
         }
+        scrollBuffer.dispose();
         comp.dispose();
     }
 
@@ -346,34 +351,20 @@ public class View extends JComponent
         // make a copy of the transform object
         var componentTransform = g2.getTransform();
 
+        if (canUseScrollBuffer(componentTransform)) {
+            scrollBuffer.paint(g2, getVisibleRect(),
+                    createScrollBufferKey(), this::paintCanvasContent);
+        } else {
+            paintCanvasContent(g2);
+        }
+
         // TODO casting to int seems necessary, otherwise the
         //   checkerboard and the image might be painted on slightly different
         //   coordinates and this is visible when using a dark theme
         g2.translate((int) canvasStartX, (int) canvasStartY);
-
-        boolean showMask = maskViewMode.showMask();
-        if (!showMask) {
-            checkerBoardPainter.paint(g2, this, canvasCoWidth, canvasCoHeight);
-        }
-
         g2.scale(scaling, scaling);
         // after the translation and scaling, we are in "image space"
 
-        if (showMask) {
-            LayerMask mask = comp.getActiveLayer().getMask();
-            assert mask != null : "no mask in " + maskViewMode;
-            mask.paintLayerOnGraphics(g2, true);
-        } else {
-            BufferedImage compositeImage = comp.getCompositeImage();
-            ImageUtils.drawImageWithClipping(g2, compositeImage);
-
-            if (maskViewMode.showRuby()) {
-                LayerMask mask = comp.getActiveLayer().getMask();
-                assert mask != null : "no mask in " + maskViewMode;
-                mask.paintAsRubylith(g2);
-            }
-        }
-
         Tool currentTool = Tools.getCurrent();
         // possibly allow a larger clip for the selections and tools
         currentTool.setClipFor(g2, this);
@@ -402,6 +393,65 @@ public class View extends JComponent
         g2.setClip(originalClip);
     }
 
+    /**
+     * Paints the checkerboard, the image and the rubylith, which are
+     * retained by the scroll buffer. The given Graphics2D is in component space.
+     */
+    private void paintCanvasContent(Graphics2D g2) {
+        var componentTransform = g2.getTransform();
+        int canvasCoWidth = canvas.getCoWidth();
+        int canvasCoHeight = canvas.getCoHeight();
+        g2.clipRect((int) canvasStartX, (int) canvasStartY,
+                canvasCoWidth, canvasCoHeight);
+
+        g2.translate((int) canvasStartX, (int) canvasStartY);
+
+        boolean showMask = maskViewMode.showMask();
+        if (!showMask) {
+            checkerBoardPainter.paint(g2, this, canvasCoWidth, canvasCoHeight);
+        }
+
+        g2.scale(scaling, scaling);
+
+        if (showMask) {
+            LayerMask mask = comp.getActiveLayer().getMask();
+            assert mask != null : "no mask in " + maskViewMode;
+            mask.paintLayerOnGraphics(g2, true);
+        } else {
+            BufferedImage compositeImage = comp.getCompositeImageForPainting(scaling);
+            if (compositeImage.getWidth() == canvas.getImWidth()) {
+                ImageUtils.drawImageWithClipping(g2, compositeImage);
+            } else { // a downsampled version when zoomed out
+                g2.drawImage(compositeImage, 0, 0,
+                        canvas.getImWidth(), canvas.getImHeight(), null);
+            }
+
+            if (maskViewMode.showRuby()) {
+                LayerMask mask = comp.getActiveLayer().getMask();
+                assert mask != null : "no mask in " + maskViewMode;
+                mask.paintAsRubylith(g2);
+            }
+        }
+        g2.setTransform(componentTransform);
+    }
+
+    private boolean canUseScrollBuffer(AffineTransform componentTransform) {
+        // with HiDPI scaling the buffer would have to be scaled,
+        // and then the image would become blurry
+        return viewContainer != null
+                && componentTransform.getScaleX() == 1.0
+                && componentTransform.getScaleY() == 1.0
+                && componentTransform.getShearX() == 0.0
+                && componentTransform.getShearY() == 0.0;
+    }
+
+    // if anything in this changes, then the scroll buffer is rendered again
+    private Object createScrollBufferKey() {
+        return List.of(comp, comp.getActiveLayer(), maskViewMode,
+                scaling, canvasStartX, canvasStartY,
+                canvas.getCoWidth(), canvas.getCoHeight());
+    }
+
     public void paintImmediately() {
         paintImmediately(getX(), getY(), getWidth(), getHeight());
     }
@@ -515,16 +565,39 @@ public class View extends JComponent
         repaint(area.getCo());
     }
 
-//    /**
-//     * All repaint requests go through this method,
-//     * it can be uncommented to debug repainting.
-//     */
-//    @Override
-//    public void repaint(long tm, int x, int y, int width, int height) {
+    /**
+     * All repaint requests go through this method, therefore
+     * it can mark the changed areas of the scroll buffer.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        // uncomment to debug repainting
 //        System.out.printf("View::repaint: tm = %d, x = %d, y = %d, width = %d, height = %d%n", tm, x, y, width, height);
 //        Thread.dumpStack();
-//        super.repaint(tm, x, y, width, height);
-//    }
+
+        // can be called from the superclass constructor
+        if (scrollBuffer != null) {
+            scrollBuffer.markDirty(x, y, width, height);
+        }
+        super.repaint(tm, x, y, width, height);
+    }
+
+    /**
+     * Repaints the given area (in component space) when only the things
+     * painted over the canvas changed, like the marching ants. The canvas
+     * itself can be painted from the scroll buffer.
+     */
+    public void repaintOverlay(Rectangle area) {
+        super.repaint(0, area.x, area.y, area.width, area.height);
+    }
+
+    @Override
+    public void paintImmediately(int x, int y, int w, int h) {
+        if (scrollBuffer != null) {
+            scrollBuffer.markDirty(x, y, w, h);
+        }
+        super.paintImmediately(x, y, w, h);
+    }
 
     public void ensurePositiveLocation() {
         if (viewContainer != null) {
@@ -19,15 +19,20 @@ package pixelitor.layers;
 
 import pixelitor.Composition;
 import pixelitor.filters.Filter;
+import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.FilterWithGUI;
+import pixelitor.filters.levels.RGBLookup;
+import pixelitor.filters.lookup.LookupFilter;
 import pixelitor.utils.Utils;
 
+import java.awt.AlphaComposite;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -41,6 +46,24 @@ public class AdjustmentLayer extends Layer {
 
     private final Filter filter;
 
+    // The last output of the filter is reused as long as the layers
+    // bellow (and therefore the input image) and the filter
+    // parameters don't change. The input is identified by the
+    // layers bellow this layer and their content versions.
+    private transient BufferedImage cachedOutput;
+    private transient Layer[] cachedInputLayers;
+    private transient long[] cachedInputVersions;
+    private transient List<Object> cachedParamValues;
+
+    // the cached output with the mask applied, and
+    // the content version of this layer when it was made
+    private transient BufferedImage cachedMaskedOutput;
+    private transient long cachedMaskedVersion;
+
+    // true while the layer is applied on an image which
+    // is not the composite of the layers bellow it
+    private transient boolean bypassCache;
+
     public AdjustmentLayer(Composition comp, String name, Filter filter) {
         super(comp, name, null);
         this.filter = filter;
@@ -74,11 +97,164 @@ public class AdjustmentLayer extends Layer {
         // do nothing
     }
 
+    @Override
+    public BufferedImage applyLayer(Graphics2D g, BufferedImage imageSoFar, boolean firstVisibleLayer) {
+        if (firstVisibleLayer || bypassCache || !canCacheOutput()) {
+            return super.applyLayer(g, imageSoFar, firstVisibleLayer);
+        }
+
+        // the cached output is only read: it is drawn into the
+        // image so far instead of becoming the image so far
+        BufferedImage output = getCachedOutput(imageSoFar);
+        Graphics2D ig = imageSoFar.createGraphics();
+        if (!useMask() && isNormalAndOpaque()) {
+            ig.setComposite(AlphaComposite.Src);
+        } else {
+            setupDrawingComposite(ig, false);
+        }
+        ig.drawImage(output, 0, 0, null);
+        ig.dispose();
+        return imageSoFar;
+    }
+
     @Override
     public BufferedImage actOnImageFromLayerBellow(BufferedImage src) {
         return filter.transformImage(src);
     }
 
+    /**
+     * Returns the filter output for the given input, with the mask
+     * already applied. The returned image must not be modified.
+     */
+    private BufferedImage getCachedOutput(BufferedImage src) {
+        List<Object> paramValues = getParamValues();
+        if (!isCachedOutputValid(src, paramValues)) {
+            invalidateOutputCache();
+            BufferedImage output = filter.transformImage(src);
+            if (output == src) {
+                // the input will be modified by the layers above
+                output = copyOf(output);
+            }
+            saveInputKey(paramValues);
+            cachedOutput = output;
+        }
+        if (!useMask()) {
+            return cachedOutput;
+        }
+
+        // the mask changes also increment the content version of this layer
+        if (cachedMaskedOutput == null || cachedMaskedVersion != getContentVersion()) {
+            if (cachedMaskedOutput != null) {
+                cachedMaskedOutput.flush();
+            }
+            cachedMaskedOutput = copyOf(cachedOutput);
+            mask.applyToImage(cachedMaskedOutput);
+            cachedMaskedVersion = getContentVersion();
+        }
+        return cachedMaskedOutput;
+    }
+
+    private static BufferedImage copyOf(BufferedImage img) {
+        return new BufferedImage(img.getColorModel(), img.copyData(null),
+                img.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Applies this layer on an image which is not the composite
+     * of the layers bellow it (for example when merging down),
+     * without using or updating the output cache.
+     */
+    public BufferedImage applyLayerUncached(Graphics2D g, BufferedImage imageSoFar) {
+        bypassCache = true;
+        try {
+            return applyLayer(g, imageSoFar, false);
+        } finally {
+            bypassCache = false;
+        }
+    }
+
+    /**
+     * The output can be cached only if the parameter values determine
+     * the output, which is not known for the custom filter GUIs.
+     */
+    private boolean canCacheOutput() {
+        return filter instanceof ParametrizedFilter
+                || !(filter instanceof FilterWithGUI);
+    }
+
+    private List<Object> getParamValues() {
+        if (filter instanceof ParametrizedFilter) {
+            return ((ParametrizedFilter) filter).getParamSet().copyValues();
+        }
+        return List.of();
+    }
+
+    private boolean isCachedOutputValid(BufferedImage src, List<Object> paramValues) {
+        if (cachedOutput == null
+                || cachedOutput.getWidth() != src.getWidth()
+                || cachedOutput.getHeight() != src.getHeight()
+                || !paramValues.equals(cachedParamValues)) {
+            return false;
+        }
+
+        List<Layer> layers = comp.getLayers();
+        int numInputLayers = layers.indexOf(this);
+        if (numInputLayers != cachedInputLayers.length) {
+            return false;
+        }
+        for (int i = 0; i < numInputLayers; i++) {
+            Layer layer = layers.get(i);
+            if (layer != cachedInputLayers[i]
+                    || layer.getContentVersion() != cachedInputVersions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void saveInputKey(List<Object> paramValues) {
+        List<Layer> layers = comp.getLayers();
+        int numInputLayers = Math.max(0, layers.indexOf(this));
+        cachedInputLayers = new Layer[numInputLayers];
+        cachedInputVersions = new long[numInputLayers];
+        for (int i = 0; i < numInputLayers; i++) {
+            Layer layer = layers.get(i);
+            cachedInputLayers[i] = layer;
+            cachedInputVersions[i] = layer.getContentVersion();
+        }
+        cachedParamValues = paramValues;
+    }
+
+    /**
+     * Returns the lookup tables of the filter if applying this layer
+     * is equivalent with a lookup on the image bellow it (so that
+     * consecutive such layers can be fused into a single pass),
+     * or null otherwise.
+     */
+    public RGBLookup getFusableLookup() {
+        if (!(filter instanceof LookupFilter) || useMask() || !isNormalAndOpaque()) {
+            return null;
+        }
+        return ((LookupFilter) filter).getRGBLookup();
+    }
+
+    /**
+     * Forces the recalculation of the filter output the next time it's needed.
+     */
+    public void invalidateOutputCache() {
+        if (cachedOutput != null) {
+            cachedOutput.flush();
+            cachedOutput = null;
+        }
+        if (cachedMaskedOutput != null) {
+            cachedMaskedOutput.flush();
+            cachedMaskedOutput = null;
+        }
+        cachedInputLayers = null;
+        cachedInputVersions = null;
+        cachedParamValues = null;
+    }
+
     @Override
     public void paintLayerOnGraphics(Graphics2D g, boolean firstVisibleLayer) {
         throw new UnsupportedOperationException();
@@ -21,6 +21,7 @@ import pixelitor.ChangeReason;
 import pixelitor.Composition;
 
 import java.awt.Composite;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 /**
@@ -61,6 +62,12 @@ public interface Drawable {
 
     BufferedImage getFilterSourceImage();
 
+    /**
+     * Returns the bounds of the filter source image within
+     * the image, or null if the filter source is the whole image.
+     */
+    Rectangle getFilterSourceBounds();
+
     BufferedImage getSelectedSubImage(boolean copyIfNoSelection);
 
     void setShowOriginal(boolean b);
@@ -293,7 +293,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
         image = replaceSelectedPart(image, newImage, isUndoRedo);
         imageRefChanged();
 
-        comp.imageChanged(INVALIDATE_CACHE);
+        comp.layerChanged(this, INVALIDATE_CACHE);
     }
 
     /**
@@ -360,7 +360,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
         assert Assertions.checkRasterMinimum(newImage);
 
-        comp.imageChanged(INVALIDATE_CACHE);
+        comp.layerChanged(this, INVALIDATE_CACHE);
         invalidateTrimCache();
 
         if (oldRef != null && oldRef != image) {
@@ -414,7 +414,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
         imageRefChanged();
 
         previewImage = null;
-        comp.imageChanged();
+        comp.layerChanged(this);
     }
 
     @Override
@@ -443,7 +443,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
         setState(NORMAL);
 
         if (wasShowOriginal) {
-            comp.imageChanged();
+            comp.layerChanged(this);
         }
     }
 
@@ -494,7 +494,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
             if (shouldRefresh) {
                 imageRefChanged();
-                comp.imageChanged();
+                comp.layerChanged(this);
             }
         } else {
             imageContentChanged = true; // history will be necessary
@@ -502,7 +502,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
             setPreviewWithSelection(img);
             setState(PREVIEW);
             imageRefChanged();
-            comp.imageChanged();
+            comp.layerChanged(this);
         }
     }
 
@@ -548,7 +548,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
         // not the actual one
         filterSourceImage = null;
         updateIconImage();
-        comp.imageChanged();
+        comp.layerChanged(this);
         invalidateTrimCache();
         Tools.editedObjectChanged(this);
     }
@@ -835,6 +835,15 @@ public class ImageLayer extends ContentLayer implements Drawable {
         return filterSourceImage;
     }
 
+    @Override
+    public Rectangle getFilterSourceBounds() {
+        var selection = comp.getSelection();
+        if (selection == null) {
+            return null;
+        }
+        return ImageUtils.getSelectionBoundsIn(image, selection, getTx(), getTy());
+    }
+
     /**
      * Returns the subimage determined by the selection bounds,
      * or the image if there is no selection.
@@ -1106,6 +1115,14 @@ public class ImageLayer extends ContentLayer implements Drawable {
         }
     }
 
+    @Override
+    public boolean canBeAppliedInBands() {
+        // brush strokes and dragged shapes are painted using
+        // temporary state, which can't be shared by the bands
+        return tmpDrawingLayer == null
+                && !(Tools.isShapesDrawing() && isActive());
+    }
+
     protected void paintLayerOnGraphicsWOTmpLayer(Graphics2D g,
                                                   BufferedImage visibleImage,
                                                   boolean firstVisibleLayer) {
@@ -1186,7 +1203,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
             setState(PREVIEW);
         }
         imageRefChanged();
-        comp.imageChanged(REPAINT);
+        comp.layerChanged(this, REPAINT);
     }
 
     private void setState(State newState) {
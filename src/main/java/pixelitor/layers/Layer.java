@@ -37,6 +37,7 @@ import pixelitor.history.MultiEdit;
 import pixelitor.history.PixelitorEdit;
 import pixelitor.selection.Selection;
 import pixelitor.tools.Tools;
+import pixelitor.utils.DirtyTiles;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Lazy;
 import pixelitor.utils.Messages;
@@ -48,6 +49,7 @@ import java.awt.Composite;
 import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.event.ActionEvent;
 import java.awt.geom.Rectangle2D;
@@ -104,6 +106,17 @@ public abstract class Layer implements Serializable {
      */
     private transient boolean maskEditing = false;
 
+    // The canvas-sized image of this layer with the mask applied.
+    // It's reused between composite image calculations,
+    // and only its dirty tiles are repainted.
+    private transient BufferedImage maskedImage;
+    private transient DirtyTiles maskedImageDirtyTiles;
+
+    // incremented every time the pixels, the mask, or the
+    // settings affecting the blending of this layer change,
+    // so that the cached results depending on it can be validated
+    private transient long contentVersion;
+
     // can be called on any thread
     Layer(Composition comp, String name, Layer owner) {
         assert comp != null;
@@ -130,6 +143,9 @@ public abstract class Layer implements Serializable {
         // defaults for transient fields
         maskEditing = false;
         ui = null;
+        maskedImage = null;
+        maskedImageDirtyTiles = null;
+        contentVersion = 0;
 
         in.defaultReadObject();
         layerChangeListeners = new ArrayList<>();
@@ -168,7 +184,7 @@ public abstract class Layer implements Serializable {
         }
 
         visible = newVisibility;
-        comp.imageChanged();
+        comp.layerChanged(this);
 
         if(changeGUI) {
             ui.get().setOpenEye(newVisibility);
@@ -218,7 +234,7 @@ public abstract class Layer implements Serializable {
     }
 
     private void updateAfterBMorOpacityChange() {
-        comp.imageChanged();
+        comp.layerChanged(this);
 
         HistogramsPanel hp = HistogramsPanel.INSTANCE;
         if (hp.isShown()) {
@@ -463,6 +479,7 @@ public abstract class Layer implements Serializable {
 
         Layers.maskDeletedFrom(this);
         ui.get().deleteMaskIconLabel();
+        disposeMaskedImage();
 
         MaskViewMode.NORMAL.activate(view, this, "mask deleted");
         comp.imageChanged();
@@ -492,32 +509,113 @@ public abstract class Layer implements Serializable {
         return null;
     }
 
+    /**
+     * Returns true if this layer can be applied concurrently
+     * on several horizontal bands of the composite image.
+     */
+    public boolean canBeAppliedInBands() {
+        return false;
+    }
+
+    /**
+     * Updates the cached state that is shared by the bands, so
+     * that applying the layer on the bands only reads it.
+     * Must be called on the calling thread before the bands are started.
+     */
+    public void prepareForBands(boolean firstVisibleLayer) {
+        if (!isAdjustment && useMask()) {
+            updateMaskedImage(firstVisibleLayer);
+        }
+    }
+
     // used by the non-adjustment stuff
     // This method assumes that the composite of the graphics is already
     // set up according to the transparency and blending mode
     public abstract void paintLayerOnGraphics(Graphics2D g, boolean firstVisibleLayer);
 
     /**
-     * Returns the masked image for the non-adjustment case.
-     * The returned image is canvas-sized, and the masks and the
+     * Paints the masked image for the non-adjustment case.
+     * The masked image is canvas-sized, and the masks and the
      * translations are taken into account
      */
     private void paintLayerOnGraphicsWithMask(Graphics2D g, boolean firstVisibleLayer) {
-        // 1. create the masked image
-        // TODO the masked image should be cached
-        BufferedImage maskedImage = new BufferedImage(
-                canvas.getImWidth(), canvas.getImHeight(), TYPE_INT_ARGB);
+        // 1. update the cached masked image
+        updateMaskedImage(firstVisibleLayer);
+
+        // 2. paint the masked image onto the graphics
+        setupDrawingComposite(g, firstVisibleLayer);
+        g.drawImage(maskedImage, 0, 0, null);
+    }
+
+    private void updateMaskedImage(boolean firstVisibleLayer) {
+        int width = canvas.getImWidth();
+        int height = canvas.getImHeight();
+        if (maskedImage == null || !maskedImageDirtyTiles.hasSize(width, height)) {
+            disposeMaskedImage();
+            maskedImage = new BufferedImage(width, height, TYPE_INT_ARGB);
+            maskedImageDirtyTiles = new DirtyTiles(width, height);
+            maskedImageDirtyTiles.markAllDirty();
+        }
+
+        if (maskedImageDirtyTiles.isAllDirty()) {
+            repaintMaskedImage(new Rectangle(0, 0, width, height), firstVisibleLayer);
+            maskedImageDirtyTiles.markAllClean();
+        } else {
+            maskedImageDirtyTiles.cleanDirtyTiles(tile ->
+                    repaintMaskedImage(tile, firstVisibleLayer));
+        }
+    }
+
+    private void repaintMaskedImage(Rectangle area, boolean firstVisibleLayer) {
         Graphics2D mig = maskedImage.createGraphics();
+        mig.clipRect(area.x, area.y, area.width, area.height);
+        mig.setComposite(AlphaComposite.Clear);
+        mig.fillRect(area.x, area.y, area.width, area.height);
+        mig.setComposite(AlphaComposite.SrcOver);
+
         paintLayerOnGraphics(mig, firstVisibleLayer);
         mig.setComposite(DstIn);
         mig.drawImage(mask.getTransparencyImage(),
                 mask.getTx(), mask.getTy(), null);
         mig.dispose();
+    }
 
-        // 2. paint the masked image onto the graphics
-//            g.drawImage(maskedImage, getTx(), getTy(), null);
-        setupDrawingComposite(g, firstVisibleLayer);
-        g.drawImage(maskedImage, 0, 0, null);
+    /**
+     * Called when the pixels, the translation or the blending settings
+     * of this layer or of its mask changed. The cached masked image
+     * must be repainted, and the content version is incremented.
+     */
+    public void contentChanged() {
+        contentVersion++;
+        if (maskedImageDirtyTiles != null) {
+            maskedImageDirtyTiles.markAllDirty();
+        }
+    }
+
+    /**
+     * Called when only the given area (in image space) of this layer
+     * or of its mask changed, for example while using a brush.
+     */
+    public void contentChanged(Rectangle2D area) {
+        contentVersion++;
+        if (maskedImageDirtyTiles != null) {
+            Rectangle bounds = area.getBounds();
+            // also cover the pixels touched by antialiasing and rounding
+            bounds.grow(1, 1);
+            maskedImageDirtyTiles.markDirty(bounds);
+        }
+    }
+
+    public long getContentVersion() {
+        return contentVersion;
+    }
+
+    private void disposeMaskedImage() {
+        if (maskedImage != null) {
+            maskedImage.flush();
+            maskedImage = null;
+        }
+        maskedImageDirtyTiles = null;
     }
 
     /**
@@ -548,6 +646,15 @@ public abstract class Layer implements Serializable {
      */
     protected abstract BufferedImage actOnImageFromLayerBellow(BufferedImage src);
 
+    /**
+     * Returns true for the layers (adjustment layers and watermarked
+     * text layers) which transform the whole image bellow them,
+     * instead of simply painting over it.
+     */
+    public boolean isAdjustment() {
+        return isAdjustment;
+    }
+
     public abstract CompletableFuture<Void> resize(Dimension newSize);
 
     /**
@@ -677,7 +784,7 @@ public abstract class Layer implements Serializable {
         assert mask != null;
         this.maskEnabled = maskEnabled;
 
-        comp.imageChanged();
+        comp.layerChanged(this);
         mask.updateIconImage();
         notifyLayerChangeListeners();
 
@@ -686,7 +793,7 @@ public abstract class Layer implements Serializable {
         }
     }
 
-    private boolean useMask() {
+    protected boolean useMask() {
         return mask != null && maskEnabled;
     }
 
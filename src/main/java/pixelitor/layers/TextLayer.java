@@ -251,7 +251,7 @@ public class TextLayer extends ContentLayer {
     public BufferedImage applyLayer(Graphics2D g, BufferedImage imageSoFar, boolean firstVisibleLayer) {
         if (settings == null) {
             // the layer was just created, nothing to paint yet
-            return imageSoFar;
+            return null;
         }
 
         // the text will be painted normally
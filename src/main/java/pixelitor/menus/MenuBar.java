@@ -866,7 +866,8 @@ public class MenuBar extends JMenuBar {
         sub.buildFilter(JHReduceNoise.NAME, JHReduceNoise::new)
                 .noGUI()
                 .add();
-        sub.buildFilter(JHMedian.NAME, JHMedian::new)
+        sub.addFilter(JHMedian.NAME, JHMedian::new);
+        sub.buildFilter(JHVectorMedian.NAME, JHVectorMedian::new)
                 .noGUI()
                 .add();
 
@@ -990,6 +991,7 @@ public class MenuBar extends JMenuBar {
 
         sub.addFilter(Convolve.createFilterAction(3));
         sub.addFilter(Convolve.createFilterAction(5));
+        sub.addFilter(Convolve.createFilterAction(11));
 
         sub.addSeparator();
 
@@ -35,6 +35,7 @@ import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
+import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 
 import static java.awt.BasicStroke.CAP_BUTT;
@@ -58,6 +59,13 @@ public class Selection {
     private static final float DASH_LENGTH = 4.0f;
     private static final float[] MARCHING_ANTS_DASH = {DASH_LENGTH, DASH_LENGTH};
 
+    // the maximal distance in component space between
+    // the curves of the shape and their flattened version
+    private static final double FLATNESS = 0.5;
+
+    // in component space, enough for the line width and antialiasing
+    private static final int ANTS_REPAINT_MARGIN = 3;
+
     // if true, then the "marching ants" are not painted at all
     private boolean hidden = false;
 
@@ -70,6 +78,14 @@ public class Selection {
     // the original shape before a shape movement
     private Shape moveStartShape;
 
+    // incremented each time the shape changes
+    private long shapeVersion;
+
+    // the flattened outline that is actually painted, cached
+    // because it would be recalculated on every step of the marching
+    private Shape flattenedShape;
+    private double flattenedForScale;
+
     public Selection(Shape shape, View view) {
         // TODO should not allow selections with null shape
         assert view != null;
@@ -109,7 +125,7 @@ public class Selection {
         marchingAntsTimer.addActionListener(evt -> {
             if(!hidden) {
                 dashPhase += 1.0f / (float) view.getScaling();
-                repaint();
+                repaintAnts();
             }
         });
         marchingAntsTimer.start();
@@ -133,7 +149,40 @@ public class Selection {
             return;
         }
 
-        paintAnts(g2, shape, dashPhase);
+        paintAnts(g2, getFlattenedShape(), dashPhase);
+    }
+
+    /**
+     * Returns the outline of the shape as line segments. The curves are
+     * flattened with a precision of half a pixel at the current zoom.
+     */
+    private Shape getFlattenedShape() {
+        double viewScale = view.getScaling();
+        if (flattenedShape == null || flattenedForScale != viewScale) {
+            flattenedForScale = viewScale;
+            if (isRectangular()) {
+                flattenedShape = shape; // nothing to flatten
+            } else {
+                Path2D path = new Path2D.Double();
+                path.append(shape.getPathIterator(null, FLATNESS / viewScale), false);
+                flattenedShape = path;
+            }
+        }
+        return flattenedShape;
+    }
+
+    /**
+     * Repaints only the area around the outline, and only
+     * the overlay: the image bellow the ants didn't change.
+     */
+    private void repaintAnts() {
+        if (shape == null) {
+            return;
+        }
+        Rectangle area = view.imageToComponentSpace(getFlattenedShape().getBounds2D());
+        // the dashed line is painted around the outline
+        area.grow(ANTS_REPAINT_MARGIN, ANTS_REPAINT_MARGIN);
+        view.repaintOverlay(area);
     }
 
     private void paintAnts(Graphics2D g2, Shape shape, float phase) {
@@ -187,7 +236,19 @@ public class Selection {
     }
 
     public void setShape(Shape currentShape) {
+        // the shape can be the same object changed in place,
+        // (for example while building a lasso selection)
         shape = currentShape;
+        shapeVersion++;
+        flattenedShape = null;
+    }
+
+    /**
+     * Returns a number that is incremented
+     * each time the selection shape changes.
+     */
+    public long getShapeVersion() {
+        return shapeVersion;
     }
 
     /**
@@ -199,7 +260,7 @@ public class Selection {
     public boolean clipToCanvasSize(Composition comp) {
         assert comp == view.getComp();
         if (shape != null) {
-            shape = comp.clipShapeToCanvasSize(shape);
+            setShape(comp.clipShapeToCanvasSize(shape));
 
             repaint();
 
@@ -242,7 +303,7 @@ public class Selection {
         Area outlineArea = new Area(outlineShape);
 
         Shape backupShape = shape;
-        shape = type.modify(oldArea, outlineArea);
+        setShape(type.modify(oldArea, outlineArea));
 
         var comp = view.getComp();
         boolean notEmpty = clipToCanvasSize(comp);
@@ -257,7 +318,7 @@ public class Selection {
 
     public Shape transform(AffineTransform at) {
         Shape backupShape = shape;
-        shape = at.createTransformedShape(shape);
+        setShape(at.createTransformedShape(shape));
         return backupShape;
     }
 
@@ -327,13 +388,13 @@ public class Selection {
 
     public void moveWhileDragging(double relImX, double relImY) {
         var at = AffineTransform.getTranslateInstance(relImX, relImY);
-        shape = at.createTransformedShape(moveStartShape);
+        setShape(at.createTransformedShape(moveStartShape));
     }
 
     public PixelitorEdit endMovement() {
         var comp = view.getComp();
 
-        shape = comp.clipShapeToCanvasSize(shape);
+        setShape(comp.clipShapeToCanvasSize(shape));
         if (shape.getBounds().isEmpty()) { // moved outside the canvas
             DeselectEdit deselectEdit = new DeselectEdit(comp, moveStartShape);
             comp.deselect(false);
@@ -31,6 +31,7 @@ import pixelitor.gui.utils.SliderSpinner;
 import pixelitor.history.History;
 import pixelitor.history.MultiEdit;
 import pixelitor.layers.Drawable;
+import pixelitor.layers.Layer;
 import pixelitor.layers.LayerMask;
 import pixelitor.tools.brushes.AffectedArea;
 import pixelitor.tools.brushes.Brush;
@@ -400,7 +401,7 @@ public abstract class AbstractBrushTool extends Tool {
 
         dr.updateIconImage();
 
-        dr.getComp().imageChanged(HISTOGRAM);
+        dr.getComp().layerChanged((Layer) dr, HISTOGRAM);
     }
 
     private void addBrushStrokeToHistory(Drawable dr) {
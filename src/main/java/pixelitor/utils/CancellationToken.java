@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * Allows stopping a running computation, such as a filter.
+ * The cancellation is cooperative: the token is bound to the
+ * threads working on the computation (the {@link pixelitor.ThreadPool}
+ * loops propagate it to their worker threads), and the long-running
+ * loops regularly call {@link #checkCurrent()}, which throws a
+ * {@link CancellationException} after the token was cancelled.
+ *
+ * The progress trackers created during the computation are registered
+ * with its token, so that {@link #callTracked(Supplier)} can finish
+ * them even if the computation was cancelled before it finished them.
+ */
+public class CancellationToken {
+    private static final ThreadLocal<CancellationToken> current = new ThreadLocal<>();
+
+    private volatile boolean cancelled = false;
+
+    // the progress trackers created while this token was current
+    private final List<ProgressTracker> trackers = new ArrayList<>();
+
+    /**
+     * Can be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Runs the given task on the current thread
+     * with this token as the current token.
+     */
+    public <T> T callWith(Supplier<T> task) {
+        CancellationToken prev = current.get();
+        current.set(this);
+        try {
+            return task.get();
+        } finally {
+            if (prev == null) {
+                current.remove();
+            } else {
+                current.set(prev);
+            }
+        }
+    }
+
+    public void runWith(Runnable task) {
+        callWith(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Like {@link #callWith(Supplier)}, but also finishes the progress
+     * trackers of the task when it ends, even if it was cancelled or
+     * failed. It should be used by the code that started the computation.
+     */
+    public <T> T callTracked(Supplier<T> task) {
+        try {
+            return callWith(task);
+        } finally {
+            finishTrackers();
+        }
+    }
+
+    public void runTracked(Runnable task) {
+        callTracked(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Registers the given progress tracker with the token of
+     * the computation running on the current thread, if any.
+     */
+    public static void registerTracker(ProgressTracker pt) {
+        CancellationToken token = current.get();
+        if (token != null) {
+            synchronized (token.trackers) {
+                token.trackers.add(pt);
+            }
+        }
+    }
+
+    private void finishTrackers() {
+        List<ProgressTracker> toFinish;
+        synchronized (trackers) {
+            toFinish = new ArrayList<>(trackers);
+            trackers.clear();
+        }
+        // finishing an already finished tracker does nothing
+        for (ProgressTracker pt : toFinish) {
+            pt.finished();
+        }
+    }
+
+    /**
+     * Returns the token of the computation running
+     * on the current thread, or null if there is none.
+     */
+    public static CancellationToken getCurrent() {
+        return current.get();
+    }
+
+    /**
+     * Throws a {@link CancellationException} if the computation running
+     * on the current thread was cancelled. It is cheap enough to be
+     * called for every row of an image.
+     */
+    public static void checkCurrent() {
+        CancellationToken token = current.get();
+        if (token != null && token.cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CancellationToken{cancelled=" + cancelled + '}';
+    }
+}
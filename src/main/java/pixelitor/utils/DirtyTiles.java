@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of which tiles of an image-sized grid
+ * have to be recalculated.
+ */
+public class DirtyTiles {
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int numTilesX;
+    private final int numTilesY;
+    private final boolean[] dirty;
+    private int numDirty;
+
+    public DirtyTiles(int width, int height) {
+        this(width, height, DEFAULT_TILE_SIZE);
+    }
+
+    public DirtyTiles(int width, int height, int tileSize) {
+        assert width > 0 && height > 0 : "width = " + width + ", height = " + height;
+        assert tileSize > 0;
+
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        numTilesX = (width + tileSize - 1) / tileSize;
+        numTilesY = (height + tileSize - 1) / tileSize;
+        dirty = new boolean[numTilesX * numTilesY];
+    }
+
+    public boolean hasSize(int width, int height) {
+        return this.width == width && this.height == height;
+    }
+
+    /**
+     * Marks the tiles touched by the given area as dirty.
+     * The parts of the area outside the grid are ignored.
+     */
+    public void markDirty(Rectangle area) {
+        Rectangle r = area.intersection(new Rectangle(0, 0, width, height));
+        if (r.isEmpty()) {
+            return;
+        }
+        int startTileX = r.x / tileSize;
+        int endTileX = (r.x + r.width - 1) / tileSize;
+        int startTileY = r.y / tileSize;
+        int endTileY = (r.y + r.height - 1) / tileSize;
+
+        for (int ty = startTileY; ty <= endTileY; ty++) {
+            for (int tx = startTileX; tx <= endTileX; tx++) {
+                int index = ty * numTilesX + tx;
+                if (!dirty[index]) {
+                    dirty[index] = true;
+                    numDirty++;
+                }
+            }
+        }
+    }
+
+    public void markAllDirty() {
+        Arrays.fill(dirty, true);
+        numDirty = dirty.length;
+    }
+
+    public void markAllClean() {
+        Arrays.fill(dirty, false);
+        numDirty = 0;
+    }
+
+    public boolean hasDirtyTiles() {
+        return numDirty > 0;
+    }
+
+    public boolean isAllDirty() {
+        return numDirty == dirty.length;
+    }
+
+    public int getNumDirtyTiles() {
+        return numDirty;
+    }
+
+    public boolean isDirty(int tileX, int tileY) {
+        return dirty[tileY * numTilesX + tileX];
+    }
+
+    /**
+     * Calls the given action with the bounds of each dirty tile
+     * (clipped to the grid) and marks all tiles as clean.
+     */
+    public void cleanDirtyTiles(Consumer<Rectangle> action) {
+        if (numDirty == 0) {
+            return;
+        }
+        for (int ty = 0; ty < numTilesY; ty++) {
+            for (int tx = 0; tx < numTilesX; tx++) {
+                int index = ty * numTilesX + tx;
+                if (dirty[index]) {
+                    action.accept(getTileBounds(tx, ty));
+                    dirty[index] = false;
+                }
+            }
+        }
+        numDirty = 0;
+    }
+
+    public Rectangle getTileBounds(int tileX, int tileY) {
+        int x = tileX * tileSize;
+        int y = tileY * tileSize;
+        return new Rectangle(x, y,
+                Math.min(tileSize, width - x),
+                Math.min(tileSize, height - y));
+    }
+
+    public int getNumTilesX() {
+        return numTilesX;
+    }
+
+    public int getNumTilesY() {
+        return numTilesY;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    @Override
+    public String toString() {
+        return "DirtyTiles{" + numTilesX + "x" + numTilesY
+                + ", tileSize=" + tileSize
+                + ", numDirty=" + numDirty + '}';
+    }
+}
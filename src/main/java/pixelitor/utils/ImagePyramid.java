@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * A lazily built "mipmap" pyramid of an image: the level k
+ * image is downsampled by a factor of 2^k (level 0 is the source).
+ * Each level is calculated from the previous one by averaging
+ * 2x2 blocks of premultiplied pixels, and after a change of the
+ * source only the dirty tiles of each level are recalculated.
+ */
+public class ImagePyramid {
+    // levels smaller than this are not worth creating
+    private static final int MIN_LEVEL_SIZE = 16;
+
+    private final int srcWidth;
+    private final int srcHeight;
+
+    // the downsampled images and their dirty tiles, starting with level 1
+    private final List<BufferedImage> levels = new ArrayList<>();
+    private final List<DirtyTiles> levelTiles = new ArrayList<>();
+
+    public ImagePyramid(int srcWidth, int srcHeight) {
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+    }
+
+    public boolean hasSize(int width, int height) {
+        return srcWidth == width && srcHeight == height;
+    }
+
+    /**
+     * Returns the level that should be used to display the
+     * source image with the given scaling: the most downsampled
+     * level that still has at least the required resolution.
+     */
+    public int getLevelFor(double scaling) {
+        int level = 0;
+        double levelScale = 0.5;
+        int w = srcWidth;
+        int h = srcHeight;
+        while (levelScale >= scaling) {
+            w = (w + 1) / 2;
+            h = (h + 1) / 2;
+            if (w < MIN_LEVEL_SIZE || h < MIN_LEVEL_SIZE) {
+                break;
+            }
+            level++;
+            levelScale /= 2;
+        }
+        return level;
+    }
+
+    /**
+     * Returns the image at the given level, creating it and
+     * updating the dirty tiles of it and of the levels above it.
+     * The given source must be a TYPE_INT_ARGB_PRE image
+     * and for level 0 the source itself is returned.
+     */
+    public BufferedImage getLevel(BufferedImage src, int level) {
+        assert hasSize(src.getWidth(), src.getHeight());
+        assert src.getType() == TYPE_INT_ARGB_PRE : "type = " + src.getType();
+
+        while (levels.size() < level) {
+            BufferedImage prev = getLevelImage(src, levels.size());
+            int w = (prev.getWidth() + 1) / 2;
+            int h = (prev.getHeight() + 1) / 2;
+            levels.add(new BufferedImage(w, h, TYPE_INT_ARGB_PRE));
+            DirtyTiles tiles = new DirtyTiles(w, h);
+            tiles.markAllDirty();
+            levelTiles.add(tiles);
+        }
+
+        for (int i = 1; i <= level; i++) {
+            BufferedImage prev = getLevelImage(src, i - 1);
+            BufferedImage current = getLevelImage(src, i);
+            levelTiles.get(i - 1).cleanDirtyTiles(tile ->
+                    downsample(prev, current, tile));
+        }
+        return getLevelImage(src, level);
+    }
+
+    private BufferedImage getLevelImage(BufferedImage src, int level) {
+        if (level == 0) {
+            return src;
+        }
+        return levels.get(level - 1);
+    }
+
+    /**
+     * Marks the given area (in source image coordinates)
+     * as changed in all the created levels.
+     */
+    public void markDirty(Rectangle area) {
+        int x1 = area.x;
+        int y1 = area.y;
+        int x2 = area.x + area.width;
+        int y2 = area.y + area.height;
+        for (DirtyTiles tiles : levelTiles) {
+            // round outwards, so that all the affected
+            // pixels of the next level are covered
+            x1 = Math.floorDiv(x1, 2);
+            y1 = Math.floorDiv(y1, 2);
+            x2 = -Math.floorDiv(-x2, 2);
+            y2 = -Math.floorDiv(-y2, 2);
+            tiles.markDirty(new Rectangle(x1, y1, x2 - x1, y2 - y1));
+        }
+    }
+
+    public void markAllDirty() {
+        levelTiles.forEach(DirtyTiles::markAllDirty);
+    }
+
+    public void dispose() {
+        levels.forEach(BufferedImage::flush);
+        levels.clear();
+        levelTiles.clear();
+    }
+
+    public int getNumCreatedLevels() {
+        return levels.size();
+    }
+
+    /**
+     * Calculates the given area of the destination by averaging
+     * 2x2 pixel blocks of the source. Averaging the premultiplied
+     * components is correct even for semi-transparent pixels.
+     */
+    private static void downsample(BufferedImage src, BufferedImage dest, Rectangle area) {
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        int destWidth = dest.getWidth();
+        int[] srcPixels = ((DataBufferInt) src.getRaster().getDataBuffer()).getData();
+        int[] destPixels = ((DataBufferInt) dest.getRaster().getDataBuffer()).getData();
+
+        int maxX = area.x + area.width;
+        int maxY = area.y + area.height;
+        for (int y = area.y; y < maxY; y++) {
+            int sy1 = 2 * y;
+            // at odd sizes the last row and column are duplicated
+            int sy2 = Math.min(sy1 + 1, srcHeight - 1);
+            int row1 = sy1 * srcWidth;
+            int row2 = sy2 * srcWidth;
+            int destIndex = y * destWidth + area.x;
+            for (int x = area.x; x < maxX; x++) {
+                int sx1 = 2 * x;
+                int sx2 = Math.min(sx1 + 1, srcWidth - 1);
+
+                int p1 = srcPixels[row1 + sx1];
+                int p2 = srcPixels[row1 + sx2];
+                int p3 = srcPixels[row2 + sx1];
+                int p4 = srcPixels[row2 + sx2];
+
+                int a = ((p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24) + (p4 >>> 24) + 2) >> 2;
+                int r = (((p1 >> 16) & 0xFF) + ((p2 >> 16) & 0xFF)
+                        + ((p3 >> 16) & 0xFF) + ((p4 >> 16) & 0xFF) + 2) >> 2;
+                int g = (((p1 >> 8) & 0xFF) + ((p2 >> 8) & 0xFF)
+                        + ((p3 >> 8) & 0xFF) + ((p4 >> 8) & 0xFF) + 2) >> 2;
+                int b = ((p1 & 0xFF) + (p2 & 0xFF)
+                        + (p3 & 0xFF) + (p4 & 0xFF) + 2) >> 2;
+
+                destPixels[destIndex++] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ImagePyramid{" + srcWidth + "x" + srcHeight
+                + ", numLevels=" + levels.size() + '}';
+    }
+}
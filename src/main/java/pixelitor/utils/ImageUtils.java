@@ -1159,6 +1159,16 @@ public class ImageUtils {
     public static BufferedImage getSelectionSizedPartFrom(BufferedImage src,
                                                           Selection selection,
                                                           int tx, int ty) {
+        return getCopyOfSubimage(src, getSelectionBoundsIn(src, selection, tx, ty));
+    }
+
+    /**
+     * Returns the bounds of the selection relative to the
+     * given image, which has the given translation.
+     */
+    public static Rectangle getSelectionBoundsIn(BufferedImage src,
+                                                 Selection selection,
+                                                 int tx, int ty) {
         assert selection != null;
 
         Rectangle bounds = selection.getShapeBounds(1); // relative to the canvas
@@ -1177,7 +1187,7 @@ public class ImageUtils {
                     tx, ty, selection.getShapeBounds(1)));
         }
 
-        return getCopyOfSubimage(src, bounds);
+        return bounds;
     }
 
     /**
@@ -39,6 +39,9 @@ public abstract class ThresholdProgressTracker implements ProgressTracker {
         this.numComputationUnits = numComputationUnits;
         startTime = System.currentTimeMillis();
         runningOnEDT = EventQueue.isDispatchThread();
+
+        // finished by the token if the computation is cancelled
+        CancellationToken.registerTracker(this);
     }
 
     @Override
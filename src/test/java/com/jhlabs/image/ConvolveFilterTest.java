@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jhlabs.image;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.Kernel;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConvolveFilterTest {
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 110;
+
+    @Test
+    public void largeKernelsGiveTheSameResults() {
+        Random random = new Random(7);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        int kernelWidth = 15;
+        int kernelHeight = 11;
+        assertThat(kernelWidth * kernelHeight).isGreaterThanOrEqualTo(ConvolveFilter.MIN_FFT_KERNEL_SIZE);
+        float[] matrix = new float[kernelWidth * kernelHeight];
+        for (int i = 0; i < matrix.length; i++) {
+            // also some negative weights
+            matrix[i] = (random.nextFloat() - 0.3f) * 2.5f / matrix.length;
+        }
+        Kernel kernel = new Kernel(kernelWidth, kernelHeight, matrix);
+
+        for (int edgeAction = 0; edgeAction <= 2; edgeAction++) {
+            for (boolean alpha : new boolean[]{true, false}) {
+                int[] actual = new int[pixels.length];
+                ConvolveFilter filter = new ConvolveFilter("Test");
+                filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+                filter.convolveHV(kernel, pixels, actual, WIDTH, HEIGHT, alpha, edgeAction);
+
+                int[] expected = convolveDirectly(matrix, kernelWidth, kernelHeight, pixels, alpha, edgeAction);
+                for (int i = 0; i < pixels.length; i++) {
+                    for (int shift = 0; shift < 32; shift += 8) {
+                        int expectedValue = (expected[i] >>> shift) & 0xFF;
+                        int actualValue = (actual[i] >>> shift) & 0xFF;
+                        assertThat(Math.abs(expectedValue - actualValue))
+                                .as("edge action = %d, i = %d, shift = %d", edgeAction, i, shift)
+                                .isLessThanOrEqualTo(1);
+                    }
+                }
+            }
+        }
+    }
+
+    // the original convolution code, without optimizations
+    private static int[] convolveDirectly(float[] matrix, int cols, int rows, int[] in, boolean alpha, int edgeAction) {
+        int[] out = new int[in.length];
+        int rows2 = rows / 2;
+        int cols2 = cols / 2;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double[] sums = new double[4];
+                for (int row = -rows2; row <= rows2; row++) {
+                    int iy = y + row;
+                    if (iy < 0 || iy >= HEIGHT) {
+                        if (edgeAction == ConvolveFilter.CLAMP_EDGES) {
+                            iy = y;
+                        } else if (edgeAction == ConvolveFilter.WRAP_EDGES) {
+                            iy = (iy + HEIGHT) % HEIGHT;
+                        } else {
+                            continue;
+                        }
+                    }
+                    for (int col = -cols2; col <= cols2; col++) {
+                        int ix = x + col;
+                        if (ix < 0 || ix >= WIDTH) {
+                            if (edgeAction == ConvolveFilter.CLAMP_EDGES) {
+                                ix = x;
+                            } else if (edgeAction == ConvolveFilter.WRAP_EDGES) {
+                                ix = (x + WIDTH) % WIDTH;
+                            } else {
+                                continue;
+                            }
+                        }
+                        float f = matrix[cols * (row + rows2) + cols2 + col];
+                        int rgb = in[iy * WIDTH + ix];
+                        for (int c = 0; c < 4; c++) {
+                            sums[c] += f * ((rgb >>> (24 - 8 * c)) & 0xFF);
+                        }
+                    }
+                }
+                int result = 0;
+                for (int c = 0; c < 4; c++) {
+                    int value = PixelUtils.clamp((int) (sums[c] + 0.5));
+                    if (c == 0 && !alpha) {
+                        value = 0xFF;
+                    }
+                    result |= value << (24 - 8 * c);
+                }
+                out[y * WIDTH + x] = result;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.Kernel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GaussianFilterTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+
+    @Test
+    public void recursiveBlurIsCloseToTheKernel() {
+        for (float radius : new float[]{GaussianFilter.MIN_RECURSIVE_RADIUS, 30, 75}) {
+            checkRecursiveBlur(radius);
+        }
+    }
+
+    private static void checkRecursiveBlur(float radius) {
+        int[] pixels = createTestPixels();
+
+        int[] expected = pixels.clone();
+        Kernel kernel = GaussianFilter.makeKernel(radius);
+        int[] tmp = new int[pixels.length];
+        GaussianFilter.convolveAndTranspose(kernel, expected, tmp, WIDTH, HEIGHT, true, true, false,
+                ConvolveFilter.CLAMP_EDGES, ProgressTracker.NULL_TRACKER);
+        GaussianFilter.convolveAndTranspose(kernel, tmp, expected, HEIGHT, WIDTH, true, false, true,
+                ConvolveFilter.CLAMP_EDGES, ProgressTracker.NULL_TRACKER);
+
+        int[] actual = pixels.clone();
+        GaussianFilter.recursiveBlurAndTranspose(radius / 3, actual, tmp, WIDTH, HEIGHT, true, true, false,
+                ProgressTracker.NULL_TRACKER);
+        GaussianFilter.recursiveBlurAndTranspose(radius / 3, tmp, actual, HEIGHT, WIDTH, true, false, true,
+                ProgressTracker.NULL_TRACKER);
+
+        // the colors are compared premultiplied, because unpremultiplying
+        // amplifies the rounding errors of the half-transparent pixels
+        for (int i = 0; i < pixels.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int expectedValue = premultipliedChannel(expected[i], shift);
+                int actualValue = premultipliedChannel(actual[i], shift);
+                assertThat(Math.abs(expectedValue - actualValue))
+                        .as("radius = %.0f, i = %d, shift = %d", radius, i, shift)
+                        .isLessThanOrEqualTo(2);
+            }
+        }
+    }
+
+    private static int premultipliedChannel(int argb, int shift) {
+        int a = argb >>> 24;
+        int value = (argb >>> shift) & 0xFF;
+        if (shift == 24) {
+            return value;
+        }
+        return Math.round(value * a / 255.0f);
+    }
+
+    @Test
+    public void recursiveBlurKeepsUniformImages() {
+        int color = 0xFF_40_80_C0;
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, color);
+        int[] tmp = new int[pixels.length];
+
+        GaussianFilter.recursiveBlurAndTranspose(20, pixels, tmp, WIDTH, HEIGHT, true, false, false,
+                ProgressTracker.NULL_TRACKER);
+        GaussianFilter.recursiveBlurAndTranspose(20, tmp, pixels, HEIGHT, WIDTH, true, false, false,
+                ProgressTracker.NULL_TRACKER);
+
+        assertThat(pixels).containsOnly(color);
+    }
+
+    private static int[] createTestPixels() {
+        // hard-edged blocks with some noise and a half-transparent area
+        Random random = new Random(42);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int v = ((x / 17 + y / 23) % 3) * 120;
+                int a = x < 50 ? 128 : 255;
+                pixels[y * WIDTH + x] = a << 24 | v << 16 | (255 - v) << 8 | random.nextInt(256);
+            }
+        }
+        return pixels;
+    }
+}
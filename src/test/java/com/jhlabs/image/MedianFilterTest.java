@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MedianFilterTest {
+    @Test
+    public void histogramMedianMatchesSorting() {
+        checkAgainstSorting(40, 30, 1);
+        checkAgainstSorting(60, 45, 3);
+        checkAgainstSorting(7, 50, 5); // narrower than the window
+    }
+
+    private static void checkAgainstSorting(int width, int height, int radius) {
+        Random random = new Random(width * 31 + height);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        var filter = new MedianFilter("Median");
+        filter.setRadius(radius);
+        int[] actual = filter.filterPixels(width, height, pixels.clone(),
+                new Rectangle(0, 0, width, height));
+
+        int windowSize = 2 * radius + 1;
+        int[] window = new int[windowSize * windowSize];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int k = 0;
+                    for (int dy = -radius; dy <= radius; dy++) {
+                        int iy = Math.min(height - 1, Math.max(0, y + dy));
+                        for (int dx = -radius; dx <= radius; dx++) {
+                            int ix = Math.min(width - 1, Math.max(0, x + dx));
+                            window[k++] = (pixels[iy * width + ix] >>> shift) & 0xFF;
+                        }
+                    }
+                    Arrays.sort(window);
+                    int expected = window[window.length / 2];
+
+                    assertThat((actual[y * width + x] >>> shift) & 0xFF)
+                            .as("x = %d, y = %d, shift = %d", x, y, shift)
+                            .isEqualTo(expected);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdesktop.swingx.graphics;
+
+import org.jdesktop.swingx.graphics.BlendComposite.BlendingMode;
+
+import java.util.Random;
+
+/**
+ * Compares the speed of the original per-pixel blenders
+ * and of the row blenders for every blending mode.
+ * Not a unit test, it must be started manually.
+ */
+public class BlendCompositeBenchmark {
+    private static final int WIDTH = 4096;
+    private static final int NUM_ROWS = 1024;
+    private static final int NUM_WARMUP_RUNS = 3;
+    private static final int NUM_MEASURED_RUNS = 5;
+
+    // with less than full opacity both paths also mix the result
+    // with the destination, which takes a significant part of the time
+    private static final float OPACITY = 1.0f;
+
+    private BlendCompositeBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int[] src = new int[WIDTH];
+        int[] dst = new int[WIDTH];
+        for (int i = 0; i < WIDTH; i++) {
+            src[i] = random.nextInt();
+            dst[i] = random.nextInt();
+        }
+
+        System.out.printf("%-20s %12s %12s %8s%n",
+                "mode", "old (ms)", "new (ms)", "speedup");
+        for (BlendingMode mode : BlendingMode.values()) {
+            double oldMillis = measure(mode, src, dst, true);
+            double newMillis = measure(mode, src, dst, false);
+            System.out.printf("%-20s %12.2f %12.2f %7.1fx%n",
+                    mode, oldMillis, newMillis, oldMillis / newMillis);
+        }
+    }
+
+    /**
+     * Returns the best time of blending a WIDTH x NUM_ROWS image
+     */
+    private static double measure(BlendingMode mode, int[] src, int[] dst, boolean reference) {
+        int[] row = new int[WIDTH];
+        double best = Double.MAX_VALUE;
+        for (int run = 0; run < NUM_WARMUP_RUNS + NUM_MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            for (int y = 0; y < NUM_ROWS; y++) {
+                System.arraycopy(dst, 0, row, 0, WIDTH);
+                if (reference) {
+                    BlendComposite.blendRowReference(mode, src, row, WIDTH, OPACITY, false);
+                } else {
+                    BlendComposite.blendRow(mode, src, row, WIDTH, OPACITY, false);
+                }
+            }
+            double millis = (System.nanoTime() - start) / 1_000_000.0;
+            if (run >= NUM_WARMUP_RUNS) {
+                best = Math.min(best, millis);
+            }
+        }
+        return best;
+    }
+}
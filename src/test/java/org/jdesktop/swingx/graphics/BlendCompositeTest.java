@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdesktop.swingx.graphics;
+
+import org.jdesktop.swingx.graphics.BlendComposite.BlendingMode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the row blenders give the same
+ * results as the original per-pixel blenders.
+ */
+@RunWith(Parameterized.class)
+public class BlendCompositeTest {
+    // all the source-destination value pairs, followed by random pixels
+    private static final int WIDTH = 256 * 256 + 10_000;
+
+    @Parameter
+    public BlendingMode mode;
+
+    @Parameters(name = "{index}: mode = {0}")
+    public static Object[] getModes() {
+        return BlendingMode.values();
+    }
+
+    @Test
+    public void rowBlenderMatchesReference() {
+        Random random = new Random(mode.ordinal());
+        int[] src = new int[WIDTH];
+        int[] dst = new int[WIDTH];
+        for (int i = 0; i < 256 * 256; i++) {
+            int s = i >> 8;
+            int d = i & 0xFF;
+            src[i] = (s << 24) | (s << 16) | (s << 8) | s;
+            dst[i] = (d << 24) | (d << 16) | (d << 8) | d;
+        }
+        for (int i = 256 * 256; i < WIDTH; i++) {
+            src[i] = random.nextInt();
+            dst[i] = random.nextInt();
+        }
+
+        for (float alpha : new float[]{1.0f, 0.6f}) {
+            for (boolean bgr : new boolean[]{false, true}) {
+                int[] expected = dst.clone();
+                BlendComposite.blendRowReference(mode, src, expected, WIDTH, alpha, bgr);
+
+                int[] actual = dst.clone();
+                BlendComposite.blendRow(mode, src, actual, WIDTH, alpha, bgr);
+
+                assertThat(actual)
+                        .as("alpha = %.1f, bgr = %s", alpha, bgr)
+                        .isEqualTo(expected);
+            }
+        }
+    }
+}
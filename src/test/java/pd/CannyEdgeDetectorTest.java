@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pd;
+
+import org.junit.Test;
+import pixelitor.utils.CancellationToken;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CannyEdgeDetectorTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 60;
+
+    @Test
+    public void weakEdgesContinueStrongEdges() {
+        // a horizontal edge whose contrast fades from left to right
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_RGB);
+        for (int y = HEIGHT / 2; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int gray = 255 - 255 * x / WIDTH;
+                img.setRGB(x, y, new Color(gray, gray, gray).getRGB());
+            }
+        }
+
+        int withoutHysteresis = countEdgePixels(detect(img, 7.5f, 7.5f));
+        int withHysteresis = countEdgePixels(detect(img, 2.5f, 7.5f));
+
+        assertThat(withoutHysteresis).isPositive();
+        assertThat(withHysteresis).isGreaterThan(withoutHysteresis);
+    }
+
+    @Test
+    public void weakEdgesAloneAreIgnored() {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(new Color(30, 30, 30));
+        g.fillRect(50, 15, 100, 30);
+        g.dispose();
+
+        assertThat(countEdgePixels(detect(img, 0.2f, 7.5f))).isZero();
+        assertThat(countEdgePixels(detect(img, 0.2f, 0.2f))).isPositive();
+    }
+
+    @Test
+    public void reusedBuffersGiveTheSameResult() {
+        BufferedImage first = createShapes(Color.WHITE);
+        BufferedImage second = createShapes(Color.GRAY);
+
+        BufferedImage expected = detect(first, 2.5f, 7.5f);
+        detect(second, 2.5f, 7.5f);
+        BufferedImage actual = detect(first, 2.5f, 7.5f);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertThat(actual.getRGB(x, y))
+                        .as("x = %d, y = %d", x, y)
+                        .isEqualTo(expected.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void cancelledRunFinishesTheTracker() {
+        var token = new CancellationToken();
+        var numFinished = new AtomicInteger();
+        var detector = new CannyEdgeDetector();
+        detector.setProgressTracker(new ProgressTracker() {
+            @Override
+            public void unitDone() {
+                token.cancel();
+            }
+
+            @Override
+            public void unitsDone(int units) {
+                token.cancel();
+            }
+
+            @Override
+            public void finished() {
+                numFinished.incrementAndGet();
+            }
+        });
+        detector.setSourceImage(createShapes(Color.WHITE));
+
+        assertThatThrownBy(() -> token.runWith(detector::process))
+                .isInstanceOf(CancellationException.class);
+        assertThat(numFinished.get()).isEqualTo(1);
+    }
+
+    private static BufferedImage createShapes(Color color) {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fillOval(20, 10, 70, 40);
+        g.fillRect(110, 5, 60, 30);
+        g.dispose();
+        return img;
+    }
+
+    private static BufferedImage detect(BufferedImage img, float low, float high) {
+        var detector = new CannyEdgeDetector();
+        detector.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        detector.setLowThreshold(low);
+        detector.setHighThreshold(high);
+        detector.setSourceImage(img);
+        detector.process();
+        return detector.getEdgesImage();
+    }
+
+    private static int countEdgePixels(BufferedImage edges) {
+        int count = 0;
+        for (int y = 0; y < edges.getHeight(); y++) {
+            for (int x = 0; x < edges.getWidth(); x++) {
+                if (edges.getRGB(x, y) == 0xFF_FF_FF_FF) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import org.junit.Before;
+import org.junit.Test;
+import pixelitor.layers.BlendingMode;
+import pixelitor.layers.ImageLayer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.Composition.ImageChangeActions.INVALIDATE_CACHE;
+
+/**
+ * Checks that the cached composite image of a {@link Composition}
+ * is the same as a full recomposite after partial edits.
+ * Uses only plain images, so it doesn't need a display.
+ */
+public class CompositionCacheTest {
+    // big enough for several composite tiles
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+
+    private final Random random = new Random(42);
+    private Composition comp;
+    private ImageLayer edited;
+
+    @Before
+    public void setUp() {
+        comp = Composition.createEmpty(WIDTH, HEIGHT);
+        comp.setName("Test");
+
+        addNoiseLayer("bottom");
+        edited = addNoiseLayer("edited");
+        edited.setBlendingMode(BlendingMode.SCREEN, false, false, false);
+        ImageLayer top = addNoiseLayer("top");
+        top.setBlendingMode(BlendingMode.MULTIPLY, false, false, false);
+        top.setOpacity(0.6f, false, false, false);
+
+        comp.setActiveLayer(edited, false);
+    }
+
+    @Test
+    public void partialEditIsRecompositedInPlace() {
+        BufferedImage composite = comp.getCompositeImageForPainting();
+
+        // an antialiased shape crossing a tile border,
+        // with bounds that are not on integer coordinates
+        var shape = new Ellipse2D.Double(230.4, 150.7, 50.3, 130.6);
+        paintOnEdited(shape);
+        comp.invalidateCompositeRegion(shape.getBounds2D());
+
+        BufferedImage updated = comp.getCompositeImageForPainting();
+        // only the dirty tiles were recalculated
+        assertThat(updated).isSameAs(composite);
+        assertMatchesFullRecomposite(updated);
+    }
+
+    @Test
+    public void sharedCompositeIsNotUpdatedInPlace() {
+        BufferedImage shared = comp.getCompositeImage();
+        int[] sharedPixelsBefore = getPixels(shared);
+
+        var shape = new Ellipse2D.Double(10.5, 10.5, 300, 200);
+        paintOnEdited(shape);
+        comp.invalidateCompositeRegion(shape.getBounds2D());
+
+        BufferedImage updated = comp.getCompositeImageForPainting();
+        assertThat(updated).isNotSameAs(shared);
+        assertThat(getPixels(shared)).isEqualTo(sharedPixelsBefore);
+        assertMatchesFullRecomposite(updated);
+    }
+
+    private ImageLayer addNoiseLayer(String name) {
+        var image = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        var layer = new ImageLayer(comp, image, name);
+        comp.addLayerInInitMode(layer);
+        return layer;
+    }
+
+    private void paintOnEdited(Ellipse2D shape) {
+        Graphics2D g = edited.getImage().createGraphics();
+        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(random.nextInt(), true));
+        g.fill(shape);
+        g.dispose();
+    }
+
+    private void assertMatchesFullRecomposite(BufferedImage cached) {
+        int[] cachedPixels = getPixels(cached);
+
+        comp.imageChanged(INVALIDATE_CACHE);
+        BufferedImage recomposited = comp.getCompositeImageForPainting();
+
+        assertThat(recomposited).isNotSameAs(cached);
+        assertThat(cachedPixels).isEqualTo(getPixels(recomposited));
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return img.getRaster().getPixels(0, 0,
+                img.getWidth(), img.getHeight(), (int[]) null);
+    }
+}
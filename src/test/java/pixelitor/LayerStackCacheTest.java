@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import org.junit.Before;
+import org.junit.Test;
+import pixelitor.layers.BlendingMode;
+import pixelitor.layers.ImageLayer;
+import pixelitor.layers.Layer;
+import pixelitor.utils.DirtyTiles;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Checks that the composites calculated with a {@link LayerStackCache}
+ * are the same as the composites calculated without it.
+ * Uses only plain images, so it doesn't need a display.
+ */
+public class LayerStackCacheTest {
+    // big enough for several composite tiles
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+    private static final int SPLIT_INDEX = 2;
+
+    // pre-blending the normal layers above the split layer is
+    // associative only up to the rounding of the 8-bit channels
+    private static final int PRE_BLEND_TOLERANCE = 2;
+
+    private final Random random = new Random(42);
+    private Composition comp;
+    private List<Layer> layers;
+    private LayerStackCache cache;
+
+    @Before
+    public void setUp() {
+        comp = Composition.createEmpty(WIDTH, HEIGHT);
+        comp.setName("Test");
+        layers = new ArrayList<>();
+
+        addNoiseLayer(BlendingMode.NORMAL);
+        addNoiseLayer(BlendingMode.MULTIPLY);
+        addNoiseLayer(BlendingMode.SCREEN); // the split layer
+        addNoiseLayer(BlendingMode.NORMAL).setOpacity(0.5f, false, false, false);
+        addNoiseLayer(BlendingMode.NORMAL);
+
+        cache = new LayerStackCache(layers.get(SPLIT_INDEX));
+    }
+
+    @Test
+    public void splitLayerEditIsRecalculatedInTiles() {
+        BufferedImage composite = cache.calcCompositeImage(layers, WIDTH, HEIGHT);
+        assertMatchesUncached(composite, PRE_BLEND_TOLERANCE);
+
+        Rectangle area = new Rectangle(200, 240, 100, 50);
+        paintOn(SPLIT_INDEX, area);
+
+        assertThat(cache.canUpdateInTiles(layers)).isTrue();
+        var dirtyTiles = new DirtyTiles(WIDTH, HEIGHT);
+        dirtyTiles.markDirty(area);
+        assertThat(dirtyTiles.getNumDirtyTiles()).isGreaterThan(1);
+        dirtyTiles.cleanDirtyTiles(tile ->
+                Composition.recalcTile(layers, composite, tile, cache));
+
+        assertMatchesUncached(composite, PRE_BLEND_TOLERANCE);
+    }
+
+    @Test
+    public void changedLayersBellowAndAboveAreRecalculated() {
+        cache.calcCompositeImage(layers, WIDTH, HEIGHT);
+
+        paintOn(0, new Rectangle(10, 10, 300, 300));
+        cache.layerChanged(0, SPLIT_INDEX);
+        assertMatchesUncached(cache.calcCompositeImage(layers, WIDTH, HEIGHT),
+                PRE_BLEND_TOLERANCE);
+
+        paintOn(4, new Rectangle(250, 100, 300, 200));
+        cache.layerChanged(4, SPLIT_INDEX);
+        assertMatchesUncached(cache.calcCompositeImage(layers, WIDTH, HEIGHT),
+                PRE_BLEND_TOLERANCE);
+    }
+
+    @Test
+    public void layersAboveThatCantBePreBlended() {
+        layers.get(4).setBlendingMode(BlendingMode.DIFFERENCE, false, false, false);
+        cache.layerChanged(4, SPLIT_INDEX);
+        BufferedImage composite = cache.calcCompositeImage(layers, WIDTH, HEIGHT);
+        assertMatchesUncached(composite, 0);
+
+        // the layers above are applied one by one also on the tiles
+        Rectangle area = new Rectangle(20, 30, 40, 50);
+        paintOn(SPLIT_INDEX, area);
+        assertThat(cache.canUpdateInTiles(layers)).isTrue();
+        var dirtyTiles = new DirtyTiles(WIDTH, HEIGHT);
+        dirtyTiles.markDirty(area);
+        dirtyTiles.cleanDirtyTiles(tile ->
+                Composition.recalcTile(layers, composite, tile, cache));
+        assertMatchesUncached(composite, 0);
+    }
+
+    @Test
+    public void changedLayerListIsRecalculated() {
+        cache.calcCompositeImage(layers, WIDTH, HEIGHT);
+
+        layers.remove(0);
+        assertThat(cache.canUpdateInTiles(layers)).isFalse();
+        assertMatchesUncached(cache.calcCompositeImage(layers, WIDTH, HEIGHT),
+                PRE_BLEND_TOLERANCE);
+    }
+
+    private ImageLayer addNoiseLayer(BlendingMode blendingMode) {
+        var image = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        var layer = new ImageLayer(comp, image, "layer " + layers.size());
+        layer.setBlendingMode(blendingMode, false, false, false);
+        layers.add(layer);
+        return layer;
+    }
+
+    private void paintOn(int layerIndex, Rectangle area) {
+        ImageLayer layer = (ImageLayer) layers.get(layerIndex);
+        Graphics2D g = layer.getImage().createGraphics();
+        g.setColor(new Color(random.nextInt(), true));
+        g.fill(area);
+        g.dispose();
+    }
+
+    private void assertMatchesUncached(BufferedImage cached, int tolerance) {
+        BufferedImage uncached = Composition.applyLayers(layers, 0, layers.size(),
+                new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB_PRE), true);
+        int[] cachedPixels = getPixels(cached);
+        int[] uncachedPixels = getPixels(uncached);
+        if (tolerance == 0) {
+            assertThat(cachedPixels).isEqualTo(uncachedPixels);
+            return;
+        }
+        for (int i = 0; i < cachedPixels.length; i++) {
+            int diff = Math.abs(cachedPixels[i] - uncachedPixels[i]);
+            if (diff > tolerance) {
+                int pixel = i / 4;
+                fail("x = %d, y = %d: %d vs %d", pixel % WIDTH, pixel / WIDTH,
+                        cachedPixels[i], uncachedPixels[i]);
+            }
+        }
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return img.getRaster().getPixels(0, 0,
+                img.getWidth(), img.getHeight(), (int[]) null);
+    }
+}
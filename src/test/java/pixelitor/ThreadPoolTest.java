@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import org.junit.Test;
+import pixelitor.utils.CancellationToken;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ThreadPoolTest {
+    @Test
+    public void parallelForRunsEachIndexOnce() {
+        int numTasks = 100;
+        var counts = new AtomicIntegerArray(numTasks);
+
+        ThreadPool.parallelFor(numTasks, counts::incrementAndGet);
+
+        for (int i = 0; i < numTasks; i++) {
+            assertThat(counts.get(i)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void parallelForWorksFromPoolThreads() throws Exception {
+        // the outer tasks keep all the executor threads busy
+        // while they wait for the inner loops
+        int numOuter = ThreadPool.getNumCores() * 2;
+        var counts = new AtomicIntegerArray(numOuter);
+        Future<?>[] futures = new Future<?>[numOuter];
+        for (int i = 0; i < numOuter; i++) {
+            int outer = i;
+            futures[i] = ThreadPool.submit(() ->
+                    ThreadPool.parallelFor(10, inner -> counts.incrementAndGet(outer)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        for (int i = 0; i < numOuter; i++) {
+            assertThat(counts.get(i)).isEqualTo(10);
+        }
+    }
+
+    @Test
+    public void parallelForRethrowsExceptions() {
+        assertThatThrownBy(() -> ThreadPool.parallelFor(8, i -> {
+            if (i == 5) {
+                throw new IllegalArgumentException("index " + i);
+            }
+        })).isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("index 5");
+    }
+
+    @Test
+    public void parallelRowsProcessesEachRowOnce() {
+        int numRows = 10_000;
+        var counts = new AtomicIntegerArray(numRows);
+        var reportedUnits = new AtomicInteger();
+        var pt = new ProgressTracker() {
+            @Override
+            public void unitDone() {
+                reportedUnits.incrementAndGet();
+            }
+
+            @Override
+            public void unitsDone(int units) {
+                reportedUnits.addAndGet(units);
+            }
+
+            @Override
+            public void finished() {
+            }
+        };
+
+        ThreadPool.parallelRows(numRows, 10, pt, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                counts.incrementAndGet(y);
+            }
+        });
+
+        for (int y = 0; y < numRows; y++) {
+            assertThat(counts.get(y)).isEqualTo(1);
+        }
+        assertThat(reportedUnits.get()).isEqualTo(numRows);
+    }
+
+    @Test
+    public void parallelRowsStopsAfterCancellation() {
+        int numRows = 10_000;
+        var processedRows = new AtomicInteger();
+        var token = new CancellationToken();
+
+        assertThatThrownBy(() -> token.runWith(() ->
+                ThreadPool.parallelRows(numRows, 10, ProgressTracker.NULL_TRACKER, (fromY, toY) -> {
+                    for (int y = fromY; y < toY; y++) {
+                        CancellationToken.checkCurrent();
+                        if (processedRows.incrementAndGet() == 100) {
+                            token.cancel();
+                        }
+                    }
+                }))).isInstanceOf(CancellationException.class);
+
+        assertThat(processedRows.get()).isLessThan(numRows);
+        assertThat(CancellationToken.getCurrent()).isNull();
+    }
+
+    @Test
+    public void chunkSizeAdaptsToTheWork() {
+        // short rows are grouped so that a chunk is not too small
+        assertThat(ThreadPool.calcChunkRows(100, 10)).isGreaterThanOrEqualTo(100);
+        // very tall images are still split into many chunks
+        int numRows = 100_000;
+        int chunkRows = ThreadPool.calcChunkRows(numRows, 10_000);
+        assertThat(numRows / chunkRows).isGreaterThanOrEqualTo(ThreadPool.getNumCores());
+    }
+}
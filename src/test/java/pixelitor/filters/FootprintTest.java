@@ -0,0 +1,48 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FootprintTest {
+    @Test
+    public void inputAreaIncludesTheRadius() {
+        Rectangle output = new Rectangle(10, 20, 30, 40);
+
+        assertThat(Footprint.POINT.getInputArea(output)).isEqualTo(output);
+        assertThat(Footprint.radius(3).getInputArea(output))
+                .isEqualTo(new Rectangle(7, 17, 36, 46));
+    }
+
+    @Test
+    public void fractionalRadiusIsRoundedUp() {
+        assertThat(Footprint.radius(2.1).getRadius()).isEqualTo(3);
+        assertThat(Footprint.radius(0.0)).isSameAs(Footprint.POINT);
+    }
+
+    @Test
+    public void globalIsNotLocal() {
+        assertThat(Footprint.GLOBAL.isGlobal()).isTrue();
+        assertThat(Footprint.POINT.isGlobal()).isFalse();
+        assertThat(Footprint.radius(5).isGlobal()).isFalse();
+    }
+}
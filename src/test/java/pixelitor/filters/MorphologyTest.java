@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import org.junit.Test;
+import pixelitor.filters.impl.MorphologyFilter;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.filters.Morphology.OP_CLOSE;
+import static pixelitor.filters.Morphology.OP_OPEN;
+import static pixelitor.filters.impl.MorphologyFilter.KERNEL_DIAMOND;
+import static pixelitor.filters.impl.MorphologyFilter.KERNEL_SQUARE;
+
+public class MorphologyTest {
+    private static final int WIDTH = 60;
+    private static final int HEIGHT = 45;
+    private static final int RADIUS = 3;
+
+    @Test
+    public void regionOfOpenAndCloseMatchesTheWholeImage() {
+        BufferedImage src = createRandomImage();
+        Rectangle region = new Rectangle(20, 15, 25, 18);
+
+        for (int kernel : new int[]{KERNEL_DIAMOND, KERNEL_SQUARE}) {
+            for (int op : new int[]{OP_OPEN, OP_CLOSE}) {
+                BufferedImage full = openOrClose(src, kernel, op);
+                int[] expected = full.getRGB(region.x, region.y, region.width, region.height,
+                        null, 0, region.width);
+
+                Footprint footprint = Morphology.calcFootprint(op, RADIUS);
+                assertThat(filterRegion(src, region, kernel, op, footprint))
+                        .as("kernel = %d, op = %d", kernel, op)
+                        .isEqualTo(expected);
+
+                // the footprint of a single pass is not enough
+                assertThat(filterRegion(src, region, kernel, op, Footprint.radius(RADIUS)))
+                        .as("kernel = %d, op = %d", kernel, op)
+                        .isNotEqualTo(expected);
+            }
+        }
+    }
+
+    // filters only the input area of the given region, like Filter.transformRegion
+    private static int[] filterRegion(BufferedImage src, Rectangle region,
+                                      int kernel, int op, Footprint footprint) {
+        Rectangle inputArea = footprint.getInputArea(region).intersection(
+                new Rectangle(0, 0, WIDTH, HEIGHT));
+        BufferedImage input = new BufferedImage(inputArea.width, inputArea.height, TYPE_INT_ARGB);
+        input.setRGB(0, 0, inputArea.width, inputArea.height,
+                src.getRGB(inputArea.x, inputArea.y, inputArea.width, inputArea.height,
+                        null, 0, inputArea.width),
+                0, inputArea.width);
+
+        BufferedImage output = openOrClose(input, kernel, op);
+        return output.getRGB(region.x - inputArea.x, region.y - inputArea.y,
+                region.width, region.height, null, 0, region.width);
+    }
+
+    private static BufferedImage openOrClose(BufferedImage src, int kernel, int op) {
+        var filter = new MorphologyFilter(Morphology.NAME);
+        filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        filter.setRadius(RADIUS);
+        filter.setKernel(kernel);
+        return Morphology.openOrClose(filter, op, src, null);
+    }
+
+    private static BufferedImage createRandomImage() {
+        Random random = new Random(11);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+}
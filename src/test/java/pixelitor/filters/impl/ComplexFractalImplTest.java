@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ComplexFractalImplTest {
+    private static final int MAX_ITERATIONS = 500;
+
+    @Test
+    public void periodicityCheckingGivesTheSameIterations() {
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 60; j++) {
+                double cx = -2.2 + 2.9 * i / 100;
+                double cy = -1.2 + 2.4 * j / 60;
+
+                // Mandelbrot set
+                assertThat(ComplexFractalImpl.iterate(0, 0, cx, cy, MAX_ITERATIONS))
+                        .as("cx = %f, cy = %f", cx, cy)
+                        .isEqualTo(iterateWithoutChecks(0, 0, cx, cy));
+
+                // Julia set with a large interior
+                assertThat(ComplexFractalImpl.iterate(cx, cy, -1.0, 0.0, MAX_ITERATIONS))
+                        .as("zx = %f, zy = %f", cx, cy)
+                        .isEqualTo(iterateWithoutChecks(cx, cy, -1.0, 0.0));
+            }
+        }
+    }
+
+    @Test
+    public void borderTracingFillsUniformAreas() {
+        int width = 150;
+        int height = 100;
+        var numCalculated = new AtomicInteger();
+        ComplexFractalImpl fractal = new ComplexFractalImpl("Test", -1, 1, -1, 1) {
+            @Override
+            protected int calcIterations(int x, int y) {
+                numCalculated.incrementAndGet();
+                return calcRings(x, y);
+            }
+        };
+        fractal.setProgressTracker(ProgressTracker.NULL_TRACKER);
+
+        int[] iterations = fractal.calcIterationMap(width, height);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertThat(iterations[x + y * width])
+                        .as("x = %d, y = %d", x, y)
+                        .isEqualTo(calcRings(x, y));
+            }
+        }
+        assertThat(numCalculated.get()).isLessThan(width * height / 2);
+    }
+
+    @Test
+    public void borderTracingIsCloseToThePixelByPixelResult() {
+        // the default Mandelbrot view, a zoomed one at the
+        // edge of the set, and a Julia set with thin details
+        checkBorderTracing(createMandelbrot(), 1, 0.2028, 0.5);
+        checkBorderTracing(createMandelbrot(), 30, 0.455, 0.22);
+        checkBorderTracing(createJulia(-0.8, 0.156), 1, 0.5, 0.5);
+    }
+
+    private static void checkBorderTracing(ComplexFractalImpl fractal, double zoom, double zoomX, double zoomY) {
+        int width = 600;
+        int height = 400;
+        fractal.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        fractal.setMaxIterations(100);
+        fractal.setZoom(zoom);
+        fractal.setZoomCenter(zoomX, zoomY);
+        fractal.setUpCoordinates(width, height);
+
+        int[] iterations = fractal.calcIterationMap(width, height);
+
+        int numDifferent = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (iterations[x + y * width] != fractal.calcIterations(x, y)) {
+                    numDifferent++;
+                }
+            }
+        }
+        // the filling is an approximation, which can miss
+        // details that don't reach a rectangle's border
+        assertThat(numDifferent).isLessThanOrEqualTo(width * height / 10_000);
+    }
+
+    private static ComplexFractalImpl createMandelbrot() {
+        return new ComplexFractalImpl("Mandelbrot", -2.2, 0.7, -1.2, 1.2) {
+            @Override
+            protected int calcIterations(int x, int y) {
+                return iterate(0, 0, cxStart + x * xMultiplier, cyStart + y * yMultiplier);
+            }
+        };
+    }
+
+    private static ComplexFractalImpl createJulia(double cx, double cy) {
+        return new ComplexFractalImpl("Julia", -2, 2, -1.5, 1.5) {
+            @Override
+            protected int calcIterations(int x, int y) {
+                return iterate(cxStart + x * xMultiplier, cyStart + y * yMultiplier, cx, cy);
+            }
+        };
+    }
+
+    // concentric rings, which are wide compared to the subdivided rectangles
+    private static int calcRings(int x, int y) {
+        int dx = x - 70;
+        int dy = y - 45;
+        return (int) Math.sqrt(dx * dx + dy * dy) / 25;
+    }
+
+    // the escape time algorithm as it was before the periodicity checking
+    private static int iterateWithoutChecks(double x, double y, double cx, double cy) {
+        int it = MAX_ITERATIONS;
+        double x2 = 0;
+        double y2 = 0;
+        double xy;
+        while (x2 + y2 <= 4 && it > 0) {
+            it--;
+            xy = x * y;
+            x2 = x * x;
+            y2 = y * y;
+            x = x2 - y2 + cx;
+            y = xy + xy + cy;
+        }
+        return it;
+    }
+}
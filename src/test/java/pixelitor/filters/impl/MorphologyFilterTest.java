@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.filters.impl.MorphologyFilter.KERNEL_DIAMOND;
+import static pixelitor.filters.impl.MorphologyFilter.KERNEL_SQUARE;
+import static pixelitor.filters.impl.MorphologyFilter.OP_DILATE;
+import static pixelitor.filters.impl.MorphologyFilter.OP_ERODE;
+
+public class MorphologyFilterTest {
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    @Test
+    public void sameAsRepeatedSmallKernels() {
+        Random random = new Random(7);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        for (int kernel : new int[]{KERNEL_DIAMOND, KERNEL_SQUARE}) {
+            for (int op : new int[]{OP_ERODE, OP_DILATE}) {
+                for (int radius = 1; radius <= 6; radius++) {
+                    var filter = new MorphologyFilter("Morphology");
+                    filter.setKernel(kernel);
+                    filter.setOp(op);
+                    filter.setRadius(radius);
+                    int[] actual = filter.filterPixels(WIDTH, HEIGHT, pixels.clone(),
+                            new Rectangle(0, 0, WIDTH, HEIGHT));
+
+                    int[] expected = pixels;
+                    for (int i = 0; i < radius; i++) {
+                        expected = smallKernelPass(expected, kernel, op);
+                    }
+
+                    assertThat(actual)
+                            .as("kernel = %d, op = %d, radius = %d", kernel, op, radius)
+                            .isEqualTo(expected);
+                }
+            }
+        }
+    }
+
+    // a 3x3 pass which ignores the pixels outside the image, like
+    // the original version, whose dilation always set the alpha to 0xFF
+    private static int[] smallKernelPass(int[] in, int kernel, int op) {
+        int[] out = new int[in.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int result = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int v = op == OP_ERODE || shift == 24 ? 0xFF : 0;
+                    for (int dy = -1; dy <= 1; dy++) {
+                        for (int dx = -1; dx <= 1; dx++) {
+                            if (kernel == KERNEL_DIAMOND && dx != 0 && dy != 0) {
+                                continue;
+                            }
+                            int ix = x + dx;
+                            int iy = y + dy;
+                            if (ix < 0 || ix >= WIDTH || iy < 0 || iy >= HEIGHT) {
+                                continue;
+                            }
+                            int c = (in[iy * WIDTH + ix] >>> shift) & 0xFF;
+                            v = op == OP_ERODE ? Math.min(v, c) : Math.max(v, c);
+                        }
+                    }
+                    result |= v << shift;
+                }
+                out[y * WIDTH + x] = result;
+            }
+        }
+        return out;
+    }
+}
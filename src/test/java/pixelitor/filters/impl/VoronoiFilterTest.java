@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.Test;
+import pixelitor.filters.impl.VoronoiFilter.SiteGrid;
+import pixelitor.utils.Metric;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VoronoiFilterTest {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 70;
+
+    @Test
+    public void gridFindsTheSameSitesAsBruteForce() {
+        Random random = new Random(11);
+        for (int numPoints : new int[]{1, 7, 300}) {
+            int[] xCoords = new int[numPoints];
+            int[] yCoords = new int[numPoints];
+            for (int i = 0; i < numPoints; i++) {
+                // few distinct positions, so that there are also ties
+                xCoords[i] = random.nextInt(WIDTH / 4) * 4;
+                yCoords[i] = random.nextInt(HEIGHT / 4) * 4;
+            }
+
+            for (Metric metric : Metric.values()) {
+                var grid = new SiteGrid(xCoords, yCoords, metric, WIDTH, HEIGHT);
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int x = 0; x < WIDTH; x++) {
+                        // also check the subpixel positions used by antialiasing
+                        double sx = x - 0.5;
+                        double sy = y + 0.25;
+                        assertThat(grid.findNearest(x, y))
+                                .as("%s, %d points at %d, %d", metric, numPoints, x, y)
+                                .isEqualTo(bruteForce(xCoords, yCoords, metric, x, y));
+                        assertThat(grid.findNearest(sx, sy))
+                                .as("%s, %d points at %f, %f", metric, numPoints, sx, sy)
+                                .isEqualTo(bruteForce(xCoords, yCoords, metric, sx, sy));
+                    }
+                }
+            }
+        }
+    }
+
+    private static int bruteForce(int[] xCoords, int[] yCoords, Metric metric, double x, double y) {
+        int closest = 0;
+        double closestDist = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < xCoords.length; i++) {
+            double dist = metric.distanceDouble(xCoords[i], x, yCoords[i], y);
+            if (dist < closestDist) {
+                closest = i;
+                closestDist = dist;
+            }
+        }
+        return closest;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.levels;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RGBLookupTest {
+    @Test
+    public void fusedLookupIsEquivalentToTheSequence() {
+        var first = new RGBLookup();
+        first.initFromPosterize(3, 5, 7);
+        short[] inverse = new short[256];
+        for (int i = 0; i < 256; i++) {
+            inverse[i] = (short) (255 - i);
+        }
+        var second = new RGBLookup(inverse, inverse, inverse);
+
+        RGBLookup fused = first.then(second);
+
+        for (int i = 0; i < 256; i++) {
+            assertThat(fused.mapRed(i)).isEqualTo(second.mapRed(first.mapRed(i)));
+            assertThat(fused.mapGreen(i)).isEqualTo(second.mapGreen(first.mapGreen(i)));
+            assertThat(fused.mapBlue(i)).isEqualTo(second.mapBlue(first.mapBlue(i)));
+        }
+    }
+
+    @Test
+    public void identityDoesNotChangeTheLookup() {
+        var lookup = new RGBLookup();
+        lookup.initFromPosterize(4, 4, 4);
+
+        RGBLookup fused = RGBLookup.createIdentity().then(lookup);
+
+        for (int i = 0; i < 256; i++) {
+            assertThat(fused.mapRGBValue(0xFF_00_00_00 | i << 16 | i << 8 | i))
+                    .isEqualTo(lookup.mapRGBValue(0xFF_00_00_00 | i << 16 | i << 8 | i));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.filters.lookup;
+
+import com.jhlabs.image.PixelUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FastLookupOpTest {
+    // tall enough to be split into many bands of rows
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 2000;
+
+    @Test
+    public void premultipliedPixelsAreTheSameAsWithDivisions() {
+        Random random = new Random(42);
+        int[] src = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < src.length; i++) {
+            // every alpha value occurs, including 0 and 255
+            int a = i % 256;
+            if (i % 3 == 0) {
+                // a valid premultiplied pixel
+                int max = a + 1;
+                src[i] = a << 24 | random.nextInt(max) << 16 | random.nextInt(max) << 8 | random.nextInt(max);
+            } else {
+                // color values above the alpha test the clamping
+                src[i] = a << 24 | (random.nextInt() & 0xFF_FF_FF);
+            }
+        }
+        short[][] table = createRandomTable(random);
+
+        for (boolean notPremultiplied : new boolean[]{false, true}) {
+            int[] actual = new int[src.length];
+            FastLookupOp.filterPacked(src, actual, WIDTH, table, notPremultiplied);
+
+            for (int i = 0; i < src.length; i++) {
+                assertThat(actual[i])
+                        .as("i = %d, src = %08X", i, src[i])
+                        .isEqualTo(filterWithDivisions(src[i], table, notPremultiplied));
+            }
+        }
+    }
+
+    private static short[][] createRandomTable(Random random) {
+        short[][] table = new short[3][256];
+        for (short[] channel : table) {
+            for (int i = 0; i < 256; i++) {
+                channel[i] = (short) random.nextInt(256);
+            }
+        }
+        return table;
+    }
+
+    // the per-pixel calculation as it was before the precalculated factors
+    private static int filterWithDivisions(int rgb, short[][] table, boolean notPremultiplied) {
+        int a = (rgb >>> 24) & 0xFF;
+        int r = (rgb >>> 16) & 0xFF;
+        int g = (rgb >>> 8) & 0xFF;
+        int b = rgb & 0xFF;
+
+        if (a == 255 || notPremultiplied) {
+            r = table[0][r];
+            g = table[1][g];
+            b = table[2][b];
+        } else if (a == 0) {
+            r = 0;
+            g = 0;
+            b = 0;
+        } else {
+            float f = 255.0f / a;
+            int ur = Math.min(255, (int) (r * f));
+            int ug = Math.min(255, (int) (g * f));
+            int ub = Math.min(255, (int) (b * f));
+
+            ur = table[0][ur];
+            ug = table[1][ug];
+            ub = table[2][ub];
+
+            float f2 = a * (1.0f / 255.0f);
+            r = PixelUtils.clamp((int) (ur * f2));
+            g = PixelUtils.clamp((int) (ug * f2));
+            b = PixelUtils.clamp((int) (ub * f2));
+        }
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+}
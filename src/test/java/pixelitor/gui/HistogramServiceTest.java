@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import org.junit.Test;
+import pixelitor.gui.HistogramService.Result;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HistogramServiceTest {
+    @Test
+    public void changedAreasGiveTheSameResultAsRecounting() {
+        int width = 600;
+        int height = 300;
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, 0xFF_10_20_30);
+        pixels[5] = 0; // transparent pixels are not counted
+
+        Object source = new Object();
+        var service = new HistogramService(result -> {});
+        Result first = service.calculate(source, pixels, width, height, false, null);
+        assertThat(first.reds[0x10]).isEqualTo(width * height - 1);
+        assertThat(first.blues[0x30]).isEqualTo(width * height - 1);
+
+        // changes in two different tiles
+        pixels[5] = 0xFF_FF_00_00;
+        pixels[6] = 0xFF_FF_00_00;
+        pixels[280 * width + 500] = 0;
+        Result updated = service.calculate(source, pixels, width, height, false, List.of(
+                new Rectangle(5, 0, 2, 1), new Rectangle(500, 280, 1, 1)));
+
+        var freshService = new HistogramService(result -> {});
+        Result recounted = freshService.calculate(source, pixels, width, height, false, null);
+
+        assertThat(updated.reds).isEqualTo(recounted.reds);
+        assertThat(updated.greens).isEqualTo(recounted.greens);
+        assertThat(updated.blues).isEqualTo(recounted.blues);
+        assertThat(updated.reds[0xFF]).isEqualTo(2);
+        assertThat(updated.reds[0x10]).isEqualTo(width * height - 3);
+    }
+
+    @Test
+    public void samplingUsesTheSameGridInEveryTile() {
+        int width = 3000;
+        int height = 2000;
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, 0xFF_10_20_30);
+        int step = HistogramService.calcSamplingStep(width, height);
+        assertThat(step).isGreaterThan(1);
+
+        var service = new HistogramService(result -> {});
+        Result result = service.calculate(new Object(), pixels, width, height, true, null);
+
+        int numSamples = ((width + step - 1) / step) * ((height + step - 1) / step);
+        assertThat(result.reds[0x10]).isEqualTo(numSamples);
+        assertThat(result.pixelsPerSample).isEqualTo(step * step);
+    }
+
+    @Test
+    public void samplingStep() {
+        assertThat(HistogramService.calcSamplingStep(1000, 1000)).isEqualTo(1);
+        // 16 times more pixels than the maximum
+        assertThat(HistogramService.calcSamplingStep(8192, 8192)).isEqualTo(4);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.TexturePaint;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScrollBufferTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+
+    private ScrollBuffer buffer;
+    private TexturePaint pattern;
+    private List<Rectangle> renderedAreas;
+
+    @Before
+    public void beforeEachTest() {
+        buffer = new ScrollBuffer();
+        renderedAreas = new ArrayList<>();
+
+        // a pattern which depends only on the component coordinates
+        BufferedImage texture = new BufferedImage(37, 23, TYPE_INT_ARGB_PRE);
+        Random random = new Random(42);
+        for (int y = 0; y < texture.getHeight(); y++) {
+            for (int x = 0; x < texture.getWidth(); x++) {
+                texture.setRGB(x, y, 0xFF_00_00_00 | random.nextInt());
+            }
+        }
+        pattern = new TexturePaint(texture, new Rectangle(0, 0, 37, 23));
+    }
+
+    @Test
+    public void scrollingRendersOnlyTheExposedStrips() {
+        paintAndCheck(new Rectangle(100, 100, WIDTH, HEIGHT));
+        assertThat(renderedAreas).containsExactly(new Rectangle(100, 100, WIDTH, HEIGHT));
+
+        renderedAreas.clear();
+        paintAndCheck(new Rectangle(110, 93, WIDTH, HEIGHT));
+        assertThat(renderedAreas).containsExactly(
+                new Rectangle(110, 93, WIDTH, 7),
+                new Rectangle(110 + WIDTH - 10, 100, 10, HEIGHT - 7));
+
+        renderedAreas.clear();
+        paintAndCheck(new Rectangle(50, 120, WIDTH, HEIGHT));
+        assertThat(countRenderedPixels()).isEqualTo(
+                60 * HEIGHT + 27 * (WIDTH - 60));
+    }
+
+    @Test
+    public void dirtyAreasAreRenderedAgain() {
+        Rectangle visible = new Rectangle(0, 0, WIDTH, HEIGHT);
+        paintAndCheck(visible);
+
+        renderedAreas.clear();
+        paintAndCheck(visible);
+        assertThat(renderedAreas).isEmpty();
+
+        buffer.markDirty(10, 10, 5, 5);
+        buffer.markDirty(30, 20, 5, 5);
+        buffer.markDirty(500, 500, 5, 5); // not visible
+        paintAndCheck(visible);
+        assertThat(renderedAreas).containsExactly(new Rectangle(10, 10, 25, 15));
+    }
+
+    @Test
+    public void stateChangeRendersEverything() {
+        Rectangle visible = new Rectangle(0, 0, WIDTH, HEIGHT);
+        buffer.paint(createTarget().createGraphics(), visible, "a", this::render);
+
+        renderedAreas.clear();
+        buffer.paint(createTarget().createGraphics(), visible, "b", this::render);
+        assertThat(renderedAreas).containsExactly(visible);
+    }
+
+    private void paintAndCheck(Rectangle visible) {
+        BufferedImage target = createTarget();
+        Graphics2D g = target.createGraphics();
+        buffer.paint(g, visible, "state", this::render);
+        g.dispose();
+
+        // compare with rendering directly
+        BufferedImage expected = createTarget();
+        Graphics2D eg = expected.createGraphics();
+        eg.setPaint(pattern);
+        eg.fill(visible);
+        eg.dispose();
+
+        for (int y = visible.y; y < visible.y + visible.height; y++) {
+            for (int x = visible.x; x < visible.x + visible.width; x++) {
+                assertThat(target.getRGB(x, y))
+                        .as("x = %d, y = %d", x, y)
+                        .isEqualTo(expected.getRGB(x, y));
+            }
+        }
+    }
+
+    private void render(Graphics2D g) {
+        Rectangle area = g.getClipBounds();
+        renderedAreas.add(area);
+        g.setPaint(pattern);
+        g.fill(area);
+    }
+
+    private int countRenderedPixels() {
+        return renderedAreas.stream()
+                .mapToInt(r -> r.width * r.height)
+                .sum();
+    }
+
+    private static BufferedImage createTarget() {
+        return new BufferedImage(500, 500, TYPE_INT_ARGB_PRE);
+    }
+}
@@ -1728,7 +1728,8 @@ public class AssertJSwingTest {
 
     private void testFiltersNoise() {
         testNoDialogFilter("Reduce Single Pixel Noise");
-        testNoDialogFilter("3x3 Median Filter");
+        testFilterWithDialog("Median", Randomize.YES, Reseed.NO, ShowOriginal.YES);
+        testNoDialogFilter("3x3 Vector Median");
         testFilterWithDialog("Add Noise", Randomize.YES, Reseed.NO, ShowOriginal.YES);
         testFilterWithDialog("Pixelate", Randomize.YES, Reseed.NO, ShowOriginal.YES);
     }
@@ -1800,6 +1801,9 @@ public class AssertJSwingTest {
                 "Find Horizontal Edges", "Find Vertical Edges",
                 "Find Diagonal Edges", "Find Diagonal Edges 2", "Sharpen",
                 "Do Nothing", "Randomize");
+        testFilterWithDialog("Custom 11x11 Convolution", Randomize.NO,
+                Reseed.NO, ShowOriginal.NO, "Disk Blur", "Motion Blur",
+                "Do Nothing", "Randomize");
 
         testFilterWithDialog("Channel to Transparency", Randomize.YES, Reseed.NO, ShowOriginal.YES);
         testNoDialogFilter("Invert Transparency");
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.Before;
+import org.junit.Test;
+import pixelitor.Composition;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that compositing in horizontal bands gives the same result
+ * as compositing in a single pass. The number of bands is given
+ * explicitly, so the bands are tested also on a single core,
+ * where they are applied one after the other.
+ * Uses only plain images, so it doesn't need a display.
+ */
+public class BandedCompositingTest {
+    // small enough to be composited in a single pass
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+
+    private final Random random = new Random(42);
+    private Composition comp;
+
+    @Before
+    public void setUp() {
+        comp = Composition.createEmpty(WIDTH, HEIGHT);
+        comp.setName("Test");
+
+        addNoiseLayer("bottom", WIDTH, HEIGHT, 0, 0);
+
+        ImageLayer masked = addNoiseLayer("masked", WIDTH, HEIGHT, 0, 0);
+        masked.setBlendingMode(BlendingMode.MULTIPLY, false, false, false);
+        masked.setOpacity(0.7f, false, false, false);
+        masked.mask = new LayerMask(comp, createNoiseImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY),
+                masked, 0, 0);
+
+        // a layer bigger than the canvas
+        ImageLayer moved = addNoiseLayer("moved", WIDTH + 50, HEIGHT + 40, -30, -25);
+        moved.setBlendingMode(BlendingMode.SCREEN, false, false, false);
+
+        addNoiseLayer("hidden", WIDTH, HEIGHT, 0, 0).setVisible(false, false, false);
+
+        ImageLayer top = addNoiseLayer("top", WIDTH, HEIGHT, 0, 0);
+        top.setBlendingMode(BlendingMode.OVERLAY, false, false, false);
+        top.setOpacity(0.4f, false, false, false);
+    }
+
+    @Test
+    public void bandsMatchSinglePass() {
+        int[] singlePass = getPixels(comp.getCompositeImage());
+
+        List<Layer> layers = comp.getLayers();
+        // the last band is shorter than the others for 3 and 7 bands
+        for (int numBands : new int[]{2, 3, 7}) {
+            var banded = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB_PRE);
+            Composition.applyLayersInBands(layers, 0, layers.size(),
+                    banded, true, numBands);
+
+            assertThat(getPixels(banded))
+                    .as("%d bands", numBands)
+                    .isEqualTo(singlePass);
+        }
+    }
+
+    private ImageLayer addNoiseLayer(String name, int width, int height, int tx, int ty) {
+        BufferedImage image = createNoiseImage(width, height, TYPE_INT_ARGB);
+        var layer = new ImageLayer(comp, image, name, null, tx, ty);
+        comp.addLayerInInitMode(layer);
+        return layer;
+    }
+
+    private BufferedImage createNoiseImage(int width, int height, int type) {
+        var image = new BufferedImage(width, height, type);
+        int[] samples = new int[width * height * image.getRaster().getNumBands()];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(256);
+        }
+        image.getRaster().setPixels(0, 0, width, height, samples);
+        return image;
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return img.getRaster().getPixels(0, 0,
+                img.getWidth(), img.getHeight(), (int[]) null);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.Before;
+import org.junit.Test;
+import pixelitor.Composition;
+import pixelitor.filters.ParametrizedFilter;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.filters.gui.ShowOriginal;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.Composition.ImageChangeActions.INVALIDATE_CACHE;
+
+/**
+ * Checks that the cached images of the layers are the same
+ * as the freshly calculated ones after the layers are edited.
+ * Uses only plain images, so it doesn't need a display.
+ */
+public class LayerCacheTest {
+    // big enough for several tiles of the masked image
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+
+    private final Random random = new Random(42);
+    private Composition comp;
+    private BufferedImage background;
+
+    @Before
+    public void setUp() {
+        comp = Composition.createEmpty(WIDTH, HEIGHT);
+        comp.setName("Test");
+        background = createNoiseImage(TYPE_INT_ARGB_PRE);
+    }
+
+    @Test
+    public void maskEditRepaintsTheMaskedImage() {
+        ImageLayer layer = createMaskedLayer();
+        BufferedImage before = applyOnBackground(layer);
+
+        // an antialiased shape crossing a tile border,
+        // with bounds that are not on integer coordinates
+        var shape = new Ellipse2D.Double(230.4, 150.7, 50.3, 130.6);
+        paint(layer.getMask().getImage(), shape);
+        layer.contentChanged(shape.getBounds2D());
+
+        BufferedImage cached = applyOnBackground(layer);
+        assertThat(getPixels(cached)).isNotEqualTo(getPixels(before));
+        assertMatchesFullRepaint(layer, cached);
+    }
+
+    @Test
+    public void layerEditRepaintsTheMaskedImage() {
+        ImageLayer layer = createMaskedLayer();
+        applyOnBackground(layer);
+
+        var shape = new Ellipse2D.Double(500.5, 10.2, 90.1, 300.3);
+        paint(layer.getImage(), shape);
+        layer.contentChanged(shape.getBounds2D());
+
+        assertMatchesFullRepaint(layer, applyOnBackground(layer));
+    }
+
+    @Test
+    public void adjustmentParamChangeRecalculatesTheOutput() {
+        var filter = new Darken();
+        AdjustmentLayer adjustment = createAdjustedComp(filter);
+        int[] before = getPixels(comp.getCompositeImage());
+
+        filter.amount.setValue(70);
+        comp.layerChanged(adjustment, INVALIDATE_CACHE);
+
+        int[] cached = getPixels(comp.getCompositeImage());
+        assertThat(cached).isNotEqualTo(before);
+        assertMatchesUncachedComposite(adjustment, cached);
+    }
+
+    @Test
+    public void adjustmentInputEditRecalculatesTheOutput() {
+        AdjustmentLayer adjustment = createAdjustedComp(new Darken());
+        comp.getCompositeImage();
+
+        ImageLayer bottom = (ImageLayer) comp.getLayer(0);
+        paint(bottom.getImage(), new Ellipse2D.Double(100.5, 50.5, 300, 200));
+        comp.layerChanged(bottom, INVALIDATE_CACHE);
+
+        assertMatchesUncachedComposite(adjustment, getPixels(comp.getCompositeImage()));
+    }
+
+    @Test
+    public void adjustmentMaskEditRecalculatesTheMaskedOutput() {
+        AdjustmentLayer adjustment = createAdjustedComp(new Darken());
+        adjustment.mask = new LayerMask(comp, createNoiseImage(TYPE_BYTE_GRAY), adjustment, 0, 0);
+        comp.getCompositeImage();
+
+        paint(adjustment.getMask().getImage(), new Ellipse2D.Double(10.5, 20.5, 300, 200));
+        comp.layerChanged(adjustment.getMask(), INVALIDATE_CACHE);
+
+        assertMatchesUncachedComposite(adjustment, getPixels(comp.getCompositeImage()));
+    }
+
+    /**
+     * Creates a composition with an adjustment layer
+     * between two image layers, and returns the adjustment layer.
+     */
+    private AdjustmentLayer createAdjustedComp(ParametrizedFilter filter) {
+        comp.addLayerInInitMode(new ImageLayer(comp, createNoiseImage(TYPE_INT_ARGB), "bottom"));
+        var adjustment = new AdjustmentLayer(comp, "adjustment", filter);
+        comp.addLayerInInitMode(adjustment);
+        var top = new ImageLayer(comp, createNoiseImage(TYPE_INT_ARGB), "top");
+        top.setOpacity(0.5f, false, false, false);
+        comp.addLayerInInitMode(top);
+        return adjustment;
+    }
+
+    private void assertMatchesUncachedComposite(AdjustmentLayer adjustment, int[] cached) {
+        adjustment.invalidateOutputCache();
+        comp.imageChanged(INVALIDATE_CACHE);
+        assertThat(cached).isEqualTo(getPixels(comp.getCompositeImage()));
+    }
+
+    private ImageLayer createMaskedLayer() {
+        var layer = new ImageLayer(comp, createNoiseImage(TYPE_INT_ARGB), "masked");
+        comp.addLayerInInitMode(layer);
+        layer.mask = new LayerMask(comp, createNoiseImage(TYPE_BYTE_GRAY), layer, 0, 0);
+        assertThat(layer.useMask()).isTrue();
+        return layer;
+    }
+
+    private BufferedImage createNoiseImage(int type) {
+        var image = new BufferedImage(WIDTH, HEIGHT, type);
+        int[] samples = new int[WIDTH * HEIGHT * image.getRaster().getNumBands()];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(256);
+        }
+        if (image.isAlphaPremultiplied()) {
+            // the color channels can't be bigger than the alpha
+            for (int i = 0; i < samples.length; i += 4) {
+                for (int c = 0; c < 3; c++) {
+                    samples[i + c] = Math.min(samples[i + c], samples[i + 3]);
+                }
+            }
+        }
+        image.getRaster().setPixels(0, 0, WIDTH, HEIGHT, samples);
+        return image;
+    }
+
+    private void paint(BufferedImage image, Ellipse2D shape) {
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(random.nextInt(), true));
+        g.fill(shape);
+        g.dispose();
+    }
+
+    private BufferedImage applyOnBackground(Layer layer) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB_PRE);
+        image.setData(background.getRaster());
+        Graphics2D g = image.createGraphics();
+        BufferedImage result = layer.applyLayer(g, image, false);
+        g.dispose();
+        return result == null ? image : result;
+    }
+
+    private void assertMatchesFullRepaint(Layer layer, BufferedImage cached) {
+        int[] cachedPixels = getPixels(cached);
+        layer.contentChanged();
+        assertThat(cachedPixels).isEqualTo(getPixels(applyOnBackground(layer)));
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return img.getRaster().getPixels(0, 0,
+                img.getWidth(), img.getHeight(), (int[]) null);
+    }
+
+    /**
+     * A parametrized test filter that doesn't need a display
+     */
+    private static class Darken extends ParametrizedFilter {
+        private final RangeParam amount = new RangeParam("Amount", 0, 30, 100);
+
+        Darken() {
+            super(ShowOriginal.NO);
+            setParams(amount);
+        }
+
+        @Override
+        protected boolean createDefaultDestImg() {
+            return false;
+        }
+
+        @Override
+        public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
+            WritableRaster raster = src.copyData(null);
+            int[] samples = raster.getPixels(0, 0,
+                    raster.getWidth(), raster.getHeight(), (int[]) null);
+            int multiplier = 100 - amount.getValue();
+            for (int i = 0; i < samples.length; i += 4) {
+                for (int c = 0; c < 3; c++) {
+                    samples[i + c] = samples[i + c] * multiplier / 100;
+                }
+            }
+            raster.setPixels(0, 0, raster.getWidth(), raster.getHeight(), samples);
+            return new BufferedImage(src.getColorModel(), raster,
+                    src.isAlphaPremultiplied(), null);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.Test;
+import pixelitor.ThreadPool;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CancellationTokenTest {
+    @Test
+    public void cancelledRunFinishesItsTracker() {
+        var token = new CancellationToken();
+        var numFinished = new AtomicInteger();
+        var numRowsDone = new AtomicInteger();
+
+        assertThatThrownBy(() -> token.runTracked(() -> {
+            // like a filter, which finishes its tracker only at the end
+            var pt = new CountingTracker(100, numFinished);
+            ThreadPool.parallelRows(100, 1, pt, (fromY, toY) -> {
+                for (int y = fromY; y < toY; y++) {
+                    CancellationToken.checkCurrent();
+                    if (numRowsDone.incrementAndGet() == 10) {
+                        token.cancel();
+                    }
+                }
+            });
+            pt.finished();
+        })).isInstanceOf(CancellationException.class);
+
+        assertThat(numRowsDone.get()).isLessThan(100);
+        assertThat(numFinished.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void trackersOfOtherRunsAreNotFinished() {
+        var numFinished = new AtomicInteger();
+        // created outside of the run
+        new CountingTracker(10, numFinished);
+
+        new CancellationToken().runTracked(() -> {
+        });
+
+        assertThat(numFinished.get()).isZero();
+    }
+
+    private static class CountingTracker extends ThresholdProgressTracker {
+        private final AtomicInteger numFinished;
+
+        CountingTracker(int numComputationUnits, AtomicInteger numFinished) {
+            super(numComputationUnits);
+            this.numFinished = numFinished;
+        }
+
+        @Override
+        public void finished() {
+            super.finished();
+            numFinished.incrementAndGet();
+        }
+
+        @Override
+        void startProgressTracking() {
+        }
+
+        @Override
+        void updateProgressTracking(int percent) {
+        }
+
+        @Override
+        void finishProgressTracking() {
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DirtyTilesTest {
+    @Test
+    public void markDirtyTouchesOnlyTheCoveredTiles() {
+        var tiles = new DirtyTiles(250, 120, 100);
+        assertThat(tiles.getNumTilesX()).isEqualTo(3);
+        assertThat(tiles.getNumTilesY()).isEqualTo(2);
+        assertThat(tiles.hasDirtyTiles()).isFalse();
+
+        tiles.markDirty(new Rectangle(90, 10, 20, 20));
+
+        assertThat(tiles.getNumDirtyTiles()).isEqualTo(2);
+        assertThat(tiles.isDirty(0, 0)).isTrue();
+        assertThat(tiles.isDirty(1, 0)).isTrue();
+        assertThat(tiles.isDirty(2, 0)).isFalse();
+        assertThat(tiles.isDirty(0, 1)).isFalse();
+
+        // marking the same tiles again doesn't change the count
+        tiles.markDirty(new Rectangle(0, 0, 150, 50));
+        assertThat(tiles.getNumDirtyTiles()).isEqualTo(2);
+    }
+
+    @Test
+    public void areasOutsideTheGridAreIgnored() {
+        var tiles = new DirtyTiles(250, 120, 100);
+
+        tiles.markDirty(new Rectangle(-50, -50, 40, 40));
+        tiles.markDirty(new Rectangle(300, 10, 40, 40));
+        assertThat(tiles.hasDirtyTiles()).isFalse();
+
+        tiles.markDirty(new Rectangle(240, 110, 100, 100));
+        assertThat(tiles.getNumDirtyTiles()).isEqualTo(1);
+        assertThat(tiles.isDirty(2, 1)).isTrue();
+    }
+
+    @Test
+    public void cleaningReportsClippedTileBounds() {
+        var tiles = new DirtyTiles(250, 120, 100);
+        tiles.markAllDirty();
+        assertThat(tiles.isAllDirty()).isTrue();
+
+        List<Rectangle> cleaned = new ArrayList<>();
+        tiles.cleanDirtyTiles(cleaned::add);
+
+        assertThat(tiles.hasDirtyTiles()).isFalse();
+        assertThat(cleaned).hasSize(6);
+        assertThat(cleaned).contains(
+                new Rectangle(0, 0, 100, 100),
+                new Rectangle(200, 0, 50, 100),
+                new Rectangle(200, 100, 50, 20));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ImagePyramidTest {
+    @Test
+    public void levelSelection() {
+        var pyramid = new ImagePyramid(1000, 600);
+
+        assertThat(pyramid.getLevelFor(1.0)).isEqualTo(0);
+        assertThat(pyramid.getLevelFor(0.6)).isEqualTo(0);
+        assertThat(pyramid.getLevelFor(0.5)).isEqualTo(1);
+        assertThat(pyramid.getLevelFor(0.3)).isEqualTo(1);
+        assertThat(pyramid.getLevelFor(0.25)).isEqualTo(2);
+
+        // at level 6 the height would be less than 16 pixels
+        assertThat(pyramid.getLevelFor(0.001)).isEqualTo(5);
+    }
+
+    @Test
+    public void levelsAreAveraged() {
+        BufferedImage src = new BufferedImage(33, 20, TYPE_INT_ARGB_PRE);
+        src.setRGB(0, 0, 0xFF_FF_FF_FF);
+        src.setRGB(1, 0, 0xFF_FF_FF_FF);
+
+        var pyramid = new ImagePyramid(33, 20);
+        BufferedImage level1 = pyramid.getLevel(src, 1);
+
+        assertThat(level1.getWidth()).isEqualTo(17);
+        assertThat(level1.getHeight()).isEqualTo(10);
+        assertThat(pyramid.getNumCreatedLevels()).isEqualTo(1);
+        // two white and two transparent pixels give a half-transparent white
+        assertThat(level1.getRGB(0, 0)).isEqualTo(0x80_FF_FF_FF);
+        assertThat(level1.getRGB(1, 0)).isEqualTo(0);
+    }
+
+    @Test
+    public void onlyDirtyAreasAreRecalculated() {
+        BufferedImage src = new BufferedImage(600, 400, TYPE_INT_ARGB_PRE);
+        var pyramid = new ImagePyramid(600, 400);
+        BufferedImage level1 = pyramid.getLevel(src, 1);
+        assertThat(level1.getRGB(10, 10)).isEqualTo(0);
+
+        fill(src, new Rectangle(0, 0, 600, 400), 0xFF_00_00_FF);
+        pyramid.markDirty(new Rectangle(0, 0, 40, 40));
+        level1 = pyramid.getLevel(src, 1);
+
+        // inside the dirty area
+        assertThat(level1.getRGB(10, 10)).isEqualTo(0xFF_00_00_FF);
+        // outside the dirty tile, so it's still the old value
+        assertThat(level1.getRGB(280, 180)).isEqualTo(0);
+
+        pyramid.markAllDirty();
+        level1 = pyramid.getLevel(src, 1);
+        assertThat(level1.getRGB(280, 180)).isEqualTo(0xFF_00_00_FF);
+    }
+
+    private static void fill(BufferedImage img, Rectangle area, int rgb) {
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int x = area.x; x < area.x + area.width; x++) {
+                img.setRGB(x, y, rgb);
+            }
+        }
+    }
+}